@@ -0,0 +1,80 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Base de datos SQLite temporal para los benchmarks, sin Minecraft ni Fabric
+ */
+final class BenchmarkDatabase {
+
+    private final Path directory;
+
+    private BenchmarkDatabase(Path directory) {
+        this.directory = directory;
+    }
+
+    static BenchmarkDatabase open() throws IOException {
+        Path directory = Files.createTempDirectory("storagemanager-jmh");
+        SQLiteBackend.init(directory.resolve("bench.db"));
+        return new BenchmarkDatabase(directory);
+    }
+
+    /**
+     * Crea una tabla con clave "id" (INTEGER) y {@code columns - 1} columnas de datos alternando tipos
+     */
+    static TableSchema createTable(String name, int columns) {
+        TableSchema.Builder builder = TableSchema.builder(name)
+                .column("id", ColumnType.INTEGER, true);
+
+        for (int i = 1; i < columns; i++) {
+            builder.column("c" + i, i % 2 == 0 ? ColumnType.TEXT : ColumnType.INTEGER);
+        }
+
+        TableSchema schema = builder.primaryKey("id").build();
+        TableExecutor.createTable(schema);
+        return schema;
+    }
+
+    static RowData row(long id, int columns) {
+        RowData row = new RowData().set("id", id);
+        for (int i = 1; i < columns; i++) {
+            row.set("c" + i, i % 2 == 0 ? "value-" + id : id * i);
+        }
+        return row;
+    }
+
+    /**
+     * Igual que row(), pero con el layout del esquema y los enteros sin boxing
+     */
+    static RowData row(TableSchema schema, long id, int columns) {
+        RowData row = schema.newRow().setLong("id", id);
+        for (int i = 1; i < columns; i++) {
+            if (i % 2 == 0) {
+                row.set(i, "value-" + id);
+            } else {
+                row.setLong(i, id * i);
+            }
+        }
+        return row;
+    }
+
+    void close() throws IOException {
+        WriteCache.getInstance().flushAll();
+        SQLiteBackend.shutdown();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guardar N filas inmediatas: una llamada por fila frente a un único insertAll
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+    private static final String TABLE = "bench_bulk";
+    private static final int COLUMNS = 4;
+
+    @Param({"100", "1000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private List<RowData> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open();
+        TableSchema schema = BenchmarkDatabase.createTable(TABLE, COLUMNS);
+
+        batch = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            batch.add(BenchmarkDatabase.row(schema, i, COLUMNS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void oneByOne() {
+        for (RowData row : batch) {
+            TableExecutor.insert(TABLE, row, true);
+        }
+    }
+
+    @Benchmark
+    public void insertAll() {
+        TableExecutor.insertAll(TABLE, batch, true);
+    }
+}
@@ -0,0 +1,78 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encolar N filas en la caché y hacer flush de la tabla, para distintos tamaños de lote y anchos de fila.
+ * Mide el tiempo total hasta que las N filas están commiteadas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlushBenchmark {
+
+    private static final String TABLE = "bench_flush";
+
+    @Param({"10", "100", "1000"})
+    public int batchSize;
+
+    @Param({"2", "8", "16"})
+    public int columns;
+
+    private BenchmarkDatabase database;
+    private List<RowData> rows;
+    private long nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open();
+        BenchmarkDatabase.createTable(TABLE, columns);
+
+        // Sin flush anticipado: al pasar la marca alta (flush.batch_size, 100 por defecto) el hilo de
+        // escritura vaciaría la cola a medio encolar y el flush medido llevaría menos de batchSize filas.
+        // configure() solo cambia las colas que ya existen, así que antes se crea con una fila.
+        WriteCache cache = WriteCache.getInstance();
+        cache.queueInsert(TABLE, BenchmarkDatabase.row(-1, columns));
+        cache.flushTable(TABLE);
+        Properties properties = new Properties();
+        properties.setProperty("table." + TABLE + ".flush.batch_size", String.valueOf(Integer.MAX_VALUE));
+        properties.setProperty("table." + TABLE + ".flush.queue_capacity", String.valueOf(Integer.MAX_VALUE));
+        cache.configure(StorageConfig.parse(properties));
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareRows() {
+        // Claves que no se repiten nunca: cada flush escribe batchSize filas nuevas, sin reemplazar
+        // filas de rondas anteriores ni juntarse con ellas en la caché
+        rows = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            rows.add(BenchmarkDatabase.row(nextId++, columns));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void queueAndFlush() {
+        WriteCache cache = WriteCache.getInstance();
+        for (RowData row : rows) {
+            cache.queueInsert(TABLE, row);
+        }
+        cache.flushTable(TABLE);
+    }
+}
@@ -0,0 +1,46 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TableExecutor.insert con y sin caché
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    private static final String TABLE = "bench_insert";
+    private static final int COLUMNS = 4;
+    // Claves que se van reutilizando, para que la tabla no crezca sin límite durante la medición
+    private static final int KEY_SPACE = 10_000;
+
+    @Param({"true", "false"})
+    public boolean immediate;
+
+    private BenchmarkDatabase database;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open();
+        BenchmarkDatabase.createTable(TABLE, COLUMNS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public void insert() {
+        TableExecutor.insert(TABLE, BenchmarkDatabase.row(next++ % KEY_SPACE, COLUMNS), immediate);
+    }
+}
@@ -0,0 +1,61 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de construir y leer un RowData con N columnas, con Map y con layout
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowDataBenchmark {
+
+    @Param({"2", "8", "16"})
+    public int columns;
+
+    private TableSchema schema;
+    private RowData mapRow;
+    private RowData boundRow;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Mismo esquema que BenchmarkDatabase.createTable, sin crear la tabla
+        TableSchema.Builder builder = TableSchema.builder("bench_rows").column("id", ColumnType.INTEGER, true);
+        for (int i = 1; i < columns; i++) {
+            builder.column("c" + i, i % 2 == 0 ? ColumnType.TEXT : ColumnType.INTEGER);
+        }
+        schema = builder.primaryKey("id").build();
+
+        mapRow = BenchmarkDatabase.row(1, columns);
+        boundRow = BenchmarkDatabase.row(schema, 1, columns);
+    }
+
+    @Benchmark
+    public RowData build() {
+        return BenchmarkDatabase.row(next++, columns);
+    }
+
+    @Benchmark
+    public RowData buildBound() {
+        return BenchmarkDatabase.row(schema, next++, columns);
+    }
+
+    @Benchmark
+    public long readMap() {
+        return ((Number) mapRow.values().get("id")).longValue();
+    }
+
+    @Benchmark
+    public long readBound() {
+        return boundRow.getLong(0);
+    }
+}
@@ -0,0 +1,60 @@
+package es.superstrellaa.storagemanager.benchmark;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SELECT por clave primaria, con la caché vacía o con escrituras pendientes que hay que aplicar encima
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectBenchmark {
+
+    private static final String TABLE = "bench_select";
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 10_000;
+
+    @Param({"0", "50"})
+    public int pendingWrites;
+
+    private BenchmarkDatabase database;
+    private long next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = BenchmarkDatabase.open();
+        BenchmarkDatabase.createTable(TABLE, COLUMNS);
+
+        WriteCache cache = WriteCache.getInstance();
+        for (int i = 0; i < ROWS; i++) {
+            cache.queueInsert(TABLE, BenchmarkDatabase.row(i, COLUMNS));
+        }
+        cache.flushTable(TABLE);
+
+        // Quedan sin guardar para que cada SELECT tenga que aplicarlas encima
+        for (int i = 0; i < pendingWrites; i++) {
+            cache.queueInsert(TABLE, BenchmarkDatabase.row(i, COLUMNS));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    @Benchmark
+    public List<RowData> selectByKey() {
+        return TableExecutor.select(TABLE, Map.of("id", next++ % ROWS));
+    }
+}
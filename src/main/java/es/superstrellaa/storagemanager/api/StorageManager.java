@@ -1,22 +1,43 @@
 package es.superstrellaa.storagemanager.api;
 
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
+import es.superstrellaa.storagemanager.api.change.ChangeListener;
 import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.metrics.StorageStats;
+import es.superstrellaa.storagemanager.api.query.Aggregate;
+import es.superstrellaa.storagemanager.api.query.Page;
+import es.superstrellaa.storagemanager.api.query.Query;
+import es.superstrellaa.storagemanager.api.query.RowCursor;
 import es.superstrellaa.storagemanager.api.schema.TableSchema;
 import es.superstrellaa.storagemanager.internal.TableExecutor;
+import es.superstrellaa.storagemanager.internal.cache.ChangeFeed;
+import es.superstrellaa.storagemanager.internal.cache.PlayerSessions;
 import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import es.superstrellaa.storagemanager.internal.lifecycle.ServerContext;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
 import es.superstrellaa.storagemanager.internal.middleware.ServerGuard;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * API principal para interactuar con StorageManager.
  *
  * Por defecto, todas las operaciones de escritura usan un sistema de caché
- * que agrupa operaciones y las ejecuta en lotes cada 5 segundos.
+ * que agrupa operaciones y las ejecuta en lotes, normalmente cada 5 segundos
+ * (antes si se acumulan muchas, más tarde si el servidor va justo de tiempo por tick).
  *
  * Para datos críticos que necesitas guardar inmediatamente, usa los métodos *Immediate
  * o llama a flush() manualmente.
+ *
+ * Los métodos *Async no bloquean al que llama (normalmente el hilo del servidor) y
+ * devuelven un CompletableFuture. Usa onServerThread() si necesitas el resultado en ese hilo.
  */
 public final class StorageManager {
 
@@ -44,15 +65,172 @@ public final class StorageManager {
         TableExecutor.insert(table, data, true);
     }
 
+    /**
+     * Inserta varias filas con una sola llamada (modo async con caché).
+     * Útil para guardar a todos los jugadores en el autosave o importar datos.
+     */
+    public static void insertAll(String table, Collection<RowData> rows) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.insertAll(table, rows, false);
+    }
+
+    /**
+     * Inserta varias filas inmediatamente, todas en una única transacción
+     * con INSERT de varias filas por sentencia
+     */
+    public static void insertAllImmediate(String table, Collection<RowData> rows) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.insertAll(table, rows, true);
+    }
+
     /**
      * Selecciona datos de una tabla.
-     * Automáticamente hace flush de la caché antes de leer.
+     * Incluye las escrituras que siguen en la caché sin necesidad de hacer flush.
      */
     public static List<RowData> select(String table, Map<String, Object> where) {
         if (!ServerGuard.requireServer()) return List.of();
         return TableExecutor.select(table, where);
     }
 
+    /**
+     * Ejecuta una consulta con columnas, condiciones, orden, límites o agregados.
+     * Todo se resuelve en SQLite, así que solo vuelven las filas que hacen falta.
+     *
+     * <pre>{@code
+     * List<RowData> top = StorageManager.query(Query.from("player_data")
+     *         .select("uuid", "value").eq("key", "points").orderByDesc("value").limit(10));
+     * }</pre>
+     *
+     * Incluye las escrituras que siguen en la caché sin hacer flush de la tabla.
+     */
+    public static List<RowData> query(Query query) {
+        if (!ServerGuard.requireServer()) return List.of();
+        return TableExecutor.query(query);
+    }
+
+    /**
+     * Número de filas que cumplen las condiciones de la consulta
+     */
+    public static long count(Query query) {
+        if (!ServerGuard.requireServer()) return 0;
+        return TableExecutor.count(query);
+    }
+
+    /**
+     * Calcula un agregado (Aggregate.sum("value"), Aggregate.max("value")...) sobre las filas de la consulta.
+     * Para agregados por grupos usa query() con groupBy(). Con orderBy, limit u offset lanza una
+     * IllegalArgumentException; after() solo vale si la clave primaria es de una columna.
+     */
+    public static Object aggregate(Query query, Aggregate aggregate) {
+        if (!ServerGuard.requireServer()) return null;
+        return TableExecutor.aggregate(query, aggregate);
+    }
+
+    /**
+     * Recorre las filas que cumplen el WHERE una a una sin cargarlas todas en memoria.
+     * Igual que select(), incluye las escrituras que siguen en la caché.
+     */
+    public static void stream(String table, Map<String, Object> where, Consumer<RowData> consumer) {
+        stream(Query.from(table).where(where), consumer);
+    }
+
+    /**
+     * Recorre las filas de la consulta una a una sin cargarlas todas en memoria
+     */
+    public static void stream(Query query, Consumer<RowData> consumer) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.stream(query, consumer);
+    }
+
+    /**
+     * Abre un cursor sobre la consulta. Ocupa una conexión de lectura hasta que se cierra,
+     * úsalo siempre con try-with-resources.
+     */
+    public static RowCursor cursor(Query query) {
+        if (!ServerGuard.requireServer()) return RowCursor.empty();
+        return TableExecutor.openCursor(query);
+    }
+
+    /**
+     * Lee una página ordenada por clave primaria (la consulta necesita limit()).
+     * Para la siguiente, pasa page.nextAfter() a Query.after().
+     * Incluye las escrituras que siguen en la caché.
+     */
+    public static Page page(Query query) {
+        if (!ServerGuard.requireServer()) return new Page(List.of(), null);
+        return TableExecutor.page(query);
+    }
+
+    /**
+     * Cambia columnas de las filas que cumplen el WHERE sin reescribir la fila entera
+     * (UPDATE ... SET, modo async con caché). No crea filas nuevas.
+     */
+    public static void update(String table, Map<String, Object> where, Map<String, Object> values) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.update(table, where, values, Map.of(), false);
+    }
+
+    /**
+     * Como update(), escribiendo inmediatamente sin usar caché
+     */
+    public static void updateImmediate(String table, Map<String, Object> where, Map<String, Object> values) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.update(table, where, values, Map.of(), true);
+    }
+
+    /**
+     * Suma delta a una columna en la propia DB (col = col + delta), sin leer la fila antes.
+     * Los incrementos pendientes sobre la misma fila se suman en la caché y se escriben con
+     * una sola sentencia. Si el WHERE es la clave primaria y la fila no existe, se crea con
+     * la columna a delta (siempre que el resto de columnas NOT NULL estén en la clave).
+     *
+     * <pre>{@code
+     * StorageManager.increment("player_stats", Map.of("uuid", uuid), "kills", 1);
+     * }</pre>
+     */
+    public static void increment(String table, Map<String, Object> where, String column, Number delta) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.update(table, where, Map.of(), Map.of(column, delta), false);
+    }
+
+    /**
+     * Como increment(), escribiendo inmediatamente sin usar caché
+     */
+    public static void incrementImmediate(String table, Map<String, Object> where, String column, Number delta) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.update(table, where, Map.of(), Map.of(column, delta), true);
+    }
+
+    /**
+     * Lee el valor de una columna TEXT o BLOB como stream: las columnas comprimidas se descomprimen
+     * según se lee, sin cargar el valor original entero. Ve las escrituras pendientes de la tabla
+     * sin hacer flush.
+     *
+     * <pre>{@code
+     * try (InputStream in = StorageManager.openInputStream("structures", Map.of("id", id), "data")) {
+     *     NbtCompound nbt = NbtIo.readCompound(new DataInputStream(in));
+     * }
+     * }</pre>
+     *
+     * @return null si ninguna fila cumple el WHERE o el valor es null
+     */
+    public static InputStream openInputStream(String table, Map<String, Object> where, String column) {
+        if (!ServerGuard.requireServer()) return null;
+        return TableExecutor.openInputStream(table, where, column);
+    }
+
+    /**
+     * Escribe el valor de una columna TEXT o BLOB como stream, comprimiéndolo según llega si la
+     * columna está comprimida. Se guarda al cerrar el stream con un UPDATE (la fila tiene que existir).
+     * En el hilo del servidor, o si la tabla tiene escrituras pendientes, se encola como update() sin
+     * esperar, con el valor descomprimido en memoria hasta el flush. Si no, close() espera al hilo de
+     * escritura como updateImmediate(), sea cual sea el tamaño del valor.
+     */
+    public static OutputStream openOutputStream(String table, Map<String, Object> where, String column) {
+        if (!ServerGuard.requireServer()) return OutputStream.nullOutputStream();
+        return TableExecutor.openOutputStream(table, where, column);
+    }
+
     /**
      * Elimina datos (modo async con caché)
      */
@@ -69,6 +247,22 @@ public final class StorageManager {
         TableExecutor.delete(table, where, true);
     }
 
+    /**
+     * Elimina varias filas (un WHERE por fila) con una sola llamada (modo async con caché)
+     */
+    public static void deleteAll(String table, Collection<Map<String, Object>> wheres) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.deleteAll(table, wheres, false);
+    }
+
+    /**
+     * Elimina varias filas inmediatamente, todas en una única transacción
+     */
+    public static void deleteAllImmediate(String table, Collection<Map<String, Object>> wheres) {
+        if (!ServerGuard.requireServer()) return;
+        TableExecutor.deleteAll(table, wheres, true);
+    }
+
     /**
      * Fuerza el guardado de todas las operaciones pendientes de una tabla específica
      */
@@ -85,5 +279,144 @@ public final class StorageManager {
         WriteCache.getInstance().flushAll();
     }
 
+    /**
+     * Cambia qué pasa cuando una tabla acumula demasiadas escrituras pendientes.
+     * Por defecto es BLOCK: el que escribe espera a que el hilo de escritura vacíe la cola, salvo en el
+     * hilo del servidor, que nunca espera: ahí una escritura que no cabe lanza una IllegalStateException.
+     */
+    public static void setOverflowPolicy(OverflowPolicy policy) {
+        if (!ServerGuard.requireServer()) return;
+        WriteCache.getInstance().setOverflowPolicy(policy);
+    }
+
+    /**
+     * Foto de las métricas por tabla: cola, operaciones, latencias de flush/sentencias/SELECT
+     * y tiempo bloqueado en el hilo del servidor. También disponible con /storagemanager stats.
+     */
+    public static StorageStats metrics() {
+        return StorageMetrics.snapshot();
+    }
+
+    /**
+     * Selecciona datos sin bloquear el hilo que llama.
+     * La consulta se ejecuta en un pool acotado de hilos con conexiones de solo lectura.
+     */
+    public static CompletableFuture<List<RowData>> selectAsync(String table, Map<String, Object> where) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(List.of());
+        return TableExecutor.selectAsync(table, where);
+    }
+
+    /**
+     * Ejecuta la consulta sin bloquear el hilo que llama
+     */
+    public static CompletableFuture<List<RowData>> queryAsync(Query query) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(List.of());
+        return TableExecutor.queryAsync(query);
+    }
+
+    /**
+     * Inserta datos sin caché y sin bloquear: el future se completa cuando la fila está guardada
+     */
+    public static CompletableFuture<Void> insertAsync(String table, RowData data) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        return TableExecutor.insertAsync(table, data);
+    }
+
+    /**
+     * Elimina datos sin caché y sin bloquear: el future se completa cuando el borrado está guardado
+     */
+    public static CompletableFuture<Void> deleteAsync(String table, Map<String, Object> where) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        return TableExecutor.deleteAsync(table, where);
+    }
+
+    /**
+     * Agrupa escrituras sobre varias tablas para que se guarden de forma atómica, en el mismo commit.
+     * Se encolan como el resto (modo async con caché) cuando termina el bloque; si el bloque lanza
+     * una excepción no se encola nada. Las lecturas ven todas sus escrituras o ninguna, y DROP_OLDEST
+     * nunca las descarta (si la cola está llena solo de transacciones y deletes, lanza IllegalStateException).
+     *
+     * @return un future que se completa cuando la transacción está guardada, o falla si se descarta
+     * después de varios flushes fallidos
+     *
+     * <pre>{@code
+     * StorageManager.transaction(tx -> tx
+     *         .increment("bank", Map.of("uuid", from), "balance", -amount)
+     *         .increment("bank", Map.of("uuid", to), "balance", amount)
+     *         .insert("bank_log", logRow));
+     * }</pre>
+     */
+    public static CompletableFuture<Void> transaction(Consumer<Transaction> writes) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        Transaction transaction = new Transaction();
+        writes.accept(transaction);
+        return WriteCache.getInstance().queueBatch(transaction.batch());
+    }
+
+    /**
+     * Guarda las operaciones pendientes de una tabla sin bloquear
+     */
+    public static CompletableFuture<Void> flushAsync(String table) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        return WriteCache.getInstance().flushTableAsync(table);
+    }
+
+    /**
+     * Guarda las operaciones pendientes de todas las tablas sin bloquear
+     */
+    public static CompletableFuture<Void> flushAllAsync() {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        return WriteCache.getInstance().flushAllAsync();
+    }
+
+    /**
+     * Se completa cuando las filas del jugador de las tablas playerData ya están en memoria.
+     * No hace falta esperarlo para leer: hasta entonces los select van a la DB.
+     */
+    public static CompletableFuture<Void> whenPlayerLoaded(UUID player) {
+        if (!ServerGuard.requireServer()) return CompletableFuture.completedFuture(null);
+        return PlayerSessions.whenLoaded(player.toString());
+    }
+
+    /**
+     * Recibe los cambios de la tabla después de cada flush o escritura inmediata, en lotes y
+     * fuera del hilo del servidor, en lugar de hacer polling con select
+     *
+     * <pre>{@code
+     * StorageManager.subscribe("player_data", changes ->
+     *         changes.upserted().forEach(row -> dashboard.push(row)));
+     * }</pre>
+     */
+    public static void subscribe(String table, ChangeListener listener) {
+        subscribe(table, Map.of(), listener);
+    }
+
+    /**
+     * Como subscribe(table, listener), solo con los cambios cuya clave primaria empieza por
+     * keyPrefix (p.ej. Map.of("uuid", uuid) en una tabla con clave (uuid, key)).
+     * La tabla tiene que estar registrada.
+     */
+    public static void subscribe(String table, Map<String, Object> keyPrefix, ChangeListener listener) {
+        if (!ServerGuard.requireServer()) return;
+        ChangeFeed.subscribe(table, keyPrefix, listener);
+    }
+
+    public static void unsubscribe(String table, ChangeListener listener) {
+        ChangeFeed.unsubscribe(table, listener);
+    }
+
+    /**
+     * Hace que el future se complete en el hilo del servidor, para poder tocar el mundo
+     * o los jugadores directamente desde thenAccept/thenApply
+     *
+     * <pre>{@code
+     * StorageManager.onServerThread(StorageManager.selectAsync("player_data", where))
+     *         .thenAccept(rows -> player.sendMessage(...));
+     * }</pre>
+     */
+    public static <T> CompletableFuture<T> onServerThread(CompletableFuture<T> future) {
+        return ServerContext.completeOnServerThread(future);
+    }
+
     private StorageManager() {}
 }
\ No newline at end of file
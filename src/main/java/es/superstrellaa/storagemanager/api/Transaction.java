@@ -0,0 +1,47 @@
+package es.superstrellaa.storagemanager.api;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import es.superstrellaa.storagemanager.internal.cache.WriteBatch;
+
+import java.util.Map;
+
+/**
+ * Escrituras sobre una o varias tablas que se guardan juntas: o entran todas en la DB
+ * en el mismo commit o ninguna. Se crea con StorageManager.transaction().
+ *
+ * Las tablas tienen que estar en la misma base de datos (TableSchema.Builder#database).
+ */
+public final class Transaction {
+
+    private final WriteBatch batch = new WriteBatch();
+
+    Transaction() {}
+
+    public Transaction insert(String table, RowData data) {
+        batch.insert(table, data);
+        return this;
+    }
+
+    public Transaction update(String table, Map<String, Object> where, Map<String, Object> values) {
+        TableExecutor.checkUpdate(table, where, values, Map.of());
+        batch.update(table, where, values, Map.of());
+        return this;
+    }
+
+    public Transaction increment(String table, Map<String, Object> where, String column, Number delta) {
+        TableExecutor.checkUpdate(table, where, Map.of(), Map.of(column, delta));
+        batch.update(table, where, Map.of(), Map.of(column, delta));
+        return this;
+    }
+
+    public Transaction delete(String table, Map<String, Object> where) {
+        TableExecutor.checkDelete(table, where);
+        batch.delete(table, where);
+        return this;
+    }
+
+    WriteBatch batch() {
+        return batch;
+    }
+}
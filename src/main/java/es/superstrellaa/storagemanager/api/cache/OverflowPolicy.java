@@ -0,0 +1,23 @@
+package es.superstrellaa.storagemanager.api.cache;
+
+/**
+ * Qué hacer cuando la cola de escrituras pendientes de una tabla está llena
+ */
+public enum OverflowPolicy {
+    /**
+     * Espera a que el hilo de escritura vacíe la cola. Nunca pierde datos, pero puede frenar al que escribe.
+     * En el hilo del servidor no espera: lanza una IllegalStateException como FAIL_FAST, con el flush
+     * ya pedido. Las escrituras de transacciones nunca se rechazan.
+     */
+    BLOCK,
+    /**
+     * Descarta la operación pendiente más antigua para hacer sitio a la nueva. Los deletes, lo que se ha
+     * escrito sobre un delete pendiente de la misma fila y las escrituras de transacciones no se descartan;
+     * si solo quedan de esas, lanza una IllegalStateException.
+     */
+    DROP_OLDEST,
+    /**
+     * Lanza una IllegalStateException y descarta la nueva operación
+     */
+    FAIL_FAST
+}
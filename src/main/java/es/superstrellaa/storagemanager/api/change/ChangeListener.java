@@ -0,0 +1,11 @@
+package es.superstrellaa.storagemanager.api.change;
+
+/**
+ * Recibe los cambios de una tabla después de cada commit, en el hilo de cambios de StorageManager
+ * (nunca en el de escritura ni en el del servidor). Los lotes de una tabla llegan en el orden en
+ * que se commitearon. Tiene que volver rápido: mientras se ejecuta no se entregan los demás.
+ */
+@FunctionalInterface
+public interface ChangeListener {
+    void onChanges(TableChanges changes);
+}
@@ -0,0 +1,26 @@
+package es.superstrellaa.storagemanager.api.change;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cambios de una tabla que se acaban de commitear (un flush o una escritura inmediata)
+ *
+ * @param table    tabla
+ * @param upserted filas escritas enteras (insert o reemplazo), tal y como se guardaron
+ * @param updated  WHERE de cada update: la clave primaria si se actualizó una sola fila,
+ *                 si no el filtro. Los valores nuevos hay que leerlos si hacen falta
+ * @param deleted  WHERE de cada delete: la clave primaria borrada o el filtro
+ */
+public record TableChanges(
+        String table,
+        List<RowData> upserted,
+        List<Map<String, Object>> updated,
+        List<Map<String, Object>> deleted
+) {
+    public boolean isEmpty() {
+        return upserted.isEmpty() && updated.isEmpty() && deleted.isEmpty();
+    }
+}
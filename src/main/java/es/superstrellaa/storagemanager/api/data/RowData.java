@@ -1,18 +1,469 @@
 package es.superstrellaa.storagemanager.api.data;
 
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Una fila de una tabla.
+ *
+ * new RowData() guarda los valores en un Map por nombre de columna. RowData.of(schema)
+ * crea una fila con layout: cada columna va en su posición, los INTEGER y REAL se guardan
+ * como long/double sin boxing y se leen con getLong/getDouble. Los SELECT devuelven filas con layout.
+ * Una columna que no está en el layout se guarda aparte, en un Map, como en una fila sin layout.
+ */
 public final class RowData {
 
-    private final Map<String, Object> values = new HashMap<>();
+    private static final byte ABSENT = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte REF = 4;
+
+    // Sin layout
+    private final Map<String, Object> values;
+
+    // Con layout: long/double en primitives (double como bits), el resto en refs
+    private final RowLayout layout;
+    private final byte[] kinds;
+    private final long[] primitives;
+    private final Object[] refs;
+    private long present;
+    // Con layout: columnas que no están en él (null hasta que se pone la primera)
+    private Map<String, Object> extra;
+
+    public RowData() {
+        this.values = new HashMap<>();
+        this.layout = null;
+        this.kinds = null;
+        this.primitives = null;
+        this.refs = null;
+    }
+
+    public RowData(RowLayout layout) {
+        this.values = null;
+        this.layout = layout;
+        this.kinds = new byte[layout.size()];
+        this.primitives = new long[layout.size()];
+        this.refs = new Object[layout.size()];
+    }
+
+    /**
+     * Fila con el layout del esquema (o sin layout si el esquema tiene demasiadas columnas)
+     */
+    public static RowData of(TableSchema schema) {
+        RowLayout layout = schema.getLayout();
+        return layout == null ? new RowData() : new RowData(layout);
+    }
+
+    /**
+     * @return el layout de la fila, o null si guarda los valores en un Map
+     */
+    public RowLayout layout() {
+        return layout;
+    }
 
     public RowData set(String column, Object value) {
-        values.put(column, value);
+        int index = layout == null ? -1 : layout.indexOf(column);
+        if (index < 0) {
+            outside().put(column, value);
+            return this;
+        }
+        return set(index, value);
+    }
+
+    public RowData set(int index, Object value) {
+        ColumnType type = requireLayout().type(index);
+        if (value instanceof Integer i && type != ColumnType.REAL) {
+            putPrimitive(index, INT, i);
+        } else if (value instanceof Long l && type != ColumnType.REAL) {
+            putPrimitive(index, LONG, l);
+        } else if (value instanceof Double d && type != ColumnType.INTEGER) {
+            putPrimitive(index, DOUBLE, Double.doubleToRawLongBits(d));
+        } else {
+            kinds[index] = REF;
+            refs[index] = value;
+            present |= 1L << index;
+        }
+        return this;
+    }
+
+    public RowData setLong(String column, long value) {
+        int index = layout == null ? -1 : layout.indexOf(column);
+        if (index < 0) {
+            outside().put(column, value);
+            return this;
+        }
+        return setLong(index, value);
+    }
+
+    public RowData setLong(int index, long value) {
+        if (requireLayout().type(index) == ColumnType.REAL) {
+            return setDouble(index, value);
+        }
+        putPrimitive(index, LONG, value);
+        return this;
+    }
+
+    public RowData setDouble(String column, double value) {
+        int index = layout == null ? -1 : layout.indexOf(column);
+        if (index < 0) {
+            outside().put(column, value);
+            return this;
+        }
+        return setDouble(index, value);
+    }
+
+    public RowData setDouble(int index, double value) {
+        requireLayout();
+        putPrimitive(index, DOUBLE, Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    /**
+     * Valor leído de la DB con getLong/getInt: los que caben en un int salen como Integer
+     * en get(), igual que los devuelve el driver
+     */
+    public RowData setInteger(int index, long value) {
+        requireLayout();
+        putPrimitive(index, value == (int) value ? INT : LONG, value);
         return this;
     }
 
+    private void putPrimitive(int index, byte kind, long bits) {
+        kinds[index] = kind;
+        primitives[index] = bits;
+        refs[index] = null;
+        present |= 1L << index;
+    }
+
+    /**
+     * Donde van las columnas que no tienen posición: el Map de la fila, o el aparte si tiene layout
+     */
+    private Map<String, Object> outside() {
+        if (layout == null) {
+            return values;
+        }
+        if (extra == null) {
+            extra = new LinkedHashMap<>();
+        }
+        return extra;
+    }
+
+    private RowLayout requireLayout() {
+        if (layout == null) {
+            throw new IllegalStateException("Row has no layout, access its values by column name");
+        }
+        return layout;
+    }
+
+    /**
+     * Quita la columna de la fila (deja de tenerla, no la pone a null)
+     */
+    private Object remove(String column) {
+        int index = layout == null ? -1 : layout.indexOf(column);
+        if (index < 0) {
+            Map<String, Object> map = layout == null ? values : extra;
+            return map == null ? null : map.remove(column);
+        }
+        Object previous = has(index) ? get(index) : null;
+        kinds[index] = ABSENT;
+        primitives[index] = 0;
+        refs[index] = null;
+        present &= ~(1L << index);
+        return previous;
+    }
+
+    /**
+     * @return true si la fila tiene layout y alguna columna que no está en él
+     */
+    public boolean hasExtraColumns() {
+        return extra != null && !extra.isEmpty();
+    }
+
+    /**
+     * @return true si la fila tiene la columna (aunque sea con valor null)
+     */
+    public boolean has(String column) {
+        if (layout == null) {
+            return values.containsKey(column);
+        }
+        int index = layout.indexOf(column);
+        return index >= 0 ? has(index) : extra != null && extra.containsKey(column);
+    }
+
+    public boolean has(int index) {
+        requireLayout();
+        return kinds[index] != ABSENT;
+    }
+
+    public boolean isNull(String column) {
+        return get(column) == null;
+    }
+
+    /**
+     * @return true si la posición guarda un entero sin boxing
+     */
+    public boolean isLong(int index) {
+        requireLayout();
+        return kinds[index] == INT || kinds[index] == LONG;
+    }
+
+    /**
+     * @return true si la posición guarda un decimal sin boxing
+     */
+    public boolean isDouble(int index) {
+        requireLayout();
+        return kinds[index] == DOUBLE;
+    }
+
+    public Object get(String column) {
+        if (layout == null) {
+            return values.get(column);
+        }
+        int index = layout.indexOf(column);
+        if (index < 0) {
+            return extra == null ? null : extra.get(column);
+        }
+        return get(index);
+    }
+
+    public Object get(int index) {
+        requireLayout();
+        return switch (kinds[index]) {
+            case INT -> (int) primitives[index];
+            case LONG -> primitives[index];
+            case DOUBLE -> Double.longBitsToDouble(primitives[index]);
+            default -> refs[index];
+        };
+    }
+
+    /**
+     * @return el valor como long; 0 si es null, igual que ResultSet.getLong
+     */
+    public long getLong(String column) {
+        if (layout == null) {
+            return toLong(column, values.get(column));
+        }
+        int index = layout.indexOf(column);
+        return index < 0 ? toLong(column, get(column)) : getLong(index);
+    }
+
+    public long getLong(int index) {
+        requireLayout();
+        return switch (kinds[index]) {
+            case INT, LONG -> primitives[index];
+            case DOUBLE -> (long) Double.longBitsToDouble(primitives[index]);
+            default -> toLong(layout.name(index), refs[index]);
+        };
+    }
+
+    public int getInt(String column) {
+        return (int) getLong(column);
+    }
+
+    /**
+     * @return el valor como double; 0 si es null, igual que ResultSet.getDouble
+     */
+    public double getDouble(String column) {
+        if (layout == null) {
+            return toDouble(column, values.get(column));
+        }
+        int index = layout.indexOf(column);
+        return index < 0 ? toDouble(column, get(column)) : getDouble(index);
+    }
+
+    public double getDouble(int index) {
+        requireLayout();
+        return switch (kinds[index]) {
+            case INT, LONG -> primitives[index];
+            case DOUBLE -> Double.longBitsToDouble(primitives[index]);
+            default -> toDouble(layout.name(index), refs[index]);
+        };
+    }
+
+    public String getString(String column) {
+        Object value = get(column);
+        return value == null ? null : value.toString();
+    }
+
+    public byte[] getBytes(String column) {
+        Object value = get(column);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        throw new IllegalStateException("Column " + column + " is not a BLOB");
+    }
+
+    private static long toLong(String column, Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof Boolean bool) {
+            return bool ? 1 : 0;
+        }
+        throw new IllegalStateException("Column " + column + " is not numeric");
+    }
+
+    private static double toDouble(String column, Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        throw new IllegalStateException("Column " + column + " is not numeric");
+    }
+
+    /**
+     * @return las columnas que tiene la fila; con layout, en el orden del layout y después las que no están en él
+     */
+    public List<String> columns() {
+        if (layout == null) {
+            return List.copyOf(values.keySet());
+        }
+        if (!hasExtraColumns()) {
+            return layout.columns(present);
+        }
+        List<String> columns = new ArrayList<>(layout.columns(present));
+        columns.addAll(extra.keySet());
+        return List.copyOf(columns);
+    }
+
+    /**
+     * Máscara de las posiciones que tiene la fila (bit i = posición i)
+     */
+    public long presentMask() {
+        return present;
+    }
+
+    /**
+     * Valores por nombre de columna. Sin layout es el Map de la fila; con layout es una vista
+     * sobre la fila (lo que se pone o se quita en el Map cambia la fila) que hace boxing de
+     * cada valor al leerlo, así que para leer mejor usar get/getLong/getString.
+     */
     public Map<String, Object> values() {
-        return values;
+        return layout == null ? values : new ValuesView();
+    }
+
+    private final class ValuesView extends AbstractMap<String, Object> {
+
+        @Override
+        public int size() {
+            return Long.bitCount(present) + (extra == null ? 0 : extra.size());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String column && has(column);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String column ? RowData.this.get(column) : null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = RowData.this.get(key);
+            set(key, value);
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return key instanceof String column ? RowData.this.remove(column) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public int size() {
+                    return ValuesView.this.size();
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<String> columns = columns().iterator();
+                    return new Iterator<>() {
+                        private String last;
+
+                        @Override
+                        public boolean hasNext() {
+                            return columns.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            last = columns.next();
+                            String column = last;
+                            return new SimpleEntry<>(column, RowData.this.get(column)) {
+                                @Override
+                                public Object setValue(Object value) {
+                                    set(column, value);
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last == null) {
+                                throw new IllegalStateException();
+                            }
+                            RowData.this.remove(last);
+                            last = null;
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * Copia la fila con la forma de otro layout: las columnas que no tiene quedan a null.
+     * Con layout null la copia guarda los valores en un Map.
+     */
+    public RowData copy(RowLayout target) {
+        if (target == null) {
+            RowData copy = new RowData();
+            copy.values.putAll(values());
+            return copy;
+        }
+
+        RowData copy = new RowData(target);
+        if (target == layout) {
+            System.arraycopy(kinds, 0, copy.kinds, 0, kinds.length);
+            System.arraycopy(primitives, 0, copy.primitives, 0, primitives.length);
+            System.arraycopy(refs, 0, copy.refs, 0, refs.length);
+            copy.present = present;
+            if (hasExtraColumns()) {
+                copy.extra = new LinkedHashMap<>(extra);
+            }
+        } else {
+            for (int i = 0; i < target.size(); i++) {
+                copy.set(i, get(target.name(i)));
+            }
+        }
+
+        for (int i = 0; i < target.size(); i++) {
+            if (copy.kinds[i] == ABSENT) {
+                copy.set(i, null);
+            }
+        }
+        return copy;
     }
 }
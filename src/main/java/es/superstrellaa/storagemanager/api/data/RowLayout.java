@@ -0,0 +1,116 @@
+package es.superstrellaa.storagemanager.api.data;
+
+import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Posición y tipo de cada columna de una fila, resueltos una sola vez por tabla.
+ *
+ * Las filas con layout (RowData.of(schema)) guardan los valores en arrays por posición
+ * y los INTEGER/REAL como primitivos, sin un HashMap ni boxing por fila.
+ */
+public final class RowLayout {
+
+    // La presencia de cada columna se guarda en un long: más columnas usan filas sin layout
+    public static final int MAX_COLUMNS = Long.SIZE;
+
+    private final String[] names;
+    private final ColumnType[] types;
+    private final Map<String, Integer> positions;
+    private final long allColumns;
+    private final List<String> allNames;
+    // Columnas presentes (en orden de layout) para cada combinación de columnas vista
+    private final Map<Long, List<String>> shapes = new ConcurrentHashMap<>();
+
+    private RowLayout(List<String> names, List<ColumnType> types) {
+        if (names.size() > MAX_COLUMNS) {
+            throw new IllegalArgumentException("Row layouts support up to " + MAX_COLUMNS + " columns");
+        }
+
+        this.names = names.toArray(new String[0]);
+        this.types = types.toArray(new ColumnType[0]);
+        this.positions = new HashMap<>();
+        for (int i = 0; i < this.names.length; i++) {
+            positions.put(this.names[i], i);
+        }
+        this.allColumns = this.names.length == MAX_COLUMNS ? -1L : (1L << this.names.length) - 1;
+        this.allNames = List.of(this.names);
+    }
+
+    /**
+     * @return el layout de las columnas del esquema, o null si tiene más de MAX_COLUMNS
+     */
+    public static RowLayout of(TableSchema schema) {
+        if (schema.getColumns().size() > MAX_COLUMNS) {
+            return null;
+        }
+
+        List<String> names = new ArrayList<>();
+        List<ColumnType> types = new ArrayList<>();
+        for (Column column : schema.getColumns()) {
+            names.add(column.name());
+            types.add(column.type());
+        }
+        return new RowLayout(names, types);
+    }
+
+    /**
+     * Layout para columnas sueltas (resultados con select() o agregados).
+     * Un tipo null significa que la columna se guarda tal y como llega.
+     */
+    public static RowLayout of(List<String> names, List<ColumnType> types) {
+        return new RowLayout(names, types);
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return la posición de la columna, o -1 si no está en el layout
+     */
+    public int indexOf(String column) {
+        Integer position = positions.get(column);
+        return position == null ? -1 : position;
+    }
+
+    public String name(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return el tipo declarado de la columna, o null si no se conoce
+     */
+    public ColumnType type(int index) {
+        return types[index];
+    }
+
+    /**
+     * Nombres de las columnas marcadas en la máscara, en orden de layout. La lista se
+     * cachea, así que filas con las mismas columnas no crean una nueva cada vez.
+     */
+    public List<String> columns(long mask) {
+        if (mask == allColumns) {
+            return allNames;
+        }
+        return shapes.computeIfAbsent(mask, this::namesOf);
+    }
+
+    private List<String> namesOf(long mask) {
+        List<String> selected = new ArrayList<>(Long.bitCount(mask));
+        for (int i = 0; i < names.length; i++) {
+            if ((mask & (1L << i)) != 0) {
+                selected.add(names[i]);
+            }
+        }
+        return Collections.unmodifiableList(selected);
+    }
+}
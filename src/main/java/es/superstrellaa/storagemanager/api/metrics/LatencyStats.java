@@ -0,0 +1,13 @@
+package es.superstrellaa.storagemanager.api.metrics;
+
+/**
+ * Resumen de un histograma de latencias, en milisegundos.
+ * Los percentiles son aproximados (buckets en potencias de 2).
+ */
+public record LatencyStats(
+        long count,
+        double meanMillis,
+        double p50Millis,
+        double p99Millis,
+        double maxMillis
+) {}
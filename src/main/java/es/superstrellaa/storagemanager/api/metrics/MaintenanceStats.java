@@ -0,0 +1,18 @@
+package es.superstrellaa.storagemanager.api.metrics;
+
+/**
+ * Métricas del mantenimiento automático de SQLite, sumando todas las bases de datos
+ *
+ * @param checkpointedPages páginas copiadas del WAL a la base de datos
+ * @param vacuumedPages     páginas libres devueltas con incremental_vacuum
+ * @param checkpointTime    duración de los checkpoints del WAL
+ * @param optimizeTime      duración de los PRAGMA optimize
+ * @param vacuumTime        duración de cada paso de incremental_vacuum
+ */
+public record MaintenanceStats(
+        long checkpointedPages,
+        long vacuumedPages,
+        LatencyStats checkpointTime,
+        LatencyStats optimizeTime,
+        LatencyStats vacuumTime
+) {}
@@ -0,0 +1,16 @@
+package es.superstrellaa.storagemanager.api.metrics;
+
+import java.util.Map;
+
+/**
+ * Foto de las métricas de StorageManager en un instante dado
+ *
+ * @param meanTickMillis MSPT medio que usa el planificador de flushes
+ * @param tables         métricas por tabla, ordenadas por nombre
+ * @param maintenance    métricas del mantenimiento de los ficheros SQLite
+ */
+public record StorageStats(
+        double meanTickMillis,
+        Map<String, TableStats> tables,
+        MaintenanceStats maintenance
+) {}
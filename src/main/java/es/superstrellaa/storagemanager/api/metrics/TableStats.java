@@ -0,0 +1,64 @@
+package es.superstrellaa.storagemanager.api.metrics;
+
+/**
+ * Métricas acumuladas de una tabla desde que arrancó el servidor
+ *
+ * @param queueDepth             operaciones pendientes en la caché ahora mismo
+ * @param opsQueued              operaciones encoladas en la caché o en el hilo de escritura (insertAsync, deleteAsync)
+ * @param opsFlushed             operaciones escritas por los flushes (después de agruparlas por clave)
+ * @param opsDropped             operaciones descartadas por OverflowPolicy.DROP_OLDEST
+ * @param opsRejected            operaciones rechazadas por la cola llena (FAIL_FAST, o BLOCK en el hilo del servidor)
+ * @param rollbacks              flushes que fallaron y se deshicieron
+ * @param rowsReturned           filas devueltas por los SELECT
+ * @param fullScans              formas de WHERE que recorren la tabla entera (solo con checkQueryPlans)
+ * @param rowCacheHits           select por clave servidos desde la caché de filas
+ * @param rowCacheMisses         select por clave que tuvieron que ir a la DB
+ * @param rowCacheEvictions      filas expulsadas de la caché de filas por falta de sitio
+ * @param queryCacheHits         consultas servidas desde la caché de consultas
+ * @param queryCacheMisses       consultas cacheables que tuvieron que ir a la DB
+ * @param queryCacheEvictions    resultados expulsados de la caché de consultas por falta de sitio
+ * @param compressionInputBytes  bytes originales de los valores escritos en columnas comprimidas
+ * @param compressionOutputBytes bytes que ocupan esos valores en la DB
+ * @param flushTime              duración de cada flush completo (transacción incluida)
+ * @param statementTime          duración de cada sentencia o batch ejecutado
+ * @param selectTime             duración de cada SELECT
+ * @param serverThreadTime       tiempo que las llamadas a la API han bloqueado el hilo del servidor
+ */
+public record TableStats(
+        String table,
+        int queueDepth,
+        long opsQueued,
+        long opsFlushed,
+        long opsDropped,
+        long opsRejected,
+        long rollbacks,
+        long rowsReturned,
+        long fullScans,
+        long rowCacheHits,
+        long rowCacheMisses,
+        long rowCacheEvictions,
+        long queryCacheHits,
+        long queryCacheMisses,
+        long queryCacheEvictions,
+        long compressionInputBytes,
+        long compressionOutputBytes,
+        LatencyStats flushTime,
+        LatencyStats statementTime,
+        LatencyStats selectTime,
+        LatencyStats serverThreadTime
+) {
+    /**
+     * @return fracción de consultas cacheables servidas desde memoria (0 si no ha habido ninguna)
+     */
+    public double queryCacheHitRate() {
+        long total = queryCacheHits + queryCacheMisses;
+        return total == 0 ? 0 : (double) queryCacheHits / total;
+    }
+
+    /**
+     * @return tamaño guardado respecto al original en las columnas comprimidas (1 si no se ha escrito nada)
+     */
+    public double compressionRatio() {
+        return compressionInputBytes == 0 ? 1 : (double) compressionOutputBytes / compressionInputBytes;
+    }
+}
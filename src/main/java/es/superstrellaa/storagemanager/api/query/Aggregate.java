@@ -0,0 +1,59 @@
+package es.superstrellaa.storagemanager.api.query;
+
+import java.util.Locale;
+
+/**
+ * Función de agregado que se calcula en SQLite (COUNT, SUM, AVG, MIN, MAX)
+ *
+ * @param function función SQL
+ * @param column   columna sobre la que se calcula; null en COUNT(*)
+ * @param alias    nombre de la columna en las filas resultado
+ */
+public record Aggregate(
+        Function function,
+        String column,
+        String alias
+) {
+    public enum Function {
+        COUNT, SUM, AVG, MIN, MAX
+    }
+
+    public static Aggregate count() {
+        return new Aggregate(Function.COUNT, null, "count");
+    }
+
+    public static Aggregate count(String column) {
+        return of(Function.COUNT, column);
+    }
+
+    public static Aggregate sum(String column) {
+        return of(Function.SUM, column);
+    }
+
+    public static Aggregate avg(String column) {
+        return of(Function.AVG, column);
+    }
+
+    public static Aggregate min(String column) {
+        return of(Function.MIN, column);
+    }
+
+    public static Aggregate max(String column) {
+        return of(Function.MAX, column);
+    }
+
+    /**
+     * Cambia el nombre con el que sale el resultado (por defecto función_columna, p.ej. "sum_value")
+     */
+    public Aggregate as(String alias) {
+        return new Aggregate(function, column, alias);
+    }
+
+    private static Aggregate of(Function function, String column) {
+        return new Aggregate(function, column, function.name().toLowerCase(Locale.ROOT) + "_" + column);
+    }
+
+    public String toSql() {
+        return function.name() + "(" + (column == null ? "*" : column) + ") AS " + alias;
+    }
+}
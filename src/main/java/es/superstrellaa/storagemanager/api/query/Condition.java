@@ -0,0 +1,40 @@
+package es.superstrellaa.storagemanager.api.query;
+
+import java.util.List;
+
+/**
+ * Condición sobre una columna en el WHERE de una Query
+ *
+ * @param column   nombre de la columna
+ * @param operator comparación que se aplica
+ * @param values   valores con los que se compara (dos para BETWEEN, n para IN, ninguno para IS NULL)
+ */
+public record Condition(
+        String column,
+        Operator operator,
+        List<Object> values
+) {
+    public enum Operator {
+        EQ("="),
+        NE("<>"),
+        GT(">"),
+        GTE(">="),
+        LT("<"),
+        LTE("<="),
+        LIKE("LIKE"),
+        IN("IN"),
+        BETWEEN("BETWEEN"),
+        IS_NULL("IS NULL"),
+        IS_NOT_NULL("IS NOT NULL");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+    }
+}
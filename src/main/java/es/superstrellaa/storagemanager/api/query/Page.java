@@ -0,0 +1,21 @@
+package es.superstrellaa.storagemanager.api.query;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+
+import java.util.List;
+
+/**
+ * Una página de resultados ordenada por clave primaria
+ *
+ * @param rows      filas de la página
+ * @param nextAfter valores de clave de la última fila, para pasarlos a Query.after() y pedir la
+ *                  siguiente página; null si ya no quedan más filas
+ */
+public record Page(
+        List<RowData> rows,
+        List<Object> nextAfter
+) {
+    public boolean hasNext() {
+        return nextAfter != null;
+    }
+}
@@ -0,0 +1,300 @@
+package es.superstrellaa.storagemanager.api.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consulta sobre una tabla. Se traduce a un SELECT con parámetros, así que el filtrado,
+ * el orden, los límites y los agregados los hace SQLite y solo viajan las filas necesarias.
+ *
+ * <pre>{@code
+ * Query.from("player_data").where(Map.of("key", "points")).after(lastUuid, "points").limit(500)
+ *
+ * Query.from("player_data").select("uuid", "value").eq("key", "points").orderByDesc("value").limit(10)
+ *
+ * Query.from("player_data").groupBy("key").aggregate(Aggregate.count(), Aggregate.sum("value"))
+ * }</pre>
+ */
+public final class Query {
+
+    public static final int DEFAULT_FETCH_SIZE = 256;
+
+    private final String table;
+    private Map<String, Object> where = Map.of();
+    private final List<Condition> conditions = new ArrayList<>();
+    private List<String> columns = List.of();
+    private final List<Sort> orderBy = new ArrayList<>();
+    private List<String> groupBy = List.of();
+    private List<Aggregate> aggregates = List.of();
+    private List<Object> after;
+    private int limit = -1;
+    private int offset;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private boolean cached;
+
+    private Query(String table) {
+        this.table = table;
+    }
+
+    public static Query from(String table) {
+        return new Query(table);
+    }
+
+    /**
+     * Columnas a devolver; sin llamarlo se devuelven todas (SELECT *)
+     */
+    public Query select(String... columns) {
+        this.columns = List.of(columns);
+        return this;
+    }
+
+    /**
+     * Condiciones de igualdad, igual que en StorageManager.select
+     */
+    public Query where(Map<String, Object> where) {
+        this.where = where;
+        return this;
+    }
+
+    /**
+     * Añade una condición ya construida (las de otra Query, por ejemplo)
+     */
+    public Query where(Condition condition) {
+        conditions.add(condition);
+        return this;
+    }
+
+    public Query eq(String column, Object value) {
+        return condition(column, Condition.Operator.EQ, value);
+    }
+
+    public Query ne(String column, Object value) {
+        return condition(column, Condition.Operator.NE, value);
+    }
+
+    public Query gt(String column, Object value) {
+        return condition(column, Condition.Operator.GT, value);
+    }
+
+    public Query gte(String column, Object value) {
+        return condition(column, Condition.Operator.GTE, value);
+    }
+
+    public Query lt(String column, Object value) {
+        return condition(column, Condition.Operator.LT, value);
+    }
+
+    public Query lte(String column, Object value) {
+        return condition(column, Condition.Operator.LTE, value);
+    }
+
+    /**
+     * Rango inclusivo: from <= column <= to
+     */
+    public Query between(String column, Object from, Object to) {
+        conditions.add(new Condition(column, Condition.Operator.BETWEEN, Arrays.asList(from, to)));
+        return this;
+    }
+
+    public Query in(String column, List<?> values) {
+        conditions.add(new Condition(column, Condition.Operator.IN, new ArrayList<>(values)));
+        return this;
+    }
+
+    /**
+     * Patrón LIKE de SQLite: % para cualquier texto, _ para un carácter (sin distinguir mayúsculas en ASCII)
+     */
+    public Query like(String column, String pattern) {
+        return condition(column, Condition.Operator.LIKE, pattern);
+    }
+
+    public Query isNull(String column) {
+        conditions.add(new Condition(column, Condition.Operator.IS_NULL, List.of()));
+        return this;
+    }
+
+    public Query isNotNull(String column) {
+        conditions.add(new Condition(column, Condition.Operator.IS_NOT_NULL, List.of()));
+        return this;
+    }
+
+    private Query condition(String column, Condition.Operator operator, Object value) {
+        conditions.add(new Condition(column, operator, Arrays.asList(value)));
+        return this;
+    }
+
+    public Query orderBy(String column) {
+        orderBy.add(new Sort(column, false));
+        return this;
+    }
+
+    public Query orderByDesc(String column) {
+        orderBy.add(new Sort(column, true));
+        return this;
+    }
+
+    /**
+     * Agrupa las filas por estas columnas; cada fila del resultado lleva las columnas
+     * del grupo más los agregados
+     */
+    public Query groupBy(String... columns) {
+        this.groupBy = List.of(columns);
+        return this;
+    }
+
+    /**
+     * Agregados a calcular; el resultado es una fila por grupo (o una sola sin groupBy)
+     */
+    public Query aggregate(Aggregate... aggregates) {
+        this.aggregates = List.of(aggregates);
+        return this;
+    }
+
+    /**
+     * Paginación por clave: solo devuelve las filas cuya clave primaria va después de estos valores
+     * (en el orden de las columnas de primaryKey). Normalmente es Page.nextAfter() de la página anterior.
+     */
+    public Query after(Object... primaryKeyValues) {
+        this.after = List.of(primaryKeyValues);
+        return this;
+    }
+
+    /**
+     * Como after(Object...), pero con la lista que devuelve Page.nextAfter()
+     */
+    public Query after(List<Object> primaryKeyValues) {
+        this.after = primaryKeyValues;
+        return this;
+    }
+
+    /**
+     * Número máximo de filas. Sin orderBy, con límite o con after() las filas salen ordenadas por clave primaria.
+     */
+    public Query limit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must be >= 0");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Filas a saltar antes de empezar a devolver. Para recorrer tablas grandes es mejor after().
+     */
+    public Query offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must be >= 0");
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Filas que el driver trae de golpe al recorrer el resultado
+     */
+    public Query fetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("Fetch size must be > 0");
+        }
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Guarda el resultado de query(), count() o aggregate() en la caché de consultas: mientras nadie
+     * escriba en la tabla, repetir la misma consulta no vuelve a ir a la DB.
+     * No afecta a stream(), cursor() ni page().
+     */
+    public Query cached() {
+        this.cached = true;
+        return this;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public Map<String, Object> getWhere() {
+        return where;
+    }
+
+    public List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    /**
+     * @return columnas de select(), vacío si se devuelven todas
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<Sort> getOrderBy() {
+        return Collections.unmodifiableList(orderBy);
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    public List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * @return los valores de clave de after(), o null si no se ha indicado
+     */
+    public List<Object> getAfter() {
+        return after;
+    }
+
+    /**
+     * @return el límite de filas, o -1 si no hay
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * @return true si calcula agregados o agrupa filas
+     */
+    public boolean isAggregate() {
+        return !aggregates.isEmpty() || !groupBy.isEmpty();
+    }
+
+    /**
+     * @return true si las filas deben salir ordenadas por clave primaria (paginación)
+     */
+    public boolean isKeyOrdered() {
+        return orderBy.isEmpty() && !isAggregate() && (after != null || limit >= 0);
+    }
+
+    /**
+     * @return true si es una consulta de igualdades sobre filas completas, sin orden ni límites:
+     * la caché de escritura se aplica encima de las filas leídas, sin pasar por una subconsulta
+     */
+    public boolean isPlain() {
+        return conditions.isEmpty() && columns.isEmpty() && orderBy.isEmpty() && !isAggregate()
+                && after == null && limit < 0 && offset == 0;
+    }
+
+    /**
+     * Orden por una columna
+     */
+    public record Sort(String column, boolean descending) {}
+}
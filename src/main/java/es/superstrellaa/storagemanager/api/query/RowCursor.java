@@ -0,0 +1,55 @@
+package es.superstrellaa.storagemanager.api.query;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Resultado que se lee fila a fila en lugar de cargarse entero en memoria.
+ *
+ * Mientras está abierto ocupa una conexión de lectura, así que hay que cerrarlo siempre (con todas
+ * ocupadas, las demás lecturas fallan a los pocos segundos de esperar una):
+ *
+ * <pre>{@code
+ * try (RowCursor cursor = StorageManager.cursor(Query.from("logs"))) {
+ *     while (cursor.hasNext()) { ... cursor.next() ... }
+ * }
+ * }</pre>
+ */
+public interface RowCursor extends Iterator<RowData>, AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * Stream de las filas; cerrar el stream cierra el cursor
+     */
+    default Stream<RowData> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+                false
+        ).onClose(this::close);
+    }
+
+    static RowCursor empty() {
+        return new RowCursor() {
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public RowData next() {
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+}
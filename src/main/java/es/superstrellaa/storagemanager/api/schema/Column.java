@@ -3,5 +3,14 @@ package es.superstrellaa.storagemanager.api.schema;
 public record Column(
         String name,
         ColumnType type,
-        boolean notNull
-) {}
+        boolean notNull,
+        Compression compression
+) {
+    public Column(String name, ColumnType type, boolean notNull) {
+        this(name, type, notNull, Compression.NONE);
+    }
+
+    public boolean isCompressed() {
+        return compression != Compression.NONE;
+    }
+}
@@ -0,0 +1,13 @@
+package es.superstrellaa.storagemanager.api.schema;
+
+/**
+ * Compresión de una columna TEXT o BLOB. Los valores se comprimen en el hilo de escritura al
+ * guardarlos y se descomprimen al leerlos, así que para el que usa la API no cambia nada.
+ */
+public enum Compression {
+    NONE,
+    // zlib: la que más reduce, para datos grandes que se escriben poco (estructuras, inventarios guardados)
+    DEFLATE,
+    // Formato de bloques LZ4: reduce menos pero comprime y descomprime varias veces más rápido
+    LZ4
+}
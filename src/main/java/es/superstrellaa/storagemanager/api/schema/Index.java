@@ -0,0 +1,9 @@
+package es.superstrellaa.storagemanager.api.schema;
+
+import java.util.List;
+
+public record Index(
+        String name,
+        List<String> columns,
+        boolean unique
+) {}
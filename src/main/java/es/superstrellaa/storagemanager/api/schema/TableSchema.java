@@ -1,18 +1,43 @@
 package es.superstrellaa.storagemanager.api.schema;
 
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.data.RowLayout;
+
 import java.util.ArrayList;
 import java.util.List;
 
 public final class TableSchema {
 
+    public static final String DEFAULT_DATABASE = "main";
+
     private final String name;
     private final List<Column> columns;
     private final List<String> primaryKeys;
+    private final List<Index> indexes;
+    private final boolean checkQueryPlans;
+    private final int rowCacheEntries;
+    private final long rowCacheBytes;
+    private final boolean queryCache;
+    private final String playerColumn;
+    private final String database;
+    private final RowLayout layout;
+    private final boolean compressed;
 
-    private TableSchema(String name, List<Column> columns, List<String> primaryKeys) {
+    private TableSchema(String name, List<Column> columns, List<String> primaryKeys,
+                        List<Index> indexes, boolean checkQueryPlans, int rowCacheEntries, long rowCacheBytes,
+                        boolean queryCache, String playerColumn, String database) {
         this.name = name;
         this.columns = columns;
         this.primaryKeys = primaryKeys;
+        this.indexes = indexes;
+        this.checkQueryPlans = checkQueryPlans;
+        this.rowCacheEntries = rowCacheEntries;
+        this.rowCacheBytes = rowCacheBytes;
+        this.queryCache = queryCache;
+        this.playerColumn = playerColumn;
+        this.database = database;
+        this.layout = RowLayout.of(this);
+        this.compressed = columns.stream().anyMatch(Column::isCompressed);
     }
 
     public String getName() {
@@ -27,6 +52,88 @@ public final class TableSchema {
         return primaryKeys;
     }
 
+    public List<Index> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * @return true si cada nueva forma de WHERE se comprueba con EXPLAIN QUERY PLAN
+     */
+    public boolean isQueryPlanCheckEnabled() {
+        return checkQueryPlans;
+    }
+
+    /**
+     * @return máximo de filas en la caché por clave primaria, 0 si está desactivada
+     */
+    public int getRowCacheEntries() {
+        return rowCacheEntries;
+    }
+
+    /**
+     * @return máximo estimado de bytes de la caché por clave primaria, 0 si solo se limita por filas
+     */
+    public long getRowCacheBytes() {
+        return rowCacheBytes;
+    }
+
+    /**
+     * @return la compresión de la columna (NONE si no la tiene o no existe)
+     */
+    public Compression getCompression(String column) {
+        if (compressed) {
+            for (Column candidate : columns) {
+                if (candidate.name().equals(column)) {
+                    return candidate.compression();
+                }
+            }
+        }
+        return Compression.NONE;
+    }
+
+    /**
+     * @return true si alguna columna se guarda comprimida
+     */
+    public boolean hasCompressedColumns() {
+        return compressed;
+    }
+
+    /**
+     * @return true si los resultados de select y query sobre la tabla se guardan en la caché de consultas
+     */
+    public boolean isQueryCached() {
+        return queryCache;
+    }
+
+    /**
+     * @return columna con el UUID del jugador si es una tabla de datos por jugador, o null
+     */
+    public String getPlayerColumn() {
+        return playerColumn;
+    }
+
+    /**
+     * @return nombre de la base de datos (fichero &lt;nombre&gt;.db) en la que está la tabla
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return posiciones y tipos de las columnas para las filas de esta tabla,
+     * o null si tiene más columnas de las que admite RowLayout
+     */
+    public RowLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Fila vacía con el layout de la tabla
+     */
+    public RowData newRow() {
+        return RowData.of(this);
+    }
+
     public static Builder builder(String name) {
         return new Builder(name);
     }
@@ -36,6 +143,13 @@ public final class TableSchema {
         private final String name;
         private final List<Column> columns = new ArrayList<>();
         private final List<String> primaryKeys = new ArrayList<>();
+        private final List<Index> indexes = new ArrayList<>();
+        private boolean checkQueryPlans = false;
+        private int rowCacheEntries = 0;
+        private long rowCacheBytes = 0;
+        private boolean queryCache = false;
+        private String playerColumn;
+        private String database = DEFAULT_DATABASE;
 
         private Builder(String name) {
             this.name = name;
@@ -51,13 +165,120 @@ public final class TableSchema {
             return this;
         }
 
+        /**
+         * Columna TEXT o BLOB que se guarda comprimida, para valores grandes como inventarios o
+         * estructuras serializadas. No puede formar parte de la clave primaria ni de un índice, y
+         * no se puede filtrar por ella en un WHERE (en la DB no se guarda el valor original).
+         */
+        public Builder column(String name, ColumnType type, boolean notNull, Compression compression) {
+            columns.add(new Column(name, type, notNull, compression));
+            return this;
+        }
+
         public Builder primaryKey(String... keys) {
             primaryKeys.addAll(List.of(keys));
             return this;
         }
 
+        /**
+         * Índice secundario, para que los SELECT por estas columnas no recorran toda la tabla.
+         * El nombre es global en la base de datos, así que conviene prefijarlo con el de la tabla:
+         * si otra tabla de la misma base de datos ya tiene un índice con ese nombre, registrar la tabla
+         * lanza una IllegalArgumentException.
+         */
+        public Builder index(String name, String... columns) {
+            indexes.add(new Index(name, List.of(columns), false));
+            return this;
+        }
+
+        /**
+         * Índice UNIQUE: además de acelerar las búsquedas, impide filas repetidas en esas columnas
+         */
+        public Builder unique(String name, String... columns) {
+            indexes.add(new Index(name, List.of(columns), true));
+            return this;
+        }
+
+        /**
+         * Activa la comprobación con EXPLAIN QUERY PLAN de cada nueva forma de WHERE:
+         * si SQLite tiene que recorrer la tabla entera se avisa en el log y en las métricas
+         */
+        public Builder checkQueryPlans() {
+            this.checkQueryPlans = true;
+            return this;
+        }
+
+        /**
+         * Activa la caché de filas por clave primaria: los select cuyo WHERE es la clave completa
+         * se sirven desde memoria. Se expulsan las filas usadas hace más tiempo al pasar de maxEntries.
+         */
+        public Builder rowCache(int maxEntries) {
+            return rowCache(maxEntries, 0);
+        }
+
+        /**
+         * Como rowCache(maxEntries), limitando además el tamaño estimado en memoria
+         */
+        public Builder rowCache(int maxEntries, long maxBytes) {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Row cache size must be > 0");
+            }
+            this.rowCacheEntries = maxEntries;
+            this.rowCacheBytes = Math.max(0, maxBytes);
+            return this;
+        }
+
+        /**
+         * Guarda en memoria los resultados de select y query sobre la tabla (cualquier WHERE, orden o
+         * límite) hasta la siguiente escritura en ella. Para lecturas caras que se repiten mucho más de
+         * lo que cambia la tabla, como rankings o búsquedas por dueño.
+         */
+        public Builder queryCache() {
+            this.queryCache = true;
+            return this;
+        }
+
+        /**
+         * Marca la tabla como datos por jugador: las filas de cada jugador se cargan en memoria
+         * al entrar al servidor y los select que filtran por su UUID se sirven sin ir a la DB.
+         * La columna tiene que formar parte de la clave primaria y guardar el UUID como texto.
+         */
+        public Builder playerData(String uuidColumn) {
+            this.playerColumn = uuidColumn;
+            return this;
+        }
+
+        /**
+         * Guarda la tabla en su propio fichero (&lt;name&gt;.db) en lugar de en main.db. Cada fichero
+         * tiene su hilo de escritura, así que sus escrituras no esperan a las de otras bases de datos.
+         * Lo normal es usar el id del mod, para que sus tablas no compartan bloqueo con las de otros.
+         */
+        public Builder database(String name) {
+            if (!name.matches("[a-z0-9_]+")) {
+                throw new IllegalArgumentException("Invalid database name " + name + ": use lowercase letters, digits and _");
+            }
+            this.database = name;
+            return this;
+        }
+
         public TableSchema build() {
-            return new TableSchema(name, columns, primaryKeys);
+            for (Column column : columns) {
+                if (column.isCompressed()) {
+                    checkCompressed(column);
+                }
+            }
+            return new TableSchema(name, columns, primaryKeys, indexes, checkQueryPlans, rowCacheEntries, rowCacheBytes,
+                    queryCache, playerColumn, database);
+        }
+
+        private void checkCompressed(Column column) {
+            if (column.type() != ColumnType.TEXT && column.type() != ColumnType.BLOB) {
+                throw new IllegalArgumentException("Column " + column.name() + " of table " + name + " must be TEXT or BLOB to be compressed");
+            }
+            boolean indexed = indexes.stream().anyMatch(index -> index.columns().contains(column.name()));
+            if (primaryKeys.contains(column.name()) || indexed || column.name().equals(playerColumn)) {
+                throw new IllegalArgumentException("Compressed column " + column.name() + " of table " + name + " can't be part of a key or index");
+            }
         }
     }
 }
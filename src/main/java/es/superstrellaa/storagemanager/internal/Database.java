@@ -0,0 +1,125 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Un fichero SQLite con su hilo de escritura y su pool de lectura.
+ *
+ * Cada fichero tiene su propio bloqueo de escritura y su propio WAL, así que las tablas
+ * de bases de datos distintas se guardan en paralelo sin esperarse entre ellas.
+ */
+@ApiStatus.Internal
+public final class Database {
+
+    private final String name;
+    private final Path path;
+    private final DatabaseWriter writer;
+    private final ReadPool readPool;
+
+    private Database(String name, Path path, DatabaseWriter writer, ReadPool readPool) {
+        this.name = name;
+        this.path = path;
+        this.writer = writer;
+        this.readPool = readPool;
+    }
+
+    static Database open(String name, Path path, int readConnections) throws Exception {
+        Files.createDirectories(path.getParent());
+
+        String url = "jdbc:sqlite:" + path.toAbsolutePath();
+        StorageConfig config = StorageConfig.get();
+
+        // La conexión de escritura va primero: es la que activa WAL en el fichero
+        Connection connection = DriverManager.getConnection(url);
+        applyPragmas(connection, config);
+        DatabaseWriter writer = new DatabaseWriter(name, connection);
+
+        return new Database(name, path, writer, new ReadPool(url, readConnections, tuningPragmas(config)));
+    }
+
+    private static void applyPragmas(Connection connection, StorageConfig config) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            // Igual que auto_vacuum, solo cambia en ficheros nuevos (en WAL ya no se puede cambiar)
+            if (config.getPageSize() > 0) {
+                stmt.execute("PRAGMA page_size=" + config.getPageSize() + ";");
+            }
+            // Solo tiene efecto en ficheros nuevos (antes de crear la primera tabla)
+            stmt.execute("PRAGMA auto_vacuum=INCREMENTAL;");
+            stmt.execute("PRAGMA journal_mode=WAL;");
+            stmt.execute("PRAGMA synchronous=NORMAL;");
+            stmt.execute("PRAGMA foreign_keys=ON;");
+            stmt.execute("PRAGMA temp_store=MEMORY;");
+            for (String pragma : tuningPragmas(config)) {
+                stmt.execute(pragma);
+            }
+        }
+    }
+
+    /**
+     * Pragmas por conexión que se pueden cambiar en caliente
+     */
+    private static List<String> tuningPragmas(StorageConfig config) {
+        return List.of(
+                // En negativo cache_size va en KiB en lugar de en páginas
+                "PRAGMA cache_size=-" + config.getCacheSizeKb() + ";",
+                "PRAGMA mmap_size=" + config.getMmapSizeMb() * 1024L * 1024L + ";"
+        );
+    }
+
+    /**
+     * Aplica cache_size y mmap_size de una configuración recargada: en la conexión de escritura
+     * en su hilo y en cada conexión de lectura la próxima vez que se use
+     */
+    void configure(StorageConfig config) {
+        List<String> pragmas = tuningPragmas(config);
+        writer.submit((connection, statements) -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String pragma : pragmas) {
+                    stmt.execute(pragma);
+                }
+            }
+            return null;
+        }).exceptionally(e -> {
+            StorageManagerAPI.LOGGER.error("Failed to apply storage config to database {}", name, e);
+            return null;
+        });
+        readPool.configure(pragmas);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Hilo de escritura, dueño de la única conexión que puede modificar este fichero
+     */
+    public DatabaseWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Conexiones de solo lectura para los SELECT
+     */
+    public ReadPool getReadPool() {
+        return readPool;
+    }
+
+    void close() {
+        writer.shutdown();
+        readPool.close();
+    }
+}
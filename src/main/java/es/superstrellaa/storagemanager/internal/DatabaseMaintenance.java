@@ -0,0 +1,262 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.internal.cache.FlushScheduler;
+import es.superstrellaa.storagemanager.internal.metrics.LatencyHistogram;
+import es.superstrellaa.storagemanager.internal.metrics.MaintenanceEvent;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantenimiento periódico de los ficheros SQLite, siempre en el hilo de escritura de cada base de datos:
+ *
+ * - Checkpoint del WAL (PASSIVE, o TRUNCATE si ha crecido) cuando el servidor no va cargado. El
+ *   checkpoint automático de SQLite se desactiva, porque saltaba en la escritura que cruzaba el
+ *   umbral, a veces un insertImmediate desde el hilo del servidor.
+ * - PRAGMA optimize de vez en cuando para que el planificador tenga estadísticas.
+ * - incremental_vacuum en pasos pequeños para devolver al sistema las páginas libres.
+ *
+ * Si el servidor lleva mucho tiempo cargado el checkpoint se hace igualmente al pasar de
+ * WAL_FORCE_BYTES, para que el WAL no crezca sin límite.
+ */
+@ApiStatus.Internal
+public final class DatabaseMaintenance {
+
+    private static final long TICK_MS = 5_000;
+
+    private static final long CHECKPOINT_INTERVAL_MS = 30_000;
+    // A partir de este tamaño el checkpoint es TRUNCATE, que además deja el WAL a cero
+    private static final long WAL_TRUNCATE_BYTES = 16L * 1024 * 1024;
+    // A partir de este tamaño se hace checkpoint aunque el servidor vaya cargado
+    private static final long WAL_FORCE_BYTES = 64L * 1024 * 1024;
+
+    private static final long OPTIMIZE_DELAY_MS = 10 * 60_000;
+    private static final long OPTIMIZE_INTERVAL_MS = 60 * 60_000;
+    // Filas que mira ANALYZE por índice: estadísticas aproximadas pero baratas
+    private static final int ANALYSIS_LIMIT = 400;
+
+    private static final long VACUUM_INTERVAL_MS = 10_000;
+    private static final int VACUUM_STEP_PAGES = 256;
+
+    private static final Map<String, State> states = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService scheduler;
+
+    public static synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "StorageManager-Maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(DatabaseMaintenance::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        StorageManagerAPI.LOGGER.info("Database maintenance started (checkpoint every {}s, optimize every {}min)",
+                CHECKPOINT_INTERVAL_MS / 1000, OPTIMIZE_INTERVAL_MS / 60_000);
+    }
+
+    public static synchronized void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        scheduler = null;
+        states.clear();
+    }
+
+    private static void tick() {
+        boolean busy = FlushScheduler.getInstance().isServerBusy();
+        long now = System.currentTimeMillis();
+
+        for (Database database : SQLiteBackend.databases()) {
+            State state = states.computeIfAbsent(database.getName(), name -> new State(now));
+            if (state.running) {
+                continue;
+            }
+
+            long walBytes = walSize(database.getPath());
+            boolean checkpoint = walBytes >= WAL_FORCE_BYTES
+                    || (!busy && walBytes > 0 && now - state.lastCheckpoint >= CHECKPOINT_INTERVAL_MS);
+            boolean optimize = !busy && now - state.lastOptimize >= (state.optimized ? OPTIMIZE_INTERVAL_MS : OPTIMIZE_DELAY_MS);
+            boolean vacuum = !busy && state.incrementalVacuum && now - state.lastVacuum >= VACUUM_INTERVAL_MS;
+
+            if (state.initialized && !checkpoint && !optimize && !vacuum) {
+                continue;
+            }
+
+            state.running = true;
+            database.getWriter().submit((connection, statements) -> {
+                if (!state.initialized) {
+                    init(database.getName(), connection, state);
+                }
+                if (checkpoint) {
+                    checkpoint(database.getName(), connection, walBytes >= WAL_TRUNCATE_BYTES);
+                    state.lastCheckpoint = now;
+                }
+                if (vacuum && state.incrementalVacuum) {
+                    vacuum(database.getName(), connection);
+                    state.lastVacuum = now;
+                }
+                if (optimize) {
+                    optimize(database.getName(), connection, state.optimized);
+                    state.optimized = true;
+                    state.lastOptimize = now;
+                }
+                return null;
+            }).whenComplete((result, error) -> {
+                state.running = false;
+                if (error != null) {
+                    StorageManagerAPI.LOGGER.error("Maintenance failed for database {}", database.getName(), error);
+                }
+            });
+        }
+    }
+
+    /**
+     * Primera pasada sobre la base de datos: desactiva el checkpoint automático y mira si admite incremental_vacuum
+     */
+    private static void init(String name, Connection connection, State state) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA wal_autocheckpoint=0;");
+            stmt.execute("PRAGMA analysis_limit=" + ANALYSIS_LIMIT + ";");
+
+            try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum;")) {
+                // 2 = INCREMENTAL. Solo se puede cambiar en ficheros nuevos o con un VACUUM completo
+                state.incrementalVacuum = rs.next() && rs.getInt(1) == 2;
+            }
+        }
+
+        if (!state.incrementalVacuum) {
+            StorageManagerAPI.LOGGER.info("Database {} was created without auto_vacuum=INCREMENTAL, "
+                    + "free pages are only reclaimed by a manual VACUUM", name);
+        }
+        state.initialized = true;
+    }
+
+    private static void checkpoint(String name, Connection connection, boolean truncate) throws SQLException {
+        String mode = truncate ? "TRUNCATE" : "PASSIVE";
+        MaintenanceEvent event = begin(name, "checkpoint");
+        long start = System.nanoTime();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(" + mode + ");")) {
+            // busy, páginas en el WAL, páginas copiadas a la DB
+            if (rs.next()) {
+                if (rs.getInt(1) != 0) {
+                    StorageManagerAPI.LOGGER.debug("WAL checkpoint ({}) of database {} blocked by readers", mode, name);
+                }
+                event.pages = Math.max(0, rs.getInt(3));
+                StorageMetrics.maintenance().checkpointedPages.add(event.pages);
+            }
+        } finally {
+            end(event, StorageMetrics.maintenance().checkpointTime, start);
+        }
+    }
+
+    private static void vacuum(String name, Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            int free;
+            try (ResultSet rs = stmt.executeQuery("PRAGMA freelist_count;")) {
+                free = rs.next() ? rs.getInt(1) : 0;
+            }
+            if (free == 0) {
+                return;
+            }
+
+            MaintenanceEvent event = begin(name, "incremental_vacuum");
+            long start = System.nanoTime();
+            try {
+                if (stmt.execute("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ");")) {
+                    // Cada fila es un paso del vacuum: hay que recorrerlas todas para que termine
+                    try (ResultSet rs = stmt.getResultSet()) {
+                        while (rs.next()) {
+                        }
+                    }
+                }
+                event.pages = Math.min(free, VACUUM_STEP_PAGES);
+                StorageMetrics.maintenance().vacuumedPages.add(event.pages);
+            } finally {
+                end(event, StorageMetrics.maintenance().vacuumTime, start);
+            }
+        }
+    }
+
+    /**
+     * La primera vez con 0x10002 (mirar todas las tablas, aunque la conexión no las haya usado)
+     */
+    private static void optimize(String name, Connection connection, boolean optimized) throws SQLException {
+        MaintenanceEvent event = begin(name, "optimize");
+        long start = System.nanoTime();
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(optimized ? "PRAGMA optimize;" : "PRAGMA optimize=0x10002;");
+        } finally {
+            end(event, StorageMetrics.maintenance().optimizeTime, start);
+        }
+    }
+
+    private static MaintenanceEvent begin(String database, String job) {
+        MaintenanceEvent event = new MaintenanceEvent();
+        event.database = database;
+        event.job = job;
+        event.begin();
+        return event;
+    }
+
+    private static void end(MaintenanceEvent event, LatencyHistogram histogram, long startNanos) {
+        histogram.record(System.nanoTime() - startNanos);
+        event.commit();
+    }
+
+    private static long walSize(Path database) {
+        try {
+            Path wal = database.resolveSibling(database.getFileName() + "-wal");
+            return Files.exists(wal) ? Files.size(wal) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Estado del mantenimiento de una base de datos. Solo hay una pasada en curso a la vez (running),
+     * así que los campos no se pisan entre el hilo de mantenimiento y el de escritura.
+     */
+    private static final class State {
+        volatile boolean running;
+        volatile boolean initialized;
+        volatile boolean incrementalVacuum;
+        volatile boolean optimized;
+        volatile long lastCheckpoint;
+        volatile long lastOptimize;
+        volatile long lastVacuum;
+
+        State(long now) {
+            this.lastCheckpoint = now;
+            this.lastOptimize = now;
+            this.lastVacuum = now;
+        }
+    }
+
+    private DatabaseMaintenance() {}
+}
@@ -0,0 +1,111 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hilo único que es dueño de la conexión de escritura.
+ *
+ * Todas las escrituras (inmediatas, flushes de la caché, DDL) se encolan aquí y se
+ * ejecutan de una en una, así que ninguna puede acabar dentro de la transacción de otra.
+ */
+@ApiStatus.Internal
+public final class DatabaseWriter {
+
+    private final Connection connection;
+    private final StatementCache statements;
+    private volatile Thread thread;
+
+    private final ExecutorService executor;
+
+    DatabaseWriter(String name, Connection connection) {
+        this.connection = connection;
+        this.statements = new StatementCache(connection);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "StorageManager-Writer-" + name);
+            t.setDaemon(true);
+            thread = t;
+            return t;
+        });
+    }
+
+    /**
+     * Encola la tarea en el hilo de escritura
+     */
+    public <T> CompletableFuture<T> submit(WriteTask<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(task.run(connection, statements));
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Ejecuta la tarea en el hilo de escritura y espera a que termine.
+     * Si ya estamos en ese hilo se ejecuta directamente para no bloquearnos a nosotros mismos.
+     */
+    public <T> T call(WriteTask<T> task) throws SQLException {
+        if (isWriterThread()) {
+            return task.run(connection, statements);
+        }
+
+        try {
+            return submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer thread", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException sql) throw sql;
+            if (cause instanceof RuntimeException runtime) throw runtime;
+            if (cause instanceof Error error) throw error;
+            throw new SQLException(cause);
+        }
+    }
+
+    public boolean isWriterThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Termina las tareas encoladas y cierra la conexión de escritura
+     */
+    void shutdown() {
+        executor.execute(() -> {
+            statements.close();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                StorageManagerAPI.LOGGER.error("Error closing SQLite write connection", e);
+            }
+        });
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                StorageManagerAPI.LOGGER.warn("Writer thread did not finish in time, pending writes may be lost");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface WriteTask<T> {
+        T run(Connection connection, StatementCache statements) throws SQLException;
+    }
+}
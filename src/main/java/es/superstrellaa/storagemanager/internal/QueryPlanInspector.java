@@ -0,0 +1,70 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Comprueba con EXPLAIN QUERY PLAN si un SELECT recorre la tabla entera.
+ *
+ * Solo se ejecuta para las tablas que lo activan en su esquema, y una vez por
+ * cada forma de WHERE (tabla + columnas filtradas), no en cada consulta.
+ */
+@ApiStatus.Internal
+public final class QueryPlanInspector {
+
+    private static final Set<String> checkedShapes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param columns columnas por las que filtra el WHERE
+     * @param params  parámetros del SELECT, en orden
+     */
+    public static void check(Connection connection, String table, Collection<String> columns, String sql, List<Object> params) {
+        // Sin WHERE recorrer la tabla es justo lo que se ha pedido
+        if (columns.isEmpty()) {
+            return;
+        }
+
+        TableSchema schema = SchemaRegistry.get(table);
+        if (schema == null || !schema.isQueryPlanCheckEnabled()) {
+            return;
+        }
+
+        String shape = table + " " + new TreeSet<>(columns);
+        if (!checkedShapes.add(shape)) {
+            return;
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String detail = rs.getString("detail");
+                    if (detail != null && detail.startsWith("SCAN")) {
+                        StorageMetrics.table(table).fullScans.increment();
+                        StorageManagerAPI.LOGGER.warn("Full table scan on {} filtering by {}: {}. Consider adding an index with TableSchema.Builder#index",
+                                table, new TreeSet<>(columns), detail);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            StorageManagerAPI.LOGGER.debug("Could not check query plan for {}", shape, e);
+        }
+    }
+
+    private QueryPlanInspector() {}
+}
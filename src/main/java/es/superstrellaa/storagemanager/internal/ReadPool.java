@@ -0,0 +1,144 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool de conexiones de solo lectura.
+ *
+ * Con WAL cada lector ve la última versión commiteada sin esperar al hilo de escritura.
+ * Esperar una conexión tiene límite: un cursor sin cerrar, o una lectura que abre otra con
+ * el pool lleno, acaba en error en lugar de dejar el hilo bloqueado para siempre.
+ */
+@ApiStatus.Internal
+public final class ReadPool {
+
+    static final long ACQUIRE_TIMEOUT_SECONDS = 10;
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final BlockingQueue<Connection> idle;
+
+    // Pragmas de ajuste (cache_size, mmap_size) y los que tiene ya aplicados cada conexión
+    private volatile List<String> pragmas;
+    private final Map<Connection, List<String>> applied = new ConcurrentHashMap<>();
+
+    ReadPool(String url, int size, List<String> pragmas) throws SQLException {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.pragmas = pragmas;
+
+        for (int i = 0; i < size; i++) {
+            Connection connection = DriverManager.getConnection(url);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA query_only=ON;");
+                stmt.execute("PRAGMA temp_store=MEMORY;");
+            }
+            apply(connection, pragmas);
+            connections.add(connection);
+            idle.add(connection);
+        }
+    }
+
+    /**
+     * Cambia los pragmas de ajuste. Las conexiones ocupadas no se tocan: se aplican al sacarlas del pool.
+     */
+    void configure(List<String> pragmas) {
+        this.pragmas = pragmas;
+    }
+
+    private void apply(Connection connection, List<String> wanted) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String pragma : wanted) {
+                stmt.execute(pragma);
+            }
+        }
+        applied.put(connection, wanted);
+    }
+
+    /**
+     * Ejecuta la lectura con una conexión libre del pool, esperando si están todas ocupadas
+     */
+    public <T> T read(ReadTask<T> task) throws SQLException {
+        Connection connection = acquire();
+        try {
+            return task.run(connection);
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * Saca una conexión del pool para quien necesita tenerla más allá de una llamada (cursores).
+     * Hay que devolverla siempre con release().
+     *
+     * @throws SQLException si no queda ninguna libre en ACQUIRE_TIMEOUT_SECONDS
+     */
+    public Connection acquire() throws SQLException {
+        Connection connection;
+        try {
+            connection = idle.poll(ACQUIRE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+        if (connection == null) {
+            throw new SQLException("No read connection free after " + ACQUIRE_TIMEOUT_SECONDS + " seconds, all "
+                    + connections.size() + " are in use (cursors left open, or a read nested inside another?)");
+        }
+
+        List<String> wanted = pragmas;
+        if (applied.get(connection) != wanted) {
+            try {
+                apply(connection, wanted);
+            } catch (SQLException e) {
+                release(connection);
+                throw e;
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Devuelve la conexión al pool. Si se ha usado en una transacción (lecturas que necesitan un
+     * solo snapshot de la DB) se cierra aquí.
+     */
+    public void release(Connection connection) {
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            StorageManagerAPI.LOGGER.error("Failed to end read transaction", e);
+        }
+        idle.add(connection);
+    }
+
+    void close() {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                StorageManagerAPI.LOGGER.error("Error closing SQLite read connection", e);
+            }
+        }
+        connections.clear();
+        idle.clear();
+        applied.clear();
+    }
+
+    @FunctionalInterface
+    public interface ReadTask<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
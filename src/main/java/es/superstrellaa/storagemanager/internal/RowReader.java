@@ -0,0 +1,122 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.data.RowLayout;
+import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.Compression;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.compression.ColumnCodec;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Convierte filas de un ResultSet en RowData. El layout se resuelve una sola vez por
+ * ResultSet y cada valor se lee por posición.
+ * Las columnas comprimidas se descomprimen aquí, así que las filas salen con el valor original.
+ *
+ * Los INTEGER y REAL se leen con getObject: SQLite guarda lo que le llega aunque no sea del tipo
+ * de la columna, y getLong convertiría un TEXT no numérico en 0. Los números se quedan como
+ * primitivos en la fila (RowData.set).
+ */
+@ApiStatus.Internal
+public final class RowReader {
+
+    private final RowLayout layout;
+    private final String[] columns;
+    // Tipo de cada columna comprimida (null en el resto), o null si no hay ninguna
+    private final ColumnType[] compressed;
+
+    public RowReader(ResultSet rs, String table) throws SQLException {
+        ResultSetMetaData meta = rs.getMetaData();
+        this.columns = new String[meta.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = meta.getColumnName(i + 1);
+        }
+        TableSchema schema = SchemaRegistry.get(table);
+        this.layout = layoutFor(schema, columns);
+        this.compressed = compressedColumns(schema, columns);
+    }
+
+    private static ColumnType[] compressedColumns(TableSchema schema, String[] columns) {
+        if (schema == null || !schema.hasCompressedColumns()) {
+            return null;
+        }
+        ColumnType[] types = new ColumnType[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (schema.getCompression(columns[i]) != Compression.NONE) {
+                types[i] = typeOf(schema, columns[i]);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * SELECT * usa el layout del esquema; el resto (select(), agregados) uno propio con
+     * los tipos del esquema para las columnas que los tienen
+     */
+    private static RowLayout layoutFor(TableSchema schema, String[] columns) {
+        if (columns.length > RowLayout.MAX_COLUMNS) {
+            return null;
+        }
+
+        RowLayout schemaLayout = schema == null ? null : schema.getLayout();
+        if (schemaLayout != null && schemaLayout.size() == columns.length) {
+            boolean same = true;
+            for (int i = 0; i < columns.length && same; i++) {
+                same = schemaLayout.name(i).equals(columns[i]);
+            }
+            if (same) {
+                return schemaLayout;
+            }
+        }
+
+        List<ColumnType> types = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            types.add(typeOf(schema, column));
+        }
+        return RowLayout.of(List.of(columns), types);
+    }
+
+    private static ColumnType typeOf(TableSchema schema, String column) {
+        if (schema != null) {
+            for (Column candidate : schema.getColumns()) {
+                if (candidate.name().equals(column)) {
+                    return candidate.type();
+                }
+            }
+        }
+        return null;
+    }
+
+    public RowData read(ResultSet rs) throws SQLException {
+        if (layout == null) {
+            RowData row = new RowData();
+            for (int i = 0; i < columns.length; i++) {
+                Object value = rs.getObject(i + 1);
+                row.set(columns[i], compressed != null && compressed[i] != null ? ColumnCodec.decode(value, compressed[i]) : value);
+            }
+            return row;
+        }
+
+        RowData row = new RowData(layout);
+        for (int i = 0; i < columns.length; i++) {
+            ColumnType type = layout.type(i);
+            if (compressed != null && compressed[i] != null) {
+                row.set(i, ColumnCodec.decode(rs.getObject(i + 1), compressed[i]));
+            } else if (type == ColumnType.TEXT) {
+                row.set(i, rs.getString(i + 1));
+            } else if (type == ColumnType.BLOB) {
+                row.set(i, rs.getBytes(i + 1));
+            } else {
+                row.set(i, rs.getObject(i + 1));
+            }
+        }
+        return row;
+    }
+}
@@ -1,57 +1,177 @@
 package es.superstrellaa.storagemanager.internal;
 
 import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
 import org.jetbrains.annotations.ApiStatus;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ApiStatus.Internal
 public final class SQLiteBackend {
 
-    private static Connection connection;
+    public static final String MAIN_DATABASE = TableSchema.DEFAULT_DATABASE;
 
-    public static void init() {
-        try {
-            Path dbPath = StoragePaths.getDatabasePath();
-            Files.createDirectories(dbPath.getParent());
+    // Las conexiones de lectura de la principal salen de StorageConfig. Las bases de datos
+    // aparte suelen tener pocas tablas: como mucho EXTRA_READ_POOL_SIZE conexiones
+    private static final int EXTRA_READ_POOL_SIZE = 2;
+    private static final int QUERY_QUEUE_CAPACITY = 1024;
 
-            String url = "jdbc:sqlite:" + dbPath.toAbsolutePath();
-            connection = DriverManager.getConnection(url);
+    private static final Map<String, Database> databases = new ConcurrentHashMap<>();
+    private static Path directory;
+    private static ExecutorService queryExecutor;
+    // Después de shutdown() no se abre ninguna base de datos: computeIfAbsent la volvería a abrir sin avisar
+    private static volatile boolean closed;
 
-            applyPragmas();
+    public static void init() {
+        init(StoragePaths.getDatabasePath());
+    }
 
-            StorageManagerAPI.LOGGER.info("SQLite initialized at {}", dbPath);
+    /**
+     * Inicializa el backend sobre un fichero concreto, sin pasar por StoragePaths
+     * (que necesita Fabric). Lo usan los benchmarks para trabajar con una DB temporal.
+     * Las demás bases de datos se crean en el mismo directorio.
+     */
+    public static void init(Path dbPath) {
+        try {
+            int readConnections = StorageConfig.get().getReadConnections();
+            directory = dbPath.toAbsolutePath().getParent();
+            closed = false;
+            databases.put(MAIN_DATABASE, Database.open(MAIN_DATABASE, dbPath, readConnections));
+            queryExecutor = createQueryExecutor(readConnections);
+
+            StorageManagerAPI.LOGGER.info("SQLite initialized at {} ({} read connections)", dbPath, readConnections);
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to initialize SQLite", e);
         }
     }
 
-    private static void applyPragmas() throws Exception {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("PRAGMA journal_mode=WAL;");
-            stmt.execute("PRAGMA synchronous=NORMAL;");
-            stmt.execute("PRAGMA foreign_keys=ON;");
-            stmt.execute("PRAGMA temp_store=MEMORY;");
+    /**
+     * Un hilo por conexión de lectura y cola acotada: si se llena, el future falla
+     * en lugar de ejecutar la consulta en el hilo que la pidió
+     */
+    private static ExecutorService createQueryExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUERY_QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "StorageManager-Query-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    /**
+     * La base de datos con ese nombre (&lt;nombre&gt;.db junto a la principal), abriéndola la primera vez
+     */
+    public static Database database(String name) {
+        if (closed) {
+            throw new IllegalStateException("SQLite backend is shut down, cannot use database " + name);
         }
+        return databases.computeIfAbsent(name, key -> {
+            Path path = directory.resolve(key + ".db");
+            try {
+                int readConnections = Math.min(EXTRA_READ_POOL_SIZE, StorageConfig.get().getReadConnections());
+                Database database = Database.open(key, path, readConnections);
+                StorageManagerAPI.LOGGER.info("SQLite database {} opened at {}", key, path);
+                return database;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to open SQLite database " + key, e);
+            }
+        });
+    }
+
+    /**
+     * Aplica cache_size y mmap_size de una configuración recargada a todas las bases de datos abiertas
+     */
+    public static void configure(StorageConfig config) {
+        databases.values().forEach(database -> database.configure(config));
     }
 
-    public static Connection getConnection() {
-        return connection;
+    /**
+     * La base de datos en la que está la tabla (la principal si no está registrada)
+     */
+    public static Database databaseFor(String table) {
+        TableSchema schema = SchemaRegistry.get(table);
+        return database(schema == null ? MAIN_DATABASE : schema.getDatabase());
+    }
+
+    /**
+     * @return las bases de datos abiertas ahora mismo
+     */
+    public static Collection<Database> databases() {
+        return List.copyOf(databases.values());
+    }
+
+    /**
+     * Hilo de escritura de la base de datos principal
+     */
+    public static DatabaseWriter getWriter() {
+        return database(MAIN_DATABASE).getWriter();
+    }
+
+    /**
+     * Hilo de escritura de la base de datos de la tabla
+     */
+    public static DatabaseWriter getWriter(String table) {
+        return databaseFor(table).getWriter();
+    }
+
+    /**
+     * Conexiones de solo lectura de la base de datos de la tabla
+     */
+    public static ReadPool getReadPool(String table) {
+        return databaseFor(table).getReadPool();
+    }
+
+    /**
+     * @return true si el hilo actual es el de escritura de alguna base de datos
+     */
+    public static boolean isWriterThread() {
+        for (Database database : databases.values()) {
+            if (database.getWriter().isWriterThread()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Executor de las consultas async
+     */
+    public static ExecutorService getQueryExecutor() {
+        return queryExecutor;
     }
 
     public static void shutdown() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        closed = true;
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+            try {
+                if (!queryExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    queryExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                queryExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
             }
-        } catch (Exception e) {
-            StorageManagerAPI.LOGGER.error("Error closing SQLite connection", e);
         }
+        databases.values().forEach(Database::close);
+        databases.clear();
     }
 
     private SQLiteBackend() {}
@@ -0,0 +1,79 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.Compression;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Esquemas de las tablas registradas, para saber sus columnas y claves primarias en tiempo de ejecución
+ */
+@ApiStatus.Internal
+public final class SchemaRegistry {
+
+    private static final Map<String, TableSchema> schemas = new ConcurrentHashMap<>();
+
+    public static void register(TableSchema schema) {
+        schemas.put(schema.getName(), schema);
+    }
+
+    /**
+     * @return el esquema de la tabla, o null si no se ha registrado en esta sesión
+     */
+    public static TableSchema get(String table) {
+        return schemas.get(table);
+    }
+
+    /**
+     * @return los esquemas registrados en esta sesión
+     */
+    public static Collection<TableSchema> all() {
+        return List.copyOf(schemas.values());
+    }
+
+    /**
+     * Un UPDATE se puede hacer como upsert (INSERT ... ON CONFLICT DO UPDATE) si filtra por
+     * la clave primaria completa y la fila nueva tendría todas las columnas NOT NULL
+     *
+     * @param whereColumns columnas del WHERE
+     * @param written      columnas que escribe el UPDATE
+     */
+    public static boolean canUpsert(String table, Collection<String> whereColumns, Collection<String> written) {
+        TableSchema schema = schemas.get(table);
+        if (schema == null || schema.getPrimaryKeys().isEmpty()
+                || !new HashSet<>(schema.getPrimaryKeys()).equals(new HashSet<>(whereColumns))) {
+            return false;
+        }
+
+        for (Column column : schema.getColumns()) {
+            if (column.notNull() && !whereColumns.contains(column.name()) && !written.contains(column.name())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Las columnas comprimidas no se pueden usar para filtrar: en la DB no está el valor original
+     * @throws IllegalArgumentException si alguna de las columnas está comprimida
+     */
+    public static void checkFilter(String table, Collection<String> columns) {
+        TableSchema schema = schemas.get(table);
+        if (schema == null || !schema.hasCompressedColumns()) {
+            return;
+        }
+        for (String column : columns) {
+            if (schema.getCompression(column) != Compression.NONE) {
+                throw new IllegalArgumentException("Column " + column + " of table " + table + " is compressed and can't be used to filter");
+            }
+        }
+    }
+
+    private SchemaRegistry() {}
+}
@@ -0,0 +1,140 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.query.RowCursor;
+import es.superstrellaa.storagemanager.internal.cache.PendingSnapshot;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.lang.ref.Cleaner;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Cursor sobre un ResultSet abierto: lee las filas de la DB de una en una y, al acabar,
+ * añade las que solo existen en la caché de escritura.
+ *
+ * Si se pierde sin cerrarlo, el Cleaner devuelve la conexión al pool cuando el GC lo recoge
+ * (y avisa en el log): hasta entonces la conexión sigue ocupada.
+ */
+@ApiStatus.Internal
+final class SelectCursor implements RowCursor {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final String table;
+    private final ResultSet rs;
+    private final Resources resources;
+    private final Cleaner.Cleanable cleanable;
+    private final RowReader reader;
+    private final PendingSnapshot pending;
+    private final List<RowData> pendingRows;
+
+    private Iterator<RowData> pendingIterator;
+    private RowData next;
+    private long rows;
+    private boolean closed;
+
+    SelectCursor(String table, ReadPool pool, Connection connection, PreparedStatement stmt, ResultSet rs,
+                 PendingSnapshot pending, List<RowData> pendingRows) throws SQLException {
+        this.table = table;
+        this.rs = rs;
+        this.resources = new Resources(table, pool, connection, stmt);
+        this.cleanable = CLEANER.register(this, resources);
+        this.reader = new RowReader(rs, table);
+        this.pending = pending;
+        this.pendingRows = pendingRows;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            next = advance();
+            if (next == null) {
+                close();
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public RowData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        RowData row = next;
+        next = null;
+        rows++;
+        return row;
+    }
+
+    private RowData advance() {
+        if (pendingIterator == null) {
+            try {
+                while (rs.next()) {
+                    RowData row = reader.read(rs);
+                    if (pending.keepsCommitted(row)) {
+                        return row;
+                    }
+                }
+            } catch (SQLException e) {
+                close();
+                throw new RuntimeException("Failed to read from table " + table, e);
+            }
+            pendingIterator = pendingRows.iterator();
+        }
+
+        return pendingIterator.hasNext() ? pendingIterator.next() : null;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        resources.closed = true;
+        cleanable.clean();
+        StorageMetrics.table(table).rowsReturned.add(rows);
+    }
+
+    /**
+     * Lo que hay que liberar al cerrar. No puede apuntar al cursor: el Cleaner no lo recogería nunca.
+     */
+    private static final class Resources implements Runnable {
+        final String table;
+        final ReadPool pool;
+        final Connection connection;
+        final PreparedStatement stmt;
+        // true si se llega desde close(); si no, el cursor se ha perdido sin cerrar
+        volatile boolean closed;
+
+        Resources(String table, ReadPool pool, Connection connection, PreparedStatement stmt) {
+            this.table = table;
+            this.pool = pool;
+            this.connection = connection;
+            this.stmt = stmt;
+        }
+
+        @Override
+        public void run() {
+            if (!closed) {
+                StorageManagerAPI.LOGGER.warn("Cursor on table {} was never closed, returning its read connection to the pool", table);
+            }
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                StorageManagerAPI.LOGGER.error("Failed to close cursor on table {}", table, e);
+            } finally {
+                pool.release(connection);
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de PreparedStatements asociada a una conexión.
+ *
+ * Cada sentencia se identifica por (tabla, operación, columnas ordenadas, filas por sentencia),
+ * así que filas con la misma forma reutilizan la misma sentencia y pueden ir en el mismo batch.
+ */
+@ApiStatus.Internal
+public final class StatementCache {
+
+    // SQLITE_MAX_VARIABLE_NUMBER por defecto desde SQLite 3.32
+    static final int MAX_PARAMETERS = 32766;
+    // Más filas por sentencia apenas mejora y hace el SQL enorme
+    static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private final Connection connection;
+    private final Map<StatementKey, PreparedStatement> statements = new ConcurrentHashMap<>();
+
+    public StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Devuelve la sentencia INSERT OR REPLACE para las columnas dadas (en ese orden)
+     */
+    public PreparedStatement insert(String table, List<String> columns) throws SQLException {
+        return get(new StatementKey(table, Operation.INSERT, columns, 1, null));
+    }
+
+    /**
+     * INSERT OR REPLACE con varias filas en el mismo VALUES: (?, ?), (?, ?)...
+     */
+    public PreparedStatement insertRows(String table, List<String> columns, int rows) throws SQLException {
+        return get(new StatementKey(table, Operation.INSERT, columns, rows, null));
+    }
+
+    /**
+     * Devuelve la sentencia DELETE cuyo WHERE compara por igualdad las columnas dadas
+     */
+    public PreparedStatement delete(String table, List<String> columns) throws SQLException {
+        return get(new StatementKey(table, Operation.DELETE, columns, 1, null));
+    }
+
+    /**
+     * DELETE de varias filas a la vez: col IN (?, ?...) o (a, b) IN (VALUES (?, ?), (?, ?)...)
+     */
+    public PreparedStatement deleteRows(String table, List<String> columns, int rows) throws SQLException {
+        return get(new StatementKey(table, Operation.DELETE, columns, rows, null));
+    }
+
+    /**
+     * UPDATE ... SET a = ?, n = COALESCE(n, 0) + ? WHERE ..., o su versión upsert:
+     * INSERT ... ON CONFLICT (clave) DO UPDATE SET a = excluded.a, n = COALESCE(n, 0) + excluded.n
+     */
+    public PreparedStatement update(String table, UpdateShape shape) throws SQLException {
+        return get(new StatementKey(table, shape.upsert() ? Operation.UPSERT : Operation.UPDATE, shape.where(), 1, shape));
+    }
+
+    /**
+     * @return cuántas filas de estas columnas caben en una sentencia sin pasar el límite de parámetros
+     */
+    public static int rowsPerStatement(int columns) {
+        return Math.max(1, Math.min(MAX_ROWS_PER_STATEMENT, MAX_PARAMETERS / Math.max(1, columns)));
+    }
+
+    /**
+     * Prepara la sentencia una sola vez aunque la pidan dos hilos a la vez (la segunda se quedaría sin cerrar)
+     */
+    private PreparedStatement get(StatementKey key) throws SQLException {
+        try {
+            return statements.computeIfAbsent(key, k -> {
+                try {
+                    return connection.prepareStatement(buildSql(k));
+                } catch (SQLException e) {
+                    throw new PrepareFailed(e);
+                }
+            });
+        } catch (PrepareFailed e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Lleva el SQLException de prepareStatement fuera de computeIfAbsent
+     */
+    private static final class PrepareFailed extends RuntimeException {
+        PrepareFailed(SQLException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    /**
+     * Cierra todas las sentencias cacheadas
+     */
+    public void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                StorageManagerAPI.LOGGER.error("Failed to close cached statement", e);
+            }
+        }
+        statements.clear();
+    }
+
+    /**
+     * Columnas de una fila o WHERE en orden canónico, para que el mismo conjunto
+     * de columnas genere siempre la misma clave aunque el Map las itere distinto
+     */
+    public static List<String> shapeOf(Collection<String> columns) {
+        List<String> shape = new ArrayList<>(columns);
+        Collections.sort(shape);
+        return shape;
+    }
+
+    /**
+     * Columnas de una fila: con layout salen en el orden del layout (y la lista está
+     * cacheada en él); sin layout, o con columnas fuera de él, ordenadas por nombre
+     */
+    public static List<String> shapeOf(RowData row) {
+        return row.layout() != null && !row.hasExtraColumns() ? row.columns() : shapeOf(row.values().keySet());
+    }
+
+    /**
+     * Asigna los valores de la fila a la sentencia. Con layout va por posición y los
+     * enteros/decimales se pasan con setLong/setDouble, sin boxing.
+     * @param columns las columnas de shapeOf(row)
+     */
+    public static void bind(PreparedStatement stmt, List<String> columns, RowData row) throws SQLException {
+        bind(stmt, 1, columns, row);
+    }
+
+    /**
+     * Como bind(stmt, columns, row), empezando en el parámetro firstIndex (sentencias de varias filas)
+     * @return el índice del siguiente parámetro libre
+     */
+    public static int bind(PreparedStatement stmt, int firstIndex, List<String> columns, RowData row) throws SQLException {
+        if (row.layout() == null || row.hasExtraColumns()) {
+            return bind(stmt, firstIndex, columns, row.values());
+        }
+
+        int index = firstIndex;
+        long mask = row.presentMask();
+        for (int slot = 0; mask != 0; slot++, mask >>>= 1) {
+            if ((mask & 1) == 0) {
+                continue;
+            }
+            if (row.isLong(slot)) {
+                stmt.setLong(index++, row.getLong(slot));
+            } else if (row.isDouble(slot)) {
+                stmt.setDouble(index++, row.getDouble(slot));
+            } else {
+                stmt.setObject(index++, row.get(slot));
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Asigna los valores a la sentencia siguiendo el orden de las columnas
+     */
+    public static void bind(PreparedStatement stmt, List<String> columns, Map<String, Object> values)
+            throws SQLException {
+        bind(stmt, 1, columns, values);
+    }
+
+    /**
+     * Como bind(stmt, columns, values), empezando en el parámetro firstIndex
+     * @return el índice del siguiente parámetro libre
+     */
+    public static int bind(PreparedStatement stmt, int firstIndex, List<String> columns, Map<String, Object> values)
+            throws SQLException {
+
+        int index = firstIndex;
+        for (String column : columns) {
+            stmt.setObject(index++, values.get(column));
+        }
+        return index;
+    }
+
+    /**
+     * Asigna los valores de un UPDATE en el orden de su sentencia:
+     * UPDATE -> SET, incrementos, WHERE; upsert -> WHERE (la clave), SET, incrementos
+     */
+    public static void bindUpdate(PreparedStatement stmt, UpdateShape shape, Map<String, Object> where,
+                                  Map<String, Object> set, Map<String, Object> increments) throws SQLException {
+        if (shape.upsert()) {
+            int index = bind(stmt, 1, shape.where(), where);
+            index = bind(stmt, index, shape.set(), set);
+            bind(stmt, index, shape.increments(), increments);
+        } else {
+            int index = bind(stmt, 1, shape.set(), set);
+            index = bind(stmt, index, shape.increments(), increments);
+            bind(stmt, index, shape.where(), where);
+        }
+    }
+
+    private static String buildSql(StatementKey key) {
+        UpdateShape update = key.update;
+        return switch (key.operation) {
+            case INSERT -> {
+                String tuple = "(" + String.join(", ", Collections.nCopies(key.columns.size(), "?")) + ")";
+                yield "INSERT OR REPLACE INTO " + key.table +
+                        " (" + String.join(", ", key.columns) + ") VALUES " +
+                        String.join(", ", Collections.nCopies(key.rows, tuple));
+            }
+            case DELETE -> {
+                if (key.rows == 1) {
+                    StringJoiner where = new StringJoiner(" AND ");
+                    key.columns.forEach(column -> where.add(column + " = ?"));
+                    yield "DELETE FROM " + key.table + " WHERE " + where;
+                }
+                if (key.columns.size() == 1) {
+                    yield "DELETE FROM " + key.table + " WHERE " + key.columns.get(0) +
+                            " IN (" + String.join(", ", Collections.nCopies(key.rows, "?")) + ")";
+                }
+                String tuple = "(" + String.join(", ", Collections.nCopies(key.columns.size(), "?")) + ")";
+                yield "DELETE FROM " + key.table + " WHERE (" + String.join(", ", key.columns) +
+                        ") IN (VALUES " + String.join(", ", Collections.nCopies(key.rows, tuple)) + ")";
+            }
+            case UPDATE -> {
+                StringJoiner assignments = new StringJoiner(", ");
+                update.set().forEach(column -> assignments.add(column + " = ?"));
+                update.increments().forEach(column -> assignments.add(column + " = COALESCE(" + column + ", 0) + ?"));
+                StringJoiner where = new StringJoiner(" AND ");
+                update.where().forEach(column -> where.add(column + " = ?"));
+                yield "UPDATE " + key.table + " SET " + assignments + " WHERE " + where;
+            }
+            case UPSERT -> {
+                List<String> columns = new ArrayList<>(update.where());
+                columns.addAll(update.set());
+                columns.addAll(update.increments());
+
+                StringJoiner assignments = new StringJoiner(", ");
+                update.set().forEach(column -> assignments.add(column + " = excluded." + column));
+                update.increments().forEach(column -> assignments.add(column + " = COALESCE(" + column + ", 0) + excluded." + column));
+
+                yield "INSERT INTO " + key.table + " (" + String.join(", ", columns) + ") VALUES (" +
+                        String.join(", ", Collections.nCopies(columns.size(), "?")) + ")" +
+                        " ON CONFLICT (" + String.join(", ", update.where()) + ") DO UPDATE SET " + assignments;
+            }
+        };
+    }
+
+    /**
+     * Forma de un UPDATE: columnas del WHERE, columnas con valor fijo y columnas incrementadas
+     * (cada lista ordenada) y si se ejecuta como upsert
+     */
+    public record UpdateShape(List<String> where, List<String> set, List<String> increments, boolean upsert) {
+
+        public static UpdateShape of(Map<String, Object> where, Map<String, Object> set,
+                                     Map<String, Object> increments, boolean upsert) {
+            return new UpdateShape(shapeOf(where.keySet()), shapeOf(set.keySet()), shapeOf(increments.keySet()), upsert);
+        }
+    }
+
+    private record StatementKey(String table, Operation operation, List<String> columns, int rows, UpdateShape update) {}
+
+    private enum Operation {
+        INSERT, DELETE, UPDATE, UPSERT
+    }
+}
@@ -1,30 +1,79 @@
 package es.superstrellaa.storagemanager.internal;
 
 import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.change.TableChanges;
 import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.query.Aggregate;
+import es.superstrellaa.storagemanager.api.query.Condition;
+import es.superstrellaa.storagemanager.api.query.Page;
+import es.superstrellaa.storagemanager.api.query.Query;
+import es.superstrellaa.storagemanager.api.query.RowCursor;
 import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.Index;
 import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.cache.ChangeFeed;
+import es.superstrellaa.storagemanager.internal.cache.PendingSnapshot;
+import es.superstrellaa.storagemanager.internal.cache.PlayerSessions;
+import es.superstrellaa.storagemanager.internal.cache.QueryCache;
+import es.superstrellaa.storagemanager.internal.cache.RowCache;
+import es.superstrellaa.storagemanager.internal.cache.RowKey;
+import es.superstrellaa.storagemanager.internal.cache.Values;
 import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import es.superstrellaa.storagemanager.internal.compression.ColumnCodec;
+import es.superstrellaa.storagemanager.internal.lifecycle.ServerContext;
+import es.superstrellaa.storagemanager.internal.metrics.SelectEvent;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import es.superstrellaa.storagemanager.internal.metrics.TableMetrics;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @ApiStatus.Internal
 public final class TableExecutor {
 
+    // Snapshots que se prueban para leer con incrementos pendientes antes de esperar al commit en curso
+    private static final int OVERLAY_ATTEMPTS = 3;
+    private static final long COMMIT_WAIT_MILLIS = 100;
+    // Tablas temporales de las conexiones de lectura con lo pendiente que no cabe como parámetros
+    private static final String PENDING_ROWS = "storagemanager_pending_rows";
+    private static final String PENDING_KEYS = "storagemanager_pending_keys";
+
     /**
      * Crea una tabla según el esquema proporcionado
      */
     public static void createTable(TableSchema schema) {
+        checkIndexNames(schema);
+
         StringBuilder sql = new StringBuilder();
         sql.append("CREATE TABLE IF NOT EXISTS ")
                 .append(schema.getName())
                 .append(" (");
 
+        SchemaRegistry.register(schema);
+        RowCache.register(schema);
+        QueryCache.register(schema);
+        PlayerSessions.register(schema);
+
         List<String> columnDefs = new ArrayList<>();
 
         for (Column column : schema.getColumns()) {
@@ -49,7 +98,47 @@ public final class TableExecutor {
         sql.append(String.join(", ", columnDefs));
         sql.append(");");
 
-        execute(sql.toString());
+        execute(schema.getName(), sql.toString());
+
+        for (Index index : schema.getIndexes()) {
+            execute(schema.getName(), (index.unique() ? "CREATE UNIQUE INDEX" : "CREATE INDEX") +
+                    " IF NOT EXISTS " + index.name() +
+                    " ON " + schema.getName() +
+                    " (" + String.join(", ", index.columns()) + ");");
+        }
+
+        WriteCache.getInstance().tableRegistered(schema.getName());
+    }
+
+    /**
+     * Los nombres de índice son únicos en todo el archivo de la DB: con el de otra tabla,
+     * CREATE INDEX IF NOT EXISTS no haría nada y la tabla se quedaría sin índice sin avisar
+     */
+    private static void checkIndexNames(TableSchema schema) {
+        if (schema.getIndexes().isEmpty()) {
+            return;
+        }
+        String table = schema.getName();
+        try {
+            // La tabla aún no está registrada: el hilo de escritura sale de la DB del esquema
+            SQLiteBackend.database(schema.getDatabase()).getWriter().call((connection, statements) -> {
+                try (PreparedStatement stmt = connection.prepareStatement(
+                        "SELECT tbl_name FROM sqlite_master WHERE type = 'index' AND name = ? COLLATE NOCASE;")) {
+                    for (Index index : schema.getIndexes()) {
+                        stmt.setString(1, index.name());
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (rs.next() && !rs.getString(1).equalsIgnoreCase(table)) {
+                                throw new IllegalArgumentException("Index " + index.name() + " of table " + table
+                                        + " already exists on table " + rs.getString(1) + " in the same database");
+                            }
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to check the indexes of table " + table, e);
+        }
     }
 
     /**
@@ -75,40 +164,215 @@ public final class TableExecutor {
      * Inserción inmediata sin caché (para datos críticos)
      */
     private static void insertImmediate(String table, RowData data) {
-        StringJoiner columns = new StringJoiner(", ");
-        StringJoiner values = new StringJoiner(", ");
+        long start = System.nanoTime();
+        try {
+            SQLiteBackend.getWriter(table).call((connection, statements) -> writeInsert(statements, table, data));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to insert into table " + table, e);
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
 
-        data.values().forEach((k, v) -> {
-            columns.add(k);
-            values.add("?");
-        });
+    /**
+     * Inserción sin caché en el hilo de escritura, sin bloquear al que llama.
+     * El future se completa cuando la fila ya está commiteada.
+     */
+    public static CompletableFuture<Void> insertAsync(String table, RowData data) {
+        long start = System.nanoTime();
+        try {
+            CompletableFuture<Void> future = SQLiteBackend.getWriter(table).submit((connection, statements) -> {
+                writeInsert(statements, table, data);
+                return null;
+            });
+            StorageMetrics.table(table).opsQueued.increment();
+            return future;
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
 
-        String sql = "INSERT OR REPLACE INTO " + table +
-                " (" + columns + ") VALUES (" + values + ");";
+    /**
+     * Inserta varias filas de golpe: con caché se encolan en una sola llamada,
+     * inmediatas van todas en una transacción
+     */
+    public static void insertAll(String table, Collection<RowData> rows, boolean immediate) {
+        if (rows.isEmpty()) {
+            return;
+        }
 
-        try (PreparedStatement stmt = SQLiteBackend.getConnection().prepareStatement(sql)) {
+        if (immediate) {
+            List<RowData> list = List.copyOf(rows);
+            writeInTransaction(table, "Failed to insert into table ",
+                    statements -> writeInsertAll(statements, table, list),
+                    new TableChanges(table, list, List.of(), List.of()));
+        } else {
+            WriteCache.getInstance().queueInsertAll(table, rows);
+        }
+    }
 
-            int index = 1;
-            for (Object value : data.values().values()) {
-                stmt.setObject(index++, value);
+    /**
+     * Agrupa las filas consecutivas con las mismas columnas y las escribe con INSERT de varias
+     * filas por sentencia (hasta el límite de parámetros de SQLite); las que sobran van en batch
+     */
+    private static void writeInsertAll(StatementCache statements, String table, List<RowData> rows) throws SQLException {
+        TableSchema schema = SchemaRegistry.get(table);
+        int start = 0;
+        while (start < rows.size()) {
+            List<String> columns = StatementCache.shapeOf(rows.get(start));
+            int end = start + 1;
+            while (end < rows.size() && StatementCache.shapeOf(rows.get(end)).equals(columns)) {
+                end++;
             }
 
-            stmt.executeUpdate();
+            List<RowData> run = rows.subList(start, end);
+            int chunk = StatementCache.rowsPerStatement(columns.size());
+            int full = run.size() / chunk * chunk;
 
-        } catch (SQLException e) {
-            throw new RuntimeException("Failed to insert into table " + table, e);
+            if (full > 0) {
+                PreparedStatement stmt = statements.insertRows(table, columns, chunk);
+                for (int i = 0; i < full; i += chunk) {
+                    int index = 1;
+                    for (RowData row : run.subList(i, i + chunk)) {
+                        index = StatementCache.bind(stmt, index, columns, ColumnCodec.encode(schema, row));
+                    }
+                    stmt.addBatch();
+                }
+                executeBatch(stmt, table);
+            }
+
+            if (full < run.size()) {
+                PreparedStatement stmt = statements.insert(table, columns);
+                for (RowData row : run.subList(full, run.size())) {
+                    StatementCache.bind(stmt, columns, ColumnCodec.encode(schema, row));
+                    stmt.addBatch();
+                }
+                executeBatch(stmt, table);
+            }
+
+            start = end;
         }
     }
 
+    private static int writeInsert(StatementCache statements, String table, RowData data) throws SQLException {
+        List<String> columns = StatementCache.shapeOf(data);
+        PreparedStatement stmt = statements.insert(table, columns);
+        StatementCache.bind(stmt, columns, ColumnCodec.encode(SchemaRegistry.get(table), data));
+        int updated = executeUpdate(stmt, table);
+        // Escrituras sin caché: la fila cacheada ya no vale (puede haber otras pendientes en la WriteCache)
+        RowCache.invalidate(table, data);
+        PlayerSessions.reload(table, data);
+        QueryCache.invalidate(table);
+        ChangeFeed.publish(new TableChanges(table, List.of(data), List.of(), List.of()));
+        return updated;
+    }
+
     /**
-     * SELECT siempre lee directamente de la DB
-     * Antes de leer, hace flush de la tabla para asegurar que los datos estén actualizados
+     * SELECT lee de la DB y aplica encima las escrituras que siguen en la caché,
+     * así que ve los datos actualizados sin forzar un flush
      */
     public static List<RowData> select(String table, Map<String, Object> where) {
-        // Flush antes de leer para tener datos actualizados por si acaso
-        WriteCache.getInstance().flushTable(table);
+        SelectEvent event = new SelectEvent();
+        event.table = table;
+        event.begin();
+        long start = System.nanoTime();
+        SchemaRegistry.checkFilter(table, where.keySet());
+
+        // Sesiones y caché de filas se leen sin que se cuele media transacción entre medias
+        List<RowData> rows = WriteCache.getInstance().readAtomically(() -> PlayerSessions.select(table, where));
+        if (rows == null) {
+            rows = selectCached(table, where);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        TableMetrics metrics = StorageMetrics.table(table);
+        metrics.selectTime.record(elapsed);
+        metrics.rowsReturned.add(rows.size());
+        StorageMetrics.recordCall(table, start);
 
-        List<RowData> results = new ArrayList<>();
+        event.rows = rows.size();
+        event.commit();
+        return rows;
+    }
+
+    /**
+     * Si la tabla tiene caché de filas y el WHERE es la clave primaria completa, se sirve
+     * desde memoria; si no está, se lee de la DB y se guarda el resultado
+     */
+    private static List<RowData> selectCached(String table, Map<String, Object> where) {
+        RowCache cache = RowCache.get(table);
+        RowKey key = cache == null ? null : cache.keyOf(where);
+        if (key == null) {
+            return QueryCache.isEnabled(table) ? selectQueryCached(table, where) : selectWithOverlay(table, where);
+        }
+
+        RowCache.Entry entry = WriteCache.getInstance().readAtomically(() -> cache.lookup(key));
+        if (entry != null) {
+            RowData row = entry.row();
+            return row == null ? List.of() : List.of(row.copy(row.layout()));
+        }
+
+        long generation = cache.generation();
+        List<RowData> rows = selectWithOverlay(table, where);
+        if (rows.size() <= 1) {
+            RowData row = rows.isEmpty() ? null : rows.get(0);
+            cache.fill(key, row == null ? null : row.copy(row.layout()), generation);
+        }
+        return rows;
+    }
+
+    /**
+     * Select sobre una tabla con caché de consultas: el resultado vale hasta la siguiente escritura en la tabla
+     */
+    private static List<RowData> selectQueryCached(String table, Map<String, Object> where) {
+        List<Object> shape = List.of("select", normalize(where));
+        List<RowData> cached = QueryCache.get(table, shape);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = QueryCache.generation(table);
+        List<RowData> rows = selectWithOverlay(table, where);
+        QueryCache.put(table, shape, rows, generation);
+        return rows;
+    }
+
+    /**
+     * Forma de la consulta para la caché: dos consultas que devuelven lo mismo dan formas iguales
+     * (los valores normalizados como los compara SQLite, el WHERE sin depender del orden del Map)
+     */
+    private static List<Object> queryShape(Query query) {
+        List<Condition> conditions = new ArrayList<>();
+        for (Condition condition : query.getConditions()) {
+            conditions.add(new Condition(condition.column(), condition.operator(), normalize(condition.values())));
+        }
+        return Arrays.asList("query", normalize(query.getWhere()), conditions, query.getColumns(), query.getOrderBy(),
+                query.getGroupBy(), query.getAggregates(), query.getAfter() == null ? null : normalize(query.getAfter()),
+                query.getLimit(), query.getOffset());
+    }
+
+    private static Map<String, Object> normalize(Map<String, Object> values) {
+        Map<String, Object> normalized = new TreeMap<>();
+        values.forEach((column, value) -> normalized.put(column, Values.normalize(value)));
+        return normalized;
+    }
+
+    private static List<Object> normalize(List<Object> values) {
+        List<Object> normalized = new ArrayList<>(values.size());
+        for (Object value : values) {
+            normalized.add(Values.normalize(value));
+        }
+        return normalized;
+    }
+
+    private static List<RowData> selectWithOverlay(String table, Map<String, Object> where) {
+        // El snapshot va antes de la lectura: si un flush termina entre medias, sus
+        // operaciones se aplican dos veces, que para inserts/deletes da el mismo resultado
+        PendingSnapshot pending = WriteCache.getInstance().snapshot(table);
+        if (pending.hasUpdates()) {
+            // Los UPDATE dependen de la fila de la DB: se aplican en la consulta (pendingSource)
+            return readAll(Query.from(table).where(where));
+        }
 
         StringBuilder sql = new StringBuilder("SELECT * FROM ").append(table);
 
@@ -119,28 +383,723 @@ public final class TableExecutor {
 
         sql.append(";");
 
-        try (PreparedStatement stmt = SQLiteBackend.getConnection().prepareStatement(sql.toString())) {
+        List<RowData> results;
+        try {
+            results = SQLiteBackend.getReadPool(table).read(connection -> {
+                List<RowData> rows = new ArrayList<>();
 
-            bindWhere(stmt, where);
+                QueryPlanInspector.check(connection, table, where.keySet(), sql.toString(), new ArrayList<>(where.values()));
 
-            ResultSet rs = stmt.executeQuery();
-            ResultSetMetaData meta = rs.getMetaData();
+                try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+                    bindWhere(stmt, where);
 
-            while (rs.next()) {
-                RowData row = new RowData();
+                    ResultSet rs = stmt.executeQuery();
+                    RowReader reader = new RowReader(rs, table);
 
-                for (int i = 1; i <= meta.getColumnCount(); i++) {
-                    row.set(meta.getColumnName(i), rs.getObject(i));
+                    while (rs.next()) {
+                        rows.add(reader.read(rs));
+                    }
                 }
+                return rows;
+            });
+
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to select from table " + table, e);
+        }
 
-                results.add(row);
+        return pending.overlay(results, where);
+    }
+
+    /**
+     * Abre un cursor sobre la consulta: las filas se leen de SQLite según se van pidiendo,
+     * de fetchSize en fetchSize, en lugar de cargarse todas en una lista.
+     *
+     * Las consultas de igualdades sin orden ni límites (Query.isPlain) aplican la caché de escritura
+     * encima de las filas leídas, salvo si hay UPDATEs pendientes. El resto lee de una subconsulta que
+     * ya lleva aplicadas las escrituras pendientes (pendingSource), para que SQLite las tenga en cuenta
+     * al ordenar, limitar y agregar.
+     */
+    public static RowCursor openCursor(Query query) {
+        String table = query.getTable();
+        Map<String, Object> where = query.getWhere();
+        List<String> primaryKeys = primaryKeysFor(query);
+
+        if (query.getAfter() != null && !query.isKeyOrdered()) {
+            throw new IllegalArgumentException("after() cannot be combined with orderBy or aggregates");
+        }
+        Set<String> filterColumns = filterColumns(query);
+        SchemaRegistry.checkFilter(table, filterColumns);
+
+        PendingSnapshot pending = query.isPlain() ? WriteCache.getInstance().snapshot(table) : PendingSnapshot.EMPTY;
+        boolean overlayInSql = !query.isPlain() || pending.hasUpdates();
+        if (overlayInSql) {
+            pending = PendingSnapshot.EMPTY;
+        }
+
+        List<Object> params = new ArrayList<>();
+        String sql = buildQuery(query, table, primaryKeys, params);
+
+        ReadPool pool = SQLiteBackend.getReadPool(table);
+        Connection connection = null;
+        PreparedStatement stmt = null;
+        try {
+            connection = pool.acquire();
+            List<Object> sourceParams = new ArrayList<>();
+            String source = !overlayInSql ? table
+                    : pendingSource(connection, table, sourceParams, StatementCache.MAX_PARAMETERS - params.size());
+            if (source.equals(table)) {
+                QueryPlanInspector.check(connection, table, filterColumns, sql, params);
+            } else {
+                // La subconsulta va en el FROM, antes que el resto de parámetros
+                params = sourceParams;
+                sql = buildQuery(query, source, primaryKeys, params);
             }
 
+            stmt = connection.prepareStatement(sql);
+            bindParams(stmt, params);
+            stmt.setFetchSize(query.getFetchSize());
+
+            return new SelectCursor(table, pool, connection, stmt, stmt.executeQuery(),
+                    pending, pending.pendingRows(where));
+
         } catch (SQLException e) {
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            if (connection != null) {
+                pool.release(connection);
+            }
             throw new RuntimeException("Failed to select from table " + table, e);
         }
+    }
+
+    /**
+     * FROM para una consulta que tiene que ver las escrituras pendientes de la tabla sin hacer flush:
+     * la tabla si no hay ninguna, o la subconsulta de PendingSnapshot.source con sus parámetros en params.
+     *
+     * Si las operaciones no caben como parámetros, las filas y claves que se calculan en memoria van a
+     * tablas temporales de la conexión de lectura (PENDING_ROWS, PENDING_KEYS); si tampoco se puede
+     * construir la subconsulta (demasiadas operaciones parciales seguidas, o tabla sin esquema) se lee
+     * la tabla entera, se le aplican las pendientes en memoria y el resultado va a PENDING_ROWS.
+     *
+     * Si hay incrementos pendientes, las filas de la DB se leen en una transacción que empieza antes de
+     * comprobar que ningún commit de la tabla ha empezado desde el snapshot: si no, un flush que
+     * termina entre medias los sumaría dos veces. Si eso sigue pasando tras varios intentos, antes del
+     * siguiente se espera a que termine el commit en curso (una transacción del hilo de escritura).
+     * Una lectura nunca hace flush.
+     */
+    private static String pendingSource(Connection connection, String table, List<Object> params, int maxParams)
+            throws SQLException {
+        WriteCache cache = WriteCache.getInstance();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(ReadPool.ACQUIRE_TIMEOUT_SECONDS);
+        for (int attempt = 0; ; attempt++) {
+            PendingSnapshot pending = cache.snapshot(table);
+            if (pending.isEmpty()) {
+                return table;
+            }
+
+            if (pending.hasIncrements()) {
+                connection.setAutoCommit(false);
+            }
+            Map<RowKey, RowData> base = readBaseRows(connection, table, pending);
+
+            List<Object> sourceParams = new ArrayList<>();
+            String source = pending.source(table, base, sourceParams);
+            boolean inline = source != null && sourceParams.size() <= maxParams;
+            if (!inline && source != null) {
+                sourceParams.clear();
+                source = pending.source(table, base, sourceParams, "temp." + PENDING_ROWS, "temp." + PENDING_KEYS);
+                if (sourceParams.size() > maxParams) {
+                    source = null;
+                }
+            }
+            // Sin subconsulta posible: la tabla entera, en la misma transacción que las filas base
+            List<RowData> committed = source == null ? readTable(connection, table) : null;
+
+            if (pending.hasIncrements() && !pending.isConsistent()) {
+                connection.rollback();
+                if (attempt + 1 >= OVERLAY_ATTEMPTS) {
+                    if (System.nanoTime() > deadline) {
+                        throw new SQLException("Commits of table " + table + " keep overlapping the read of its pending writes");
+                    }
+                    try {
+                        pending.awaitCommitEnd(COMMIT_WAIT_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while reading pending writes of table " + table, e);
+                    }
+                }
+                continue;
+            }
+
+            if (inline) {
+                params.addAll(sourceParams);
+                return source;
+            }
+
+            List<String> columns = columnsOf(connection, table);
+            if (source != null) {
+                fillTemp(connection, PENDING_KEYS, table, pending.primaryKeys(), keyValues(pending.keyedRows()));
+                fillTemp(connection, PENDING_ROWS, table, columns, rowValues(table, columns, pending.currentRows(base)));
+                params.addAll(sourceParams);
+                return source;
+            }
+            fillTemp(connection, PENDING_ROWS, table, columns, rowValues(table, columns, pending.applyTo(committed)));
+            return "temp." + PENDING_ROWS;
+        }
+    }
+
+    private static List<RowData> readTable(Connection connection, String table) throws SQLException {
+        List<RowData> rows = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + table + ";");
+             ResultSet rs = stmt.executeQuery()) {
+            RowReader reader = new RowReader(rs, table);
+            while (rs.next()) {
+                rows.add(reader.read(rs));
+            }
+        }
+        return rows;
+    }
+
+    private static List<String> columnsOf(Connection connection, String table) throws SQLException {
+        TableSchema schema = SchemaRegistry.get(table);
+        List<String> columns = new ArrayList<>();
+        if (schema != null) {
+            for (Column column : schema.getColumns()) {
+                columns.add(column.name());
+            }
+            return columns;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + table + " LIMIT 0;");
+             ResultSet rs = stmt.executeQuery()) {
+            ResultSetMetaData meta = rs.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                columns.add(meta.getColumnName(i));
+            }
+        }
+        return columns;
+    }
+
+    private static List<List<Object>> keyValues(Collection<RowKey> keys) {
+        List<List<Object>> values = new ArrayList<>(keys.size());
+        for (RowKey key : keys) {
+            List<Object> row = new ArrayList<>(key.values().size());
+            for (Object value : key.values()) {
+                row.add(Values.bindable(value));
+            }
+            values.add(row);
+        }
+        return values;
+    }
+
+    private static List<List<Object>> rowValues(String table, List<String> columns, List<RowData> rows) {
+        TableSchema schema = SchemaRegistry.get(table);
+        List<List<Object>> values = new ArrayList<>(rows.size());
+        for (RowData row : rows) {
+            RowData stored = ColumnCodec.encode(schema, row);
+            List<Object> value = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                value.add(stored.get(column));
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * Rellena la tabla temporal name (de la conexión, con las columnas de table) con rows, de un lote en un lote.
+     * Las conexiones de lectura son query_only: se quita solo mientras se escribe en la tabla temporal.
+     */
+    private static void fillTemp(Connection connection, String name, String table, List<String> columns,
+                                 List<List<Object>> rows) throws SQLException {
+        String projection = String.join(", ", columns);
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA query_only=OFF;");
+            try {
+                stmt.execute("DROP TABLE IF EXISTS temp." + name + ";");
+                stmt.execute("CREATE TEMP TABLE " + name + " AS SELECT " + projection + " FROM " + table + " LIMIT 0;");
+                String insert = "INSERT INTO temp." + name + " (" + projection + ") VALUES ("
+                        + String.join(", ", Collections.nCopies(columns.size(), "?")) + ");";
+                try (PreparedStatement ps = connection.prepareStatement(insert)) {
+                    for (List<Object> row : rows) {
+                        bindParams(ps, row);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            } finally {
+                stmt.execute("PRAGMA query_only=ON;");
+            }
+        }
+    }
 
-        return results;
+    /**
+     * Filas actuales en la DB de las claves cuyas operaciones pendientes parten de ellas (PendingSnapshot.baseKeys).
+     * Con incrementos pendientes también es la primera lectura de la transacción, así que siempre lee algo.
+     */
+    private static Map<RowKey, RowData> readBaseRows(Connection connection, String table, PendingSnapshot pending)
+            throws SQLException {
+        List<String> primaryKeys = pending.primaryKeys();
+        if (pending.baseKeys().isEmpty()) {
+            if (pending.hasIncrements()) {
+                try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM " + table + " LIMIT 1;");
+                     ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                }
+            }
+            return Map.of();
+        }
+
+        Map<RowKey, RowData> rows = new HashMap<>();
+        StringJoiner where = new StringJoiner(" AND ");
+        primaryKeys.forEach(column -> where.add(column + " = ?"));
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + table + " WHERE " + where + ";")) {
+            for (RowKey key : pending.baseKeys()) {
+                for (int i = 0; i < primaryKeys.size(); i++) {
+                    stmt.setObject(i + 1, Values.bindable(key.values().get(i)));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        rows.put(key, new RowReader(rs, table).read(rs));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Ejecuta la consulta y devuelve todas las filas del resultado
+     */
+    public static List<RowData> query(Query query) {
+        SelectEvent event = new SelectEvent();
+        event.table = query.getTable();
+        event.begin();
+        long start = System.nanoTime();
+
+        boolean cacheable = query.isCached() || QueryCache.isEnabled(query.getTable());
+        List<RowData> rows;
+        try {
+            if (!cacheable) {
+                rows = readAll(query);
+            } else {
+                List<Object> shape = queryShape(query);
+                rows = QueryCache.get(query.getTable(), shape);
+                if (rows == null) {
+                    long generation = QueryCache.generation(query.getTable());
+                    rows = readAll(query);
+                    QueryCache.put(query.getTable(), shape, rows, generation);
+                }
+            }
+        } finally {
+            StorageMetrics.table(query.getTable()).selectTime.record(System.nanoTime() - start);
+            StorageMetrics.recordCall(query.getTable(), start);
+        }
+
+        event.rows = rows.size();
+        event.commit();
+        return rows;
+    }
+
+    private static List<RowData> readAll(Query query) {
+        List<RowData> rows = new ArrayList<>(query.getLimit() >= 0 ? query.getLimit() : 16);
+        try (RowCursor cursor = openCursor(query)) {
+            cursor.forEachRemaining(rows::add);
+        }
+        return rows;
+    }
+
+    /**
+     * Consulta en uno de los hilos de consulta, usando el pool de conexiones de lectura
+     */
+    public static CompletableFuture<List<RowData>> queryAsync(Query query) {
+        try {
+            return CompletableFuture.supplyAsync(() -> query(query), SQLiteBackend.getQueryExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Número de filas que cumplen las condiciones de la consulta (SELECT COUNT(*))
+     */
+    public static long count(Query query) {
+        Object value = aggregate(query, Aggregate.count());
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * Calcula un único agregado sobre las filas de la consulta.
+     * after() cuenta como condición sobre la clave primaria (solo si es de una columna); el orden,
+     * el límite y el offset no se pueden aplicar a un agregado y se rechazan.
+     * @return el valor tal y como lo devuelve SQLite, o null si no hay filas (SUM/MIN/MAX/AVG)
+     */
+    public static Object aggregate(Query query, Aggregate aggregate) {
+        if (!query.getGroupBy().isEmpty()) {
+            throw new IllegalArgumentException("Use query() to read grouped aggregates");
+        }
+        if (!query.getOrderBy().isEmpty() || query.getLimit() >= 0 || query.getOffset() > 0) {
+            throw new IllegalArgumentException("orderBy, limit and offset cannot be combined with a single aggregate");
+        }
+
+        Query scalar = Query.from(query.getTable())
+                .where(query.getWhere())
+                .aggregate(aggregate)
+                .fetchSize(1);
+        query.getConditions().forEach(scalar::where);
+        if (query.getAfter() != null) {
+            TableSchema schema = SchemaRegistry.get(query.getTable());
+            if (schema == null || schema.getPrimaryKeys().size() != 1 || query.getAfter().size() != 1) {
+                throw new IllegalArgumentException("after() with an aggregate needs a single-column primary key on table "
+                        + query.getTable());
+            }
+            scalar.gt(schema.getPrimaryKeys().get(0), query.getAfter().get(0));
+        }
+        if (query.isCached()) {
+            scalar.cached();
+        }
+
+        List<RowData> rows = query(scalar);
+        return rows.isEmpty() ? null : rows.get(0).get(aggregate.alias());
+    }
+
+    /**
+     * Lee una página de la consulta, ordenada por clave primaria.
+     * Page.nextAfter() es la clave de la última fila si la página ha salido completa.
+     */
+    public static Page page(Query query) {
+        if (query.getLimit() < 0 || !query.isKeyOrdered()) {
+            throw new IllegalArgumentException("Paged queries need a limit and no orderBy or aggregates");
+        }
+
+        List<String> primaryKeys = primaryKeysFor(query);
+        if (!query.getColumns().isEmpty() && !query.getColumns().containsAll(primaryKeys)) {
+            throw new IllegalArgumentException("Paged queries must select the primary key columns of " + query.getTable());
+        }
+
+        List<RowData> rows = new ArrayList<>(query.getLimit());
+        long start = System.nanoTime();
+
+        try (RowCursor cursor = openCursor(query)) {
+            cursor.forEachRemaining(rows::add);
+        } finally {
+            StorageMetrics.table(query.getTable()).selectTime.record(System.nanoTime() - start);
+            StorageMetrics.recordCall(query.getTable(), start);
+        }
+
+        List<Object> nextAfter = null;
+        if (!rows.isEmpty() && rows.size() == query.getLimit()) {
+            RowData last = rows.get(rows.size() - 1);
+            nextAfter = new ArrayList<>(primaryKeys.size());
+            for (String column : primaryKeys) {
+                nextAfter.add(last.get(column));
+            }
+        }
+        return new Page(rows, nextAfter);
+    }
+
+    /**
+     * Recorre todas las filas de la consulta pasándolas una a una al consumer
+     */
+    public static void stream(Query query, Consumer<RowData> consumer) {
+        long start = System.nanoTime();
+        try (RowCursor cursor = openCursor(query)) {
+            cursor.forEachRemaining(consumer);
+        } finally {
+            StorageMetrics.table(query.getTable()).selectTime.record(System.nanoTime() - start);
+            StorageMetrics.recordCall(query.getTable(), start);
+        }
+    }
+
+    private static List<String> primaryKeysFor(Query query) {
+        if (!query.isKeyOrdered()) {
+            return List.of();
+        }
+
+        TableSchema schema = SchemaRegistry.get(query.getTable());
+        if (schema == null || schema.getPrimaryKeys().isEmpty()) {
+            throw new IllegalArgumentException("Paged queries need a primary key on table " + query.getTable());
+        }
+        if (query.getAfter() != null && query.getAfter().size() != schema.getPrimaryKeys().size()) {
+            throw new IllegalArgumentException("after() needs one value per primary key column of " + query.getTable());
+        }
+        return schema.getPrimaryKeys();
+    }
+
+    /**
+     * Columnas por las que filtra la consulta, para comprobar si hay índice
+     */
+    private static Set<String> filterColumns(Query query) {
+        Set<String> columns = new TreeSet<>(query.getWhere().keySet());
+        for (Condition condition : query.getConditions()) {
+            columns.add(condition.column());
+        }
+        return columns;
+    }
+
+    /**
+     * Traduce la consulta a un SELECT sobre source (la tabla o una subconsulta) con parámetros y los añade a params en el mismo orden:
+     * igualdades, condiciones, (pk1, pk2) > (?, ?) si hay after(), GROUP BY, ORDER BY y LIMIT/OFFSET
+     */
+    private static String buildQuery(Query query, String source, List<String> primaryKeys, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(buildProjection(query))
+                .append(" FROM ").append(source);
+        List<String> conditions = new ArrayList<>();
+
+        if (!query.getWhere().isEmpty()) {
+            conditions.add(buildWhereClause(query.getWhere()));
+            params.addAll(query.getWhere().values());
+        }
+
+        for (Condition condition : query.getConditions()) {
+            conditions.add(buildCondition(condition, params));
+        }
+
+        if (query.getAfter() != null) {
+            String columns = String.join(", ", primaryKeys);
+            String placeholders = String.join(", ", Collections.nCopies(primaryKeys.size(), "?"));
+            conditions.add("(" + columns + ") > (" + placeholders + ")");
+            params.addAll(query.getAfter());
+        }
+
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        if (!query.getGroupBy().isEmpty()) {
+            sql.append(" GROUP BY ").append(String.join(", ", query.getGroupBy()));
+        }
+
+        if (query.isKeyOrdered()) {
+            sql.append(" ORDER BY ").append(String.join(", ", primaryKeys));
+        } else if (!query.getOrderBy().isEmpty()) {
+            StringJoiner order = new StringJoiner(", ", " ORDER BY ", "");
+            query.getOrderBy().forEach(sort -> order.add(sort.column() + (sort.descending() ? " DESC" : " ASC")));
+            sql.append(order);
+        }
+
+        // SQLite solo acepta OFFSET detrás de LIMIT; -1 es "sin límite"
+        if (query.getLimit() >= 0 || query.getOffset() > 0) {
+            sql.append(" LIMIT ?");
+            params.add(query.getLimit());
+        }
+        if (query.getOffset() > 0) {
+            sql.append(" OFFSET ?");
+            params.add(query.getOffset());
+        }
+
+        return sql.append(";").toString();
+    }
+
+    private static String buildProjection(Query query) {
+        if (!query.isAggregate()) {
+            return query.getColumns().isEmpty() ? "*" : String.join(", ", query.getColumns());
+        }
+
+        StringJoiner projection = new StringJoiner(", ");
+        query.getGroupBy().forEach(projection::add);
+        query.getAggregates().forEach(aggregate -> projection.add(aggregate.toSql()));
+        return projection.toString();
+    }
+
+    private static String buildCondition(Condition condition, List<Object> params) {
+        String column = condition.column();
+        List<Object> values = condition.values();
+
+        return switch (condition.operator()) {
+            case IS_NULL, IS_NOT_NULL -> column + " " + condition.operator().getSql();
+            // eq(col, null) / ne(col, null): "= NULL" no coincidiría nunca
+            case EQ, NE -> {
+                if (values.get(0) == null) {
+                    yield column + (condition.operator() == Condition.Operator.EQ ? " IS NULL" : " IS NOT NULL");
+                }
+                params.addAll(values);
+                yield column + " " + condition.operator().getSql() + " ?";
+            }
+            case BETWEEN -> {
+                params.addAll(values);
+                yield column + " BETWEEN ? AND ?";
+            }
+            case IN -> {
+                if (values.isEmpty()) {
+                    // IN () no es SQL válido y nunca coincidiría con nada
+                    yield "0";
+                }
+                params.addAll(values);
+                yield column + " IN (" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")";
+            }
+            default -> {
+                params.addAll(values);
+                yield column + " " + condition.operator().getSql() + " ?";
+            }
+        };
+    }
+
+    private static void bindParams(PreparedStatement stmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            stmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /**
+     * SELECT en uno de los hilos de consulta, usando el pool de conexiones de lectura
+     */
+    public static CompletableFuture<List<RowData>> selectAsync(String table, Map<String, Object> where) {
+        try {
+            return CompletableFuture.supplyAsync(() -> select(table, where), SQLiteBackend.getQueryExecutor());
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * UPDATE con valores fijos (set) y/o incrementos sobre las filas que cumplen el WHERE.
+     *
+     * Los incrementos por clave primaria completa se escriben como upsert si la fila nueva
+     * tendría todas sus columnas NOT NULL: si la fila no existe, se crea con el incremento.
+     */
+    public static void update(String table, Map<String, Object> where, Map<String, Object> set,
+                              Map<String, Object> increments, boolean immediate) {
+        checkUpdate(table, where, set, increments);
+
+        if (immediate) {
+            updateImmediate(table, where, set, increments);
+        } else {
+            WriteCache.getInstance().queueUpdate(table, where, set, increments);
+        }
+    }
+
+    /**
+     * Comprobaciones de un UPDATE antes de encolarlo o ejecutarlo
+     */
+    public static void checkUpdate(String table, Map<String, Object> where, Map<String, Object> set,
+                                   Map<String, Object> increments) {
+        if (where.isEmpty()) {
+            throw new IllegalArgumentException("UPDATE without WHERE is not allowed");
+        }
+        SchemaRegistry.checkFilter(table, where.keySet());
+        if (set.isEmpty() && increments.isEmpty()) {
+            throw new IllegalArgumentException("UPDATE without values");
+        }
+        for (Map.Entry<String, Object> increment : increments.entrySet()) {
+            if (!(increment.getValue() instanceof Number)) {
+                throw new IllegalArgumentException("Increment for column " + increment.getKey() + " must be a number");
+            }
+        }
+    }
+
+    private static void updateImmediate(String table, Map<String, Object> where, Map<String, Object> set,
+                                        Map<String, Object> increments) {
+        List<String> written = new ArrayList<>(set.keySet());
+        written.addAll(increments.keySet());
+        boolean upsert = !increments.isEmpty() && SchemaRegistry.canUpsert(table, where.keySet(), written);
+        StatementCache.UpdateShape shape = StatementCache.UpdateShape.of(where, set, increments, upsert);
+
+        long start = System.nanoTime();
+        try {
+            SQLiteBackend.getWriter(table).call((connection, statements) -> {
+                PreparedStatement stmt = statements.update(table, shape);
+                StatementCache.bindUpdate(stmt, shape, where, ColumnCodec.encode(SchemaRegistry.get(table), set), increments);
+                int updated = executeUpdate(stmt, table);
+                if (written.stream().anyMatch(shape.where()::contains)) {
+                    RowCache.clear(table);
+                    PlayerSessions.reload(table);
+                } else {
+                    RowCache.invalidate(table, where);
+                    PlayerSessions.reload(table, where);
+                }
+                QueryCache.invalidate(table);
+                ChangeFeed.publish(new TableChanges(table, List.of(), List.of(where), List.of()));
+                return updated;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to update table " + table, e);
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    /**
+     * Abre el valor de una columna TEXT o BLOB para leerlo según se descomprime, sin tener el
+     * original entero en memoria (el driver sí lee entero el valor guardado, ya comprimido).
+     * Ve las escrituras pendientes de la tabla sin hacer flush, como query().
+     *
+     * @return null si ninguna fila cumple el WHERE o el valor es null
+     */
+    public static InputStream openInputStream(String table, Map<String, Object> where, String column) {
+        checkStream(table, where, column);
+
+        long start = System.nanoTime();
+        try {
+            Object stored = SQLiteBackend.getReadPool(table).read(connection -> {
+                List<Object> params = new ArrayList<>();
+                String source = pendingSource(connection, table, params, StatementCache.MAX_PARAMETERS - where.size());
+                params.addAll(where.values());
+                String sql = "SELECT " + column + " FROM " + source + " WHERE " + buildWhereClause(where) + " LIMIT 1;";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    bindParams(stmt, params);
+                    ResultSet rs = stmt.executeQuery();
+                    return rs.next() ? rs.getObject(1) : null;
+                }
+            });
+            return ColumnCodec.openStream(stored);
+        } catch (SQLException | IOException e) {
+            throw new RuntimeException("Failed to read column " + column + " of table " + table, e);
+        } finally {
+            StorageMetrics.table(table).selectTime.record(System.nanoTime() - start);
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    /**
+     * Escribe el valor de una columna TEXT o BLOB comprimiéndolo según llega. Al cerrar el stream
+     * se guarda con un UPDATE sobre las filas que cumplen el WHERE (no crea filas): inmediato, ya
+     * comprimido, si la tabla no tiene escrituras pendientes; si las tiene (o se cierra en el hilo
+     * del servidor) se encola detrás de ellas, para que un UPDATE anterior no pise el valor en el flush.
+     */
+    public static OutputStream openOutputStream(String table, Map<String, Object> where, String column) {
+        Column definition = checkStream(table, where, column);
+        Map<String, Object> key = new LinkedHashMap<>(where);
+
+        return ColumnCodec.newOutputStream(table, definition.compression(), definition.type(), stored -> {
+            if (ServerContext.isServerThread() || WriteCache.getInstance().hasPending(table)) {
+                // La cola guarda el valor como lo ve la API: se vuelve a comprimir en el flush
+                Object value;
+                try {
+                    value = ColumnCodec.visible(stored, definition.type());
+                } catch (SQLException e) {
+                    throw new RuntimeException("Failed to write column " + column + " of table " + table, e);
+                }
+                WriteCache.getInstance().queueUpdate(table, key, Map.of(column, value), Map.of());
+            } else {
+                updateImmediate(table, key, Map.of(column, stored), Map.of());
+            }
+        });
+    }
+
+    private static Column checkStream(String table, Map<String, Object> where, String column) {
+        if (where.isEmpty()) {
+            throw new IllegalArgumentException("Streams need a WHERE");
+        }
+        SchemaRegistry.checkFilter(table, where.keySet());
+
+        TableSchema schema = SchemaRegistry.get(table);
+        if (schema == null) {
+            throw new IllegalArgumentException("Table " + table + " must be registered to stream its values");
+        }
+        for (Column candidate : schema.getColumns()) {
+            if (candidate.name().equals(column)) {
+                if (candidate.type() != ColumnType.TEXT && candidate.type() != ColumnType.BLOB) {
+                    throw new IllegalArgumentException("Column " + column + " of table " + table + " is not TEXT or BLOB");
+                }
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Unknown column " + column + " in table " + table);
     }
 
     /**
@@ -154,9 +1113,7 @@ public final class TableExecutor {
      * Elimina con opción de inmediatez
      */
     public static void delete(String table, Map<String, Object> where, boolean immediate) {
-        if (where.isEmpty()) {
-            throw new IllegalArgumentException("DELETE without WHERE is not allowed");
-        }
+        checkDelete(table, where);
 
         if (immediate) {
             deleteImmediate(table, where);
@@ -165,17 +1122,185 @@ public final class TableExecutor {
         }
     }
 
+    public static void checkDelete(String table, Map<String, Object> where) {
+        if (where.isEmpty()) {
+            throw new IllegalArgumentException("DELETE without WHERE is not allowed");
+        }
+        SchemaRegistry.checkFilter(table, where.keySet());
+    }
+
     private static void deleteImmediate(String table, Map<String, Object> where) {
-        String sql = "DELETE FROM " + table +
-                " WHERE " + buildWhereClause(where) + ";";
+        long start = System.nanoTime();
+        try {
+            SQLiteBackend.getWriter(table).call((connection, statements) -> writeDelete(statements, table, where));
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to delete from table " + table, e);
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
 
-        try (PreparedStatement stmt = SQLiteBackend.getConnection().prepareStatement(sql)) {
+    /**
+     * Eliminación sin caché en el hilo de escritura, sin bloquear al que llama
+     */
+    public static CompletableFuture<Void> deleteAsync(String table, Map<String, Object> where) {
+        try {
+            checkDelete(table, where);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        long start = System.nanoTime();
+        try {
+            CompletableFuture<Void> future = SQLiteBackend.getWriter(table).submit((connection, statements) -> {
+                writeDelete(statements, table, where);
+                return null;
+            });
+            StorageMetrics.table(table).opsQueued.increment();
+            return future;
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    /**
+     * Elimina varias filas de golpe, una por WHERE. Con caché se encolan en una sola llamada,
+     * inmediatas van todas en una transacción
+     */
+    public static void deleteAll(String table, Collection<Map<String, Object>> wheres, boolean immediate) {
+        for (Map<String, Object> where : wheres) {
+            checkDelete(table, where);
+        }
+        if (wheres.isEmpty()) {
+            return;
+        }
+
+        if (immediate) {
+            List<Map<String, Object>> list = List.copyOf(wheres);
+            writeInTransaction(table, "Failed to delete from table ",
+                    statements -> writeDeleteAll(statements, table, list),
+                    new TableChanges(table, List.of(), List.of(), list));
+        } else {
+            WriteCache.getInstance().queueDeleteAll(table, wheres);
+        }
+    }
+
+    /**
+     * Igual que writeInsertAll, con DELETE ... WHERE (columnas) IN (VALUES ...)
+     */
+    private static void writeDeleteAll(StatementCache statements, String table, List<Map<String, Object>> wheres)
+            throws SQLException {
+        int start = 0;
+        while (start < wheres.size()) {
+            List<String> columns = StatementCache.shapeOf(wheres.get(start).keySet());
+            int end = start + 1;
+            while (end < wheres.size() && StatementCache.shapeOf(wheres.get(end).keySet()).equals(columns)) {
+                end++;
+            }
+
+            List<Map<String, Object>> run = wheres.subList(start, end);
+            int chunk = StatementCache.rowsPerStatement(columns.size());
+            int full = run.size() / chunk * chunk;
+
+            if (full > 0) {
+                PreparedStatement stmt = statements.deleteRows(table, columns, chunk);
+                for (int i = 0; i < full; i += chunk) {
+                    int index = 1;
+                    for (Map<String, Object> where : run.subList(i, i + chunk)) {
+                        index = StatementCache.bind(stmt, index, columns, where);
+                    }
+                    stmt.addBatch();
+                }
+                executeBatch(stmt, table);
+            }
+
+            if (full < run.size()) {
+                PreparedStatement stmt = statements.delete(table, columns);
+                for (Map<String, Object> where : run.subList(full, run.size())) {
+                    StatementCache.bind(stmt, columns, where);
+                    stmt.addBatch();
+                }
+                executeBatch(stmt, table);
+            }
 
-            bindWhere(stmt, where);
-            stmt.executeUpdate();
+            start = end;
+        }
+    }
 
+    /**
+     * Ejecuta las escrituras en el hilo de escritura dentro de una sola transacción
+     */
+    private static void writeInTransaction(String table, String failure, BulkWrite write, TableChanges changes) {
+        long start = System.nanoTime();
+        try {
+            SQLiteBackend.getWriter(table).call((connection, statements) -> {
+                connection.setAutoCommit(false);
+                try {
+                    write.run(statements);
+                    connection.commit();
+                    RowCache.clear(table);
+                    PlayerSessions.reload(table);
+                    QueryCache.invalidate(table);
+                    ChangeFeed.publish(changes);
+                } catch (SQLException e) {
+                    StorageMetrics.table(table).rollbacks.increment();
+                    try {
+                        connection.rollback();
+                    } catch (SQLException ex) {
+                        StorageManagerAPI.LOGGER.error("Failed to rollback transaction", ex);
+                    }
+                    throw e;
+                } finally {
+                    try {
+                        connection.setAutoCommit(true);
+                    } catch (SQLException e) {
+                        StorageManagerAPI.LOGGER.error("Failed to restore auto-commit", e);
+                    }
+                }
+                return null;
+            });
         } catch (SQLException e) {
-            throw new RuntimeException("Failed to delete from table " + table, e);
+            throw new RuntimeException(failure + table, e);
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    private interface BulkWrite {
+        void run(StatementCache statements) throws SQLException;
+    }
+
+    private static int writeDelete(StatementCache statements, String table, Map<String, Object> where) throws SQLException {
+        List<String> columns = StatementCache.shapeOf(where.keySet());
+        PreparedStatement stmt = statements.delete(table, columns);
+        StatementCache.bind(stmt, columns, where);
+        int updated = executeUpdate(stmt, table);
+        RowCache.invalidate(table, where);
+        PlayerSessions.reload(table, where);
+        QueryCache.invalidate(table);
+        ChangeFeed.publish(new TableChanges(table, List.of(), List.of(), List.of(where)));
+        return updated;
+    }
+
+    private static int executeUpdate(PreparedStatement stmt, String table) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return stmt.executeUpdate();
+        } finally {
+            StorageMetrics.table(table).statementTime.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void executeBatch(PreparedStatement stmt, String table) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            // La sentencia está cacheada, no puede quedarse con parámetros del batch fallido
+            stmt.clearBatch();
+            throw e;
+        } finally {
+            StorageMetrics.table(table).statementTime.record(System.nanoTime() - start);
         }
     }
 
@@ -194,9 +1319,13 @@ public final class TableExecutor {
         }
     }
 
-    private static void execute(String sql) {
-        try (Statement stmt = SQLiteBackend.getConnection().createStatement()) {
-            stmt.execute(sql);
+    private static void execute(String table, String sql) {
+        try {
+            SQLiteBackend.getWriter(table).call((connection, statements) -> {
+                try (Statement stmt = connection.createStatement()) {
+                    return stmt.execute(sql);
+                }
+            });
             StorageManagerAPI.LOGGER.debug("Executed SQL: {}", sql);
         } catch (SQLException e) {
             throw new RuntimeException("SQL execution failed", e);
@@ -1,8 +1,15 @@
 package es.superstrellaa.storagemanager.internal.bootstrap;
 
 import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.internal.DatabaseMaintenance;
 import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.StoragePaths;
+import es.superstrellaa.storagemanager.internal.cache.FlushScheduler;
+import es.superstrellaa.storagemanager.internal.cache.PlayerSessions;
+import es.superstrellaa.storagemanager.internal.command.StorageCommand;
+import es.superstrellaa.storagemanager.internal.config.ConfigManager;
 import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import es.superstrellaa.storagemanager.internal.lifecycle.ServerContext;
 import es.superstrellaa.storagemanager.internal.lifecycle.ShutdownHook;
 import es.superstrellaa.storagemanager.internal.middleware.ServerGuard;
 import org.jetbrains.annotations.ApiStatus;
@@ -15,9 +22,16 @@ public final class ServerBootstrap {
     public static void register() {
         if (initialized) return;
 
+        ConfigManager.load();
         SQLiteBackend.init();
+        WriteCache.getInstance().enableJournal(StoragePaths.getBaseDir().resolve("journal"));
         WriteCache.getInstance().start();
+        FlushScheduler.getInstance().register();
+        DatabaseMaintenance.start();
         ShutdownHook.register();
+        ServerContext.register();
+        PlayerSessions.register();
+        StorageCommand.register();
 
         ServerGuard.markServerReady();
 
@@ -0,0 +1,201 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.change.ChangeListener;
+import es.superstrellaa.storagemanager.api.change.TableChanges;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.SchemaRegistry;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Avisa a los listeners de StorageManager.subscribe de lo que se commitea en cada tabla.
+ *
+ * El hilo de escritura solo publica el lote después del commit; el filtrado y las llamadas a los
+ * listeners van en un hilo propio, así que un listener lento no retrasa los flushes. Un solo hilo
+ * para todo: los lotes de una tabla se entregan en el orden en que se commitearon.
+ */
+@ApiStatus.Internal
+public final class ChangeFeed {
+
+    private static final Map<String, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "StorageManager-Changes");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param keyPrefix valores de las primeras columnas de la clave primaria; vacío para recibir todo
+     */
+    public static void subscribe(String table, Map<String, Object> keyPrefix, ChangeListener listener) {
+        if (!keyPrefix.isEmpty()) {
+            checkPrefix(table, keyPrefix);
+        }
+        subscriptions.computeIfAbsent(table, k -> new CopyOnWriteArrayList<>())
+                .add(new Subscription(Collections.unmodifiableMap(new LinkedHashMap<>(keyPrefix)), listener));
+    }
+
+    public static void unsubscribe(String table, ChangeListener listener) {
+        List<Subscription> list = subscriptions.get(table);
+        if (list != null) {
+            list.removeIf(subscription -> subscription.listener() == listener);
+        }
+    }
+
+    private static void checkPrefix(String table, Map<String, Object> keyPrefix) {
+        TableSchema schema = SchemaRegistry.get(table);
+        if (schema == null) {
+            throw new IllegalArgumentException("Table " + table + " must be registered before filtering changes by key");
+        }
+        List<String> primaryKeys = schema.getPrimaryKeys();
+        if (keyPrefix.size() > primaryKeys.size()
+                || !keyPrefix.keySet().equals(Set.copyOf(primaryKeys.subList(0, keyPrefix.size())))) {
+            throw new IllegalArgumentException("Columns " + keyPrefix.keySet() + " are not a prefix of the primary key of " + table);
+        }
+    }
+
+    /**
+     * @return true si alguien escucha la tabla (si no, no merece la pena preparar el lote)
+     */
+    public static boolean hasListeners(String table) {
+        List<Subscription> list = subscriptions.get(table);
+        return list != null && !list.isEmpty();
+    }
+
+    /**
+     * Publica las operaciones de un flush ya commiteado
+     */
+    static void publish(String table, List<PendingOperation> ops) {
+        if (!hasListeners(table)) {
+            return;
+        }
+
+        List<RowData> upserted = new ArrayList<>();
+        List<Map<String, Object>> updated = new ArrayList<>();
+        List<Map<String, Object>> deleted = new ArrayList<>();
+        for (PendingOperation op : ops) {
+            switch (op.type) {
+                case INSERT -> upserted.add(op.data);
+                case UPDATE -> updated.add(op.whereClause);
+                case DELETE -> deleted.add(op.whereClause);
+            }
+        }
+        publish(new TableChanges(table, upserted, updated, deleted));
+    }
+
+    /**
+     * Publica cambios ya commiteados. Hay que llamarlo después del commit, nunca dentro de la transacción.
+     */
+    public static void publish(TableChanges changes) {
+        List<Subscription> list = subscriptions.get(changes.table());
+        if (list == null || list.isEmpty() || changes.isEmpty()) {
+            return;
+        }
+
+        // Las filas y WHERE de una escritura inmediata son del que llama, que puede seguir modificándolos
+        List<RowData> upserted = new ArrayList<>(changes.upserted().size());
+        for (RowData row : changes.upserted()) {
+            upserted.add(row.copy(row.layout()));
+        }
+        TableChanges copy = new TableChanges(changes.table(), upserted, copyWheres(changes.updated()), copyWheres(changes.deleted()));
+
+        try {
+            executor.execute(() -> deliver(list, copy));
+        } catch (RuntimeException e) {
+            // Solo pasa al apagar el servidor
+            StorageManagerAPI.LOGGER.warn("Dropped change notification for table {}", changes.table());
+        }
+    }
+
+    private static List<Map<String, Object>> copyWheres(List<Map<String, Object>> wheres) {
+        List<Map<String, Object>> copy = new ArrayList<>(wheres.size());
+        for (Map<String, Object> where : wheres) {
+            copy.add(Collections.unmodifiableMap(new LinkedHashMap<>(where)));
+        }
+        return copy;
+    }
+
+    private static void deliver(List<Subscription> list, TableChanges changes) {
+        for (Subscription subscription : list) {
+            TableChanges filtered = subscription.filter(changes);
+            if (filtered.isEmpty()) {
+                continue;
+            }
+            try {
+                subscription.listener().onChanges(filtered);
+            } catch (Throwable t) {
+                StorageManagerAPI.LOGGER.error("Change listener for table {} failed", changes.table(), t);
+            }
+        }
+    }
+
+    /**
+     * Entrega lo que quede pendiente (p.ej. el flush final) antes de apagar
+     */
+    public static void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                StorageManagerAPI.LOGGER.warn("Change listeners did not finish in time");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        subscriptions.clear();
+    }
+
+    private record Subscription(Map<String, Object> keyPrefix, ChangeListener listener) {
+
+        /**
+         * Cada listener recibe sus propias copias de las filas (los WHERE ya no se pueden modificar).
+         * Un update o delete por filtro que no dice nada de las columnas del prefijo puede
+         * afectarle, así que se le entrega.
+         */
+        TableChanges filter(TableChanges changes) {
+            List<RowData> upserted = new ArrayList<>();
+            for (RowData row : changes.upserted()) {
+                if (Values.matches(keyPrefix, row)) {
+                    upserted.add(row.copy(row.layout()));
+                }
+            }
+            return new TableChanges(changes.table(), upserted, filterWheres(changes.updated()), filterWheres(changes.deleted()));
+        }
+
+        private List<Map<String, Object>> filterWheres(List<Map<String, Object>> wheres) {
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (Map<String, Object> where : wheres) {
+                if (mayMatch(where)) {
+                    result.add(where);
+                }
+            }
+            return result;
+        }
+
+        private boolean mayMatch(Map<String, Object> where) {
+            for (Map.Entry<String, Object> column : keyPrefix.entrySet()) {
+                if (where.containsKey(column.getKey()) && !Values.sameValue(column.getValue(), where.get(column.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private ChangeFeed() {}
+}
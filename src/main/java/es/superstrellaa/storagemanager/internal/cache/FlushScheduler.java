@@ -0,0 +1,140 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decide en cada tick del servidor qué tablas hay que guardar.
+ *
+ * - Cuantas más operaciones pendientes tiene una tabla, antes se guarda.
+ * - Si el MSPT medio se acerca al presupuesto del tick, los flushes normales se retrasan
+ *   (salvo los urgentes: cola llena o demasiado tiempo esperando).
+ * - Como mucho se lanzan MAX_FLUSHES_PER_TICK flushes por tick y base de datos, así que las
+ *   tablas se reparten entre ticks en lugar de guardarse todas de golpe. Las bases de datos
+ *   tienen hilos de escritura distintos, así que sus flushes no se esperan entre ellos.
+ *
+ * El flush en sí se ejecuta en el hilo de escritura; aquí solo se decide cuándo.
+ */
+@ApiStatus.Internal
+public final class FlushScheduler {
+
+    private static final double TICK_BUDGET_MS = 50.0;
+    // A partir de este porcentaje del presupuesto se considera que el servidor va cargado
+    private static final double BUSY_RATIO = 0.8;
+    // Peso del último tick en la media móvil del MSPT
+    private static final double MSPT_SMOOTHING = 0.1;
+    private static final long MIN_FLUSH_INTERVAL_MS = 500;
+    private static final int MAX_FLUSHES_PER_TICK = 1;
+
+    private static FlushScheduler instance;
+
+    private final WriteCache cache;
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    private long tickStartNanos;
+    private volatile double meanTickMillis;
+
+    private FlushScheduler(WriteCache cache) {
+        this.cache = cache;
+    }
+
+    public static FlushScheduler getInstance() {
+        if (instance == null) {
+            instance = new FlushScheduler(WriteCache.getInstance());
+        }
+        return instance;
+    }
+
+    public void register() {
+        ServerTickEvents.START_SERVER_TICK.register(server -> tickStartNanos = System.nanoTime());
+        ServerTickEvents.END_SERVER_TICK.register(server -> onEndTick());
+    }
+
+    /**
+     * @return media móvil del tiempo por tick (MSPT) en milisegundos
+     */
+    public double getMeanTickMillis() {
+        return meanTickMillis;
+    }
+
+    public boolean isServerBusy() {
+        return meanTickMillis >= TICK_BUDGET_MS * BUSY_RATIO;
+    }
+
+    private void onEndTick() {
+        long now = System.nanoTime();
+        double tickMillis = (now - tickStartNanos) / 1_000_000.0;
+        meanTickMillis += (tickMillis - meanTickMillis) * MSPT_SMOOTHING;
+
+        boolean busy = isServerBusy();
+        StorageConfig config = StorageConfig.get();
+        List<Candidate> due = new ArrayList<>();
+
+        cache.buffers().forEach((table, buffer) -> {
+            if (scheduled.contains(table)) {
+                return;
+            }
+
+            int depth = buffer.size();
+            if (depth == 0) {
+                return;
+            }
+
+            StorageConfig.TableSettings settings = config.table(table);
+            long age = buffer.ageMillis(now);
+            boolean urgent = depth >= settings.batchSize() || age >= settings.maxFlushDelayMs();
+
+            if (urgent || (!busy && age >= dueAfter(depth, settings))) {
+                due.add(new Candidate(table, urgent, age));
+            }
+        });
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        // Primero las urgentes y, dentro de cada grupo, las que más tiempo llevan esperando
+        due.sort(Comparator.comparing(Candidate::urgent).thenComparingLong(Candidate::age).reversed());
+
+        Map<String, Integer> perDatabase = new HashMap<>();
+        for (Candidate candidate : due) {
+            String database = SQLiteBackend.databaseFor(candidate.table()).getName();
+            if (perDatabase.merge(database, 1, Integer::sum) <= MAX_FLUSHES_PER_TICK) {
+                submit(candidate.table());
+            }
+        }
+    }
+
+    /**
+     * El intervalo se acorta de forma lineal con la profundidad de la cola:
+     * vacía espera el intervalo de flush de la tabla, a punto de llegar a su batchSize casi nada
+     */
+    private static long dueAfter(int depth, StorageConfig.TableSettings settings) {
+        double fill = Math.min(1.0, depth / (double) settings.batchSize());
+        long interval = (long) (settings.flushIntervalMs() * (1.0 - fill));
+        return Math.max(MIN_FLUSH_INTERVAL_MS, interval);
+    }
+
+    private void submit(String table) {
+        scheduled.add(table);
+        cache.flushTableAsync(table).whenComplete((ignored, error) -> {
+            scheduled.remove(table);
+            if (error != null) {
+                StorageManagerAPI.LOGGER.error("Scheduled flush failed for table {}", table, error);
+            }
+        });
+    }
+
+    private record Candidate(String table, boolean urgent, long age) {}
+}
@@ -0,0 +1,5 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+enum OperationType {
+    INSERT, DELETE, UPDATE
+}
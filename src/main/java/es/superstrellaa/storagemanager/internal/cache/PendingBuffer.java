@@ -0,0 +1,543 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
+import es.superstrellaa.storagemanager.api.data.RowData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Operaciones pendientes de una tabla, agrupadas por clave primaria.
+ *
+ * Un insert sobre una clave ya pendiente reemplaza al anterior, un delete por clave
+ * lo cancela y los updates se aplican sobre él (o se juntan entre sí sumando los
+ * incrementos), así que en el flush solo se escribe el estado final de cada fila.
+ * Cada vez que una clave cambia se mueve al final, para conservar el orden relativo
+ * con las operaciones que no tienen clave (deletes parciales, tablas sin PK).
+ */
+final class PendingBuffer {
+
+    private final String table;
+    private final List<String> primaryKeys;
+    private final LinkedHashMap<Object, PendingOperation> ops = new LinkedHashMap<>();
+    private List<PendingOperation> inFlight = List.of();
+
+    // Copia en disco de lo encolado (null si no hay journal) y última secuencia que entra en el flush en curso
+    private final WriteJournal journal;
+    private long inFlightSeq;
+    // DROP_OLDEST ha tirado operaciones que siguen en el journal: se reescribe en el siguiente sync
+    private boolean journalStale;
+
+    // Flushes seguidos que han fallado con las mismas operaciones devueltas a la cola
+    private int failedFlushes;
+
+    // Impar mientras un flush de la tabla está haciendo commit; cambia con cada commit.
+    // Solo lo toca el hilo de escritura
+    private volatile long commitStamp;
+
+    // Cola acotada: al pasar highWatermark se despierta al hilo de escritura una sola vez,
+    // y no se vuelve a avisar hasta el siguiente flush. Con BLOCK, quien espera no
+    // continúa hasta que la cola baja de lowWatermark
+    private int capacity;
+    private int highWatermark;
+    private int lowWatermark;
+    private boolean armed = true;
+
+    private long dropped;
+    private long rejected;
+
+    // Momento en que entró la operación más antigua que sigue pendiente (0 si no hay ninguna)
+    private long firstQueuedNanos;
+
+    // Operaciones añadidas en total y cuántas de ellas entran en el flush en curso
+    private long addedCount;
+    private long inFlightCount;
+    // Transacciones que esperan a que se guarden las primeras count operaciones añadidas
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    PendingBuffer(String table, List<String> primaryKeys, int capacity, int highWatermark, int lowWatermark) {
+        this(table, primaryKeys, capacity, highWatermark, lowWatermark, null);
+    }
+
+    PendingBuffer(String table, List<String> primaryKeys, int capacity, int highWatermark, int lowWatermark,
+                  WriteJournal journal) {
+        this.table = table;
+        this.primaryKeys = primaryKeys;
+        this.capacity = capacity;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.journal = journal;
+    }
+
+    /**
+     * Cambia los límites de la cola al recargar la configuración. Se despierta a quien espera
+     * por si con los nuevos límites ya puede continuar.
+     */
+    synchronized void resize(int capacity, int highWatermark, int lowWatermark) {
+        this.capacity = capacity;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        armed = true;
+        notifyAll();
+    }
+
+    /**
+     * Encola la operación aplicando la política de desbordamiento si la cola está llena.
+     * Reemplazar una clave ya pendiente no ocupa sitio, así que nunca desborda.
+     *
+     * Con BLOCK, quien no puede esperar recibe una IllegalStateException como con FAIL_FAST: el flush
+     * ya se pidió al pasar la marca alta, y dejar crecer la cola sin límite acabaría con la memoria.
+     * Las escrituras de transacciones se encolan igualmente, porque rechazar una parte la rompería.
+     *
+     * @param mayBlock false si el que llama no puede esperar (el hilo de escritura o el del servidor)
+     * @return true si la cola acaba de pasar la marca alta y hay que pedir un flush
+     */
+    synchronized boolean add(PendingOperation op, OverflowPolicy policy, boolean mayBlock) {
+        RowKey key = keyOf(op);
+
+        if ((key == null || !ops.containsKey(key)) && ops.size() >= capacity) {
+            switch (policy) {
+                case BLOCK -> {
+                    if (!mayBlock && !op.transactional) {
+                        rejected++;
+                        throw new IllegalStateException("Write queue for table " + table + " is full (" + capacity
+                                + " pending operations) and this thread cannot wait for a flush");
+                    }
+                    while (mayBlock && ops.size() > lowWatermark) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                    }
+                }
+                case DROP_OLDEST -> {
+                    // Ni las escrituras de transacciones (quedarían guardadas a medias) ni los deletes o lo que
+                    // se ha combinado sobre uno (resucitarían las filas borradas) se tiran: se salta a la siguiente más antigua
+                    Iterator<PendingOperation> eldest = ops.values().iterator();
+                    boolean evicted = false;
+                    while (eldest.hasNext() && !evicted) {
+                        PendingOperation candidate = eldest.next();
+                        if (!candidate.transactional && !candidate.overDelete && candidate.type != OperationType.DELETE) {
+                            eldest.remove();
+                            evicted = true;
+                        }
+                    }
+                    if (!evicted) {
+                        rejected++;
+                        throw new IllegalStateException("Write queue for table " + table + " is full of deletes and transactional writes ("
+                                + capacity + " pending operations)");
+                    }
+                    dropped++;
+                    journalStale = journal != null;
+                }
+                case FAIL_FAST -> {
+                    rejected++;
+                    throw new IllegalStateException("Write queue for table " + table + " is full (" + capacity + " pending operations)");
+                }
+            }
+        }
+
+        if (ops.isEmpty()) {
+            firstQueuedNanos = System.nanoTime();
+        }
+        // Con el lock del buffer: todo lo que está en el journal hasta la secuencia de beginFlush() entra en ese flush
+        if (journal != null) {
+            journal.append(op);
+        }
+        apply(op, key);
+        addedCount++;
+
+        if (armed && ops.size() >= highWatermark) {
+            armed = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return la clave primaria a la que afecta la operación, o null si no afecta a una sola fila conocida
+     */
+    private RowKey keyOf(PendingOperation op) {
+        if (op.type == OperationType.INSERT) {
+            return RowKey.of(primaryKeys, op.data);
+        }
+        // DELETE y UPDATE: solo si el WHERE es exactamente la clave primaria
+        if (!primaryKeys.isEmpty() && op.whereClause.keySet().equals(new HashSet<>(primaryKeys))) {
+            return RowKey.of(primaryKeys, op.whereClause);
+        }
+        return null;
+    }
+
+    private void apply(PendingOperation op, RowKey key) {
+        if (op.type == OperationType.UPDATE) {
+            if (key != null) {
+                applyUpdate(op, key);
+            } else {
+                applyPartialUpdate(op);
+            }
+            return;
+        }
+
+        if (op.type == OperationType.INSERT || key != null) {
+            put(key, op);
+            return;
+        }
+
+        sealUpdates();
+
+        // Delete parcial: los inserts pendientes que cumplen el WHERE se quedan en un delete
+        // de su clave (la fila puede existir ya en la DB con otros valores)
+        List<Map.Entry<Object, PendingOperation>> cancelled = new ArrayList<>();
+        Iterator<Map.Entry<Object, PendingOperation>> it = ops.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, PendingOperation> entry = it.next();
+            PendingOperation pending = entry.getValue();
+            if (pending.type == OperationType.INSERT && Values.matches(op.whereClause, pending.data)) {
+                it.remove();
+                if (entry.getKey() instanceof RowKey pendingKey) {
+                    cancelled.add(Map.entry(pendingKey, new PendingOperation(OperationType.DELETE, keyWhere(pending.data))
+                            .carrying(pending).carrying(op)));
+                }
+            }
+        }
+
+        cancelled.forEach(entry -> ops.put(entry.getKey(), entry.getValue()));
+        ops.put(new Object(), op);
+    }
+
+    /**
+     * Update por clave: se combina con lo que ya hubiera pendiente para esa fila
+     */
+    private void applyUpdate(PendingOperation op, RowKey key) {
+        PendingOperation pending = ops.get(key);
+        if (pending == null) {
+            put(key, op);
+            return;
+        }
+
+        switch (pending.type) {
+            // La fila va a existir con estos valores: el update se aplica ya en memoria
+            case INSERT -> put(key, new PendingOperation(OperationType.INSERT, op.applyTo(pending.data)).carrying(op));
+            // Tras el delete la fila no existe: el upsert la crea de cero y un update normal no hace nada
+            case DELETE -> {
+                if (op.upsert) {
+                    put(key, new PendingOperation(OperationType.INSERT, op.toRow()).carrying(op));
+                }
+            }
+            case UPDATE -> {
+                if (pending.upsert || !op.upsert) {
+                    put(key, pending.merge(op));
+                } else {
+                    // El primero no crea la fila si no existe y el segundo sí: juntos cambiaría el resultado
+                    ops.remove(key);
+                    ops.put(new Object(), pending);
+                    ops.put(key, op);
+                }
+            }
+        }
+    }
+
+    /**
+     * Update parcial: se ejecuta tal cual en el flush, y los inserts pendientes que cumplen
+     * su WHERE se actualizan en memoria y se mueven detrás para que no se apliquen dos veces
+     */
+    private void applyPartialUpdate(PendingOperation op) {
+        sealUpdates();
+
+        List<Map.Entry<Object, PendingOperation>> updated = new ArrayList<>();
+        Iterator<Map.Entry<Object, PendingOperation>> it = ops.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Object, PendingOperation> entry = it.next();
+            PendingOperation pending = entry.getValue();
+            if (pending.type == OperationType.INSERT && Values.matches(op.whereClause, pending.data)) {
+                it.remove();
+                updated.add(Map.entry(entry.getKey(), new PendingOperation(OperationType.INSERT, op.applyTo(pending.data))
+                        .carrying(pending).carrying(op)));
+            }
+        }
+
+        ops.put(new Object(), op);
+        updated.forEach(entry -> ops.put(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Antes de una operación parcial, los updates por clave dejan de poder combinarse con
+     * los siguientes: juntarlos los movería detrás de ella y cambiaría el orden de ejecución
+     */
+    private void sealUpdates() {
+        boolean keyedUpdates = false;
+        for (Map.Entry<Object, PendingOperation> entry : ops.entrySet()) {
+            if (entry.getValue().type == OperationType.UPDATE && entry.getKey() instanceof RowKey) {
+                keyedUpdates = true;
+                break;
+            }
+        }
+        if (!keyedUpdates) {
+            return;
+        }
+
+        List<Map.Entry<Object, PendingOperation>> entries = new ArrayList<>(ops.entrySet());
+        ops.clear();
+        for (Map.Entry<Object, PendingOperation> entry : entries) {
+            boolean sealed = entry.getValue().type == OperationType.UPDATE && entry.getKey() instanceof RowKey;
+            ops.put(sealed ? new Object() : entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void put(RowKey key, PendingOperation op) {
+        if (key == null) {
+            ops.put(new Object(), op);
+            return;
+        }
+        // Lo que reemplaza a una escritura de una transacción sigue contando como parte de ella,
+        // y lo que reemplaza a un delete queda marcado para que DROP_OLDEST no lo tire
+        PendingOperation replaced = ops.remove(key);
+        ops.put(key, replaced == null ? op : op.carrying(replaced));
+    }
+
+    private Map<String, Object> keyWhere(RowData row) {
+        Map<String, Object> where = new LinkedHashMap<>();
+        for (String column : primaryKeys) {
+            where.put(column, row.get(column));
+        }
+        return where;
+    }
+
+    synchronized int size() {
+        return ops.size();
+    }
+
+    /**
+     * @return true si hay alguna operación pendiente o en vuelo sobre filas con ese valor en la columna
+     */
+    synchronized boolean hasPendingFor(String column, String value) {
+        for (PendingOperation op : inFlight) {
+            if (touches(op, column, value)) {
+                return true;
+            }
+        }
+        for (PendingOperation op : ops.values()) {
+            if (touches(op, column, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean touches(PendingOperation op, String column, String value) {
+        Object current = op.type == OperationType.INSERT ? op.data.get(column) : op.whereClause.get(column);
+        return current != null && value.equals(current.toString());
+    }
+
+    /**
+     * @return true si queda alguna operación sin commitear, pendiente o en vuelo
+     */
+    synchronized boolean hasPending() {
+        return !ops.isEmpty() || !inFlight.isEmpty();
+    }
+
+    /**
+     * @return milisegundos que lleva esperando la operación pendiente más antigua, 0 si no hay ninguna
+     */
+    synchronized long ageMillis(long nowNanos) {
+        if (ops.isEmpty()) {
+            return 0;
+        }
+        return (nowNanos - firstQueuedNanos) / 1_000_000L;
+    }
+
+    synchronized long dropped() {
+        return dropped;
+    }
+
+    synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * Saca las operaciones pendientes y las deja "en vuelo" hasta que termine el flush
+     */
+    synchronized List<PendingOperation> beginFlush() {
+        inFlight = new ArrayList<>(ops.values());
+        ops.clear();
+        inFlightSeq = journal == null ? 0 : journal.lastSeq();
+        inFlightCount = addedCount;
+
+        // La cola queda vacía, por debajo de la marca baja: se rearma el aviso y se
+        // despierta a los que estaban esperando sitio
+        armed = true;
+        notifyAll();
+        return inFlight;
+    }
+
+    WriteJournal journal() {
+        return journal;
+    }
+
+    /**
+     * @return secuencia del journal de la última operación del flush en curso
+     */
+    synchronized long inFlightSeq() {
+        return inFlightSeq;
+    }
+
+    /**
+     * Cierra un flush commiteado: las transacciones que iban en él se dan por guardadas
+     */
+    void endFlush() {
+        List<CompletableFuture<Void>> done;
+        synchronized (this) {
+            inFlight = List.of();
+            failedFlushes = 0;
+            done = takeWaiters();
+        }
+        done.forEach(future -> future.complete(null));
+    }
+
+    /**
+     * Cierra un flush que se descarta para siempre: las transacciones que iban en él fallan con error
+     */
+    void abandonFlush(Throwable error) {
+        List<CompletableFuture<Void>> failed;
+        synchronized (this) {
+            inFlight = List.of();
+            failedFlushes = 0;
+            failed = takeWaiters();
+        }
+        failed.forEach(future -> future.completeExceptionally(error));
+    }
+
+    /**
+     * Los futuros se completan fuera del lock: quien espera puede volver a escribir en la tabla
+     */
+    private List<CompletableFuture<Void>> takeWaiters() {
+        List<CompletableFuture<Void>> taken = new ArrayList<>();
+        while (!waiters.isEmpty() && waiters.peek().count() <= inFlightCount) {
+            taken.add(waiters.poll().future());
+        }
+        return taken;
+    }
+
+    /**
+     * @return un futuro que se completa cuando las operaciones añadidas hasta ahora están en la DB,
+     * o falla si se descartan tras un rollback
+     */
+    synchronized CompletableFuture<Void> whenFlushed() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(addedCount, future));
+        return future;
+    }
+
+    private record Waiter(long count, CompletableFuture<Void> future) {}
+
+    /**
+     * Devuelve las operaciones de un flush que ha hecho rollback a la cola, delante de las
+     * encoladas después. Siguen en el journal, así que entran en el siguiente flush o en el replay.
+     *
+     * Solo los inserts y deletes por clave recuperan su clave, y solo si no hay otra operación
+     * pendiente para esa fila: la más nueva tiene que seguir detrás.
+     *
+     * Como en beginFlush(), se rearma el aviso y se despierta a los que esperan sitio.
+     *
+     * @return true si la cola ha quedado por encima de la marca alta y hay que pedir otro flush
+     */
+    synchronized boolean requeue() {
+        LinkedHashMap<Object, PendingOperation> newer = new LinkedHashMap<>(ops);
+        boolean wasEmpty = ops.isEmpty();
+        ops.clear();
+        for (PendingOperation op : inFlight) {
+            RowKey key = op.type == OperationType.UPDATE ? null : keyOf(op);
+            boolean taken = key == null || ops.containsKey(key) || newer.containsKey(key);
+            ops.put(taken ? new Object() : key, op);
+        }
+        ops.putAll(newer);
+
+        if (wasEmpty && !ops.isEmpty()) {
+            firstQueuedNanos = System.nanoTime();
+        }
+        inFlight = List.of();
+        failedFlushes++;
+
+        armed = true;
+        notifyAll();
+        if (ops.size() >= highWatermark) {
+            armed = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return flushes seguidos que han fallado desde el último que se commiteó
+     */
+    synchronized int failedFlushes() {
+        return failedFlushes;
+    }
+
+    /**
+     * Si DROP_OLDEST ha tirado operaciones, reescribe la parte del journal que no está en vuelo
+     * con lo que hay ahora en la cola, para que un replay no las resucite
+     */
+    synchronized void compactJournal() {
+        if (!journalStale) {
+            return;
+        }
+        journalStale = false;
+        journal.rewrite(inFlight.isEmpty() ? Long.MIN_VALUE : inFlightSeq, ops.values());
+    }
+
+    /**
+     * Marca el principio de un commit con operaciones de la tabla (ver PendingSnapshot.isConsistent)
+     */
+    void beginCommit() {
+        if ((commitStamp & 1) == 0) {
+            commitStamp++;
+        }
+    }
+
+    /**
+     * Marca el final del commit, cuando las operaciones ya han salido del flush en curso
+     */
+    void endCommit() {
+        if ((commitStamp & 1) != 0) {
+            synchronized (this) {
+                commitStamp++;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Espera como mucho timeoutMillis a que termine el commit en curso, si hay uno
+     */
+    synchronized void awaitCommitEnd(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        long remaining = timeoutMillis;
+        while ((commitStamp & 1) != 0 && remaining > 0) {
+            wait(remaining);
+            remaining = (deadline - System.nanoTime()) / 1_000_000L;
+        }
+    }
+
+    long commitStamp() {
+        return commitStamp;
+    }
+
+    /**
+     * Operaciones aún no commiteadas en el orden en el que deben aplicarse: primero las en vuelo
+     */
+    synchronized List<PendingOperation> snapshot() {
+        List<PendingOperation> copy = new ArrayList<>(inFlight.size() + ops.size());
+        copy.addAll(inFlight);
+        copy.addAll(ops.values());
+        return copy;
+    }
+}
@@ -0,0 +1,134 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.data.RowLayout;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Operación pendiente en la caché
+ */
+final class PendingOperation {
+    final OperationType type;
+    final RowData data;
+    final Map<String, Object> whereClause;
+    // Solo UPDATE: columnas con valor fijo, columnas a incrementar y si se puede hacer upsert
+    final Map<String, Object> set;
+    final Map<String, Object> increments;
+    final boolean upsert;
+    // Lleva escrituras de una transacción: DROP_OLDEST no la puede tirar sin romperla
+    final boolean transactional;
+    // Se ha combinado sobre un DELETE pendiente de la misma clave: DROP_OLDEST tampoco la puede tirar,
+    // porque con ella se iría el delete y la fila borrada volvería a aparecer
+    final boolean overDelete;
+
+    PendingOperation(OperationType type, RowData data) {
+        this(type, data, null, Map.of(), Map.of(), false, false, false);
+    }
+
+    PendingOperation(OperationType type, Map<String, Object> whereClause) {
+        this(type, null, whereClause, Map.of(), Map.of(), false, false, false);
+    }
+
+    PendingOperation(Map<String, Object> whereClause, Map<String, Object> set, Map<String, Object> increments, boolean upsert) {
+        this(OperationType.UPDATE, null, whereClause, set, increments, upsert, false, false);
+    }
+
+    private PendingOperation(OperationType type, RowData data, Map<String, Object> whereClause,
+                             Map<String, Object> set, Map<String, Object> increments, boolean upsert,
+                             boolean transactional, boolean overDelete) {
+        this.type = type;
+        this.data = data;
+        this.whereClause = whereClause;
+        this.set = set;
+        this.increments = increments;
+        this.upsert = upsert;
+        this.transactional = transactional;
+        this.overDelete = overDelete;
+    }
+
+    /**
+     * @return esta operación marcada como parte de una transacción
+     */
+    PendingOperation asTransactional() {
+        return transactional ? this : new PendingOperation(type, data, whereClause, set, increments, upsert, true, overDelete);
+    }
+
+    /**
+     * @return esta operación marcada como combinada sobre un DELETE
+     */
+    PendingOperation asOverDelete() {
+        return overDelete ? this : new PendingOperation(type, data, whereClause, set, increments, upsert, transactional, true);
+    }
+
+    /**
+     * Una operación que sale de combinar otra con algo de una transacción pasa a ser de la transacción,
+     * y si la otra era un DELETE o venía de uno, queda marcada como combinada sobre un DELETE
+     * @return esta operación, con las marcas de source
+     */
+    PendingOperation carrying(PendingOperation source) {
+        PendingOperation carried = source.transactional ? asTransactional() : this;
+        return source.type == OperationType.DELETE || source.overDelete ? carried.asOverDelete() : carried;
+    }
+
+    /**
+     * Aplica este UPDATE en memoria sobre una fila pendiente
+     * @return una copia de la fila con los valores nuevos
+     */
+    RowData applyTo(RowData row) {
+        // Una columna que el layout no tiene no cabe en la fila: la copia pasa a guardar los valores en un Map
+        RowLayout layout = row.layout();
+        if (layout != null && (!fits(layout, set) || !fits(layout, increments))) {
+            layout = null;
+        }
+        RowData copy = row.copy(layout);
+        set.forEach(copy::set);
+        increments.forEach((column, delta) -> copy.set(column, Values.add(copy.get(column), delta)));
+        return copy;
+    }
+
+    private static boolean fits(RowLayout layout, Map<String, Object> values) {
+        for (String column : values.keySet()) {
+            if (layout.indexOf(column) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * La fila que crea el upsert cuando la clave no existe: clave + valores fijos + incrementos
+     */
+    RowData toRow() {
+        RowData row = new RowData();
+        whereClause.forEach(row::set);
+        set.forEach(row::set);
+        increments.forEach(row::set);
+        return row;
+    }
+
+    /**
+     * Junta dos UPDATE sobre la misma clave en uno: los valores fijos del segundo ganan
+     * y los incrementos se suman
+     */
+    PendingOperation merge(PendingOperation next) {
+        Map<String, Object> mergedSet = new LinkedHashMap<>(set);
+        Map<String, Object> mergedIncrements = new LinkedHashMap<>(increments);
+
+        next.set.forEach((column, value) -> {
+            mergedSet.put(column, value);
+            mergedIncrements.remove(column);
+        });
+        next.increments.forEach((column, delta) -> {
+            if (mergedSet.containsKey(column)) {
+                mergedSet.put(column, Values.add(mergedSet.get(column), delta));
+            } else {
+                mergedIncrements.merge(column, delta, Values::add);
+            }
+        });
+
+        return new PendingOperation(OperationType.UPDATE, null, whereClause, mergedSet, mergedIncrements,
+                upsert || next.upsert, transactional || next.transactional, overDelete || next.overDelete);
+    }
+}
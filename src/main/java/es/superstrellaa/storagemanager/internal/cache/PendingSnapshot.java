@@ -0,0 +1,444 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.data.RowLayout;
+import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.SchemaRegistry;
+import es.superstrellaa.storagemanager.internal.compression.ColumnCodec;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Copia de las operaciones pendientes de una tabla en un instante dado.
+ *
+ * Se toma ANTES de leer de SQLite y se aplica encima del resultado, así una lectura
+ * ve sus propias escrituras sin tener que hacer flush de la tabla.
+ */
+@ApiStatus.Internal
+public final class PendingSnapshot {
+
+    // Sin operaciones pendientes: las filas de la DB se devuelven tal cual
+    public static final PendingSnapshot EMPTY = new PendingSnapshot(null, List.of(), null, 0);
+
+    // Subconsultas anidadas como mucho en source(): una por cada tanda de operaciones parciales
+    private static final int MAX_SOURCE_DEPTH = 32;
+
+    private final List<PendingOperation> ops;
+    // Buffer del que sale y su marca de commits en ese momento (ver isConsistent)
+    private final PendingBuffer buffer;
+    private final long commitStamp;
+    private final TableSchema schema;
+    private final List<String> primaryKeys;
+    // Las filas pendientes se devuelven con la misma forma que las leídas de la DB
+    private final RowLayout layout;
+
+    // Claves cuyo estado final lo deciden solo las operaciones pendientes (la fila de la DB ya no cuenta)
+    private final Set<RowKey> touchedKeys = new HashSet<>();
+    // Deletes que no van por clave completa: pueden afectar a cualquier fila de la DB
+    private final List<Map<String, Object>> partialDeletes = new ArrayList<>();
+    private boolean hasUpdates;
+
+    // Para source(): claves con alguna operación por clave (su estado se calcula en memoria), las que
+    // además necesitan la fila de la DB (su primera operación por clave es un UPDATE) y el resto de
+    // deletes y updates, que se aplican en SQL sobre las filas de la DB
+    private final Set<RowKey> keyedRows = new LinkedHashSet<>();
+    private final Set<RowKey> baseKeys = new LinkedHashSet<>();
+    private final List<PendingOperation> partialOps = new ArrayList<>();
+    private boolean hasIncrements;
+
+    PendingSnapshot(String table, List<PendingOperation> ops, PendingBuffer buffer, long commitStamp) {
+        this.ops = ops;
+        this.buffer = buffer;
+        this.commitStamp = commitStamp;
+        this.schema = table == null ? null : SchemaRegistry.get(table);
+        this.primaryKeys = schema == null ? List.of() : schema.getPrimaryKeys();
+        this.layout = schema == null ? null : schema.getLayout();
+
+        Set<String> keyColumns = new HashSet<>(primaryKeys);
+        for (PendingOperation op : ops) {
+            if (op.type == OperationType.INSERT) {
+                RowKey key = RowKey.of(primaryKeys, op.data);
+                if (key != null) {
+                    touchedKeys.add(key);
+                }
+            } else if (op.type == OperationType.UPDATE) {
+                hasUpdates = true;
+            } else if (!keyColumns.isEmpty() && op.whereClause.keySet().equals(keyColumns)) {
+                touchedKeys.add(RowKey.of(primaryKeys, op.whereClause));
+            } else {
+                partialDeletes.add(op.whereClause);
+            }
+
+            RowKey key = keyOf(op);
+            if (key == null) {
+                if (op.type != OperationType.INSERT) {
+                    partialOps.add(op);
+                }
+            } else if (keyedRows.add(key) && op.type == OperationType.UPDATE) {
+                baseKeys.add(key);
+            }
+            hasIncrements |= op.type == OperationType.UPDATE && !op.increments.isEmpty();
+        }
+    }
+
+    /**
+     * @return la fila a la que afecta la operación si va por clave primaria completa, o null
+     */
+    private RowKey keyOf(PendingOperation op) {
+        if (op.type == OperationType.INSERT) {
+            return RowKey.of(primaryKeys, op.data);
+        }
+        if (!primaryKeys.isEmpty() && op.whereClause.keySet().equals(new HashSet<>(primaryKeys))) {
+            return RowKey.of(primaryKeys, op.whereClause);
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return ops.isEmpty();
+    }
+
+    public List<String> primaryKeys() {
+        return primaryKeys;
+    }
+
+    /**
+     * @return claves cuya fila de la DB hay que pasar a source(): la que ven sus UPDATE pendientes
+     */
+    public Set<RowKey> baseKeys() {
+        return Collections.unmodifiableSet(baseKeys);
+    }
+
+    /**
+     * @return claves cuyo estado calcula currentRows(): las filas de la DB con esas claves no cuentan
+     */
+    public Set<RowKey> keyedRows() {
+        return Collections.unmodifiableSet(keyedRows);
+    }
+
+    /**
+     * Los incrementos son lo único que no da igual aplicar dos veces. Si el snapshot tiene alguno,
+     * la lectura de la DB tiene que ser una sola transacción que empiece antes de comprobar isConsistent().
+     */
+    public boolean hasIncrements() {
+        return hasIncrements;
+    }
+
+    /**
+     * @return true si desde que se tomó el snapshot no ha empezado ningún commit de la tabla (ni había uno
+     * a medias): una lectura empezada antes de llamarlo no ve ninguna de las operaciones del snapshot
+     */
+    public boolean isConsistent() {
+        return buffer == null || ((commitStamp & 1) == 0 && buffer.commitStamp() == commitStamp);
+    }
+
+    /**
+     * Espera como mucho timeoutMillis a que termine el commit de la tabla que ha hecho que el
+     * snapshot deje de ser consistente: es una sola transacción, no un flush
+     */
+    public void awaitCommitEnd(long timeoutMillis) throws InterruptedException {
+        if (buffer != null) {
+            buffer.awaitCommitEnd(timeoutMillis);
+        }
+    }
+
+    /**
+     * Los UPDATE pendientes no se pueden aplicar con overlay(): dependen del valor actual de filas
+     * que la consulta puede no haber leído (que no cumplían el WHERE, o que crea un upsert).
+     * Si hay alguno, la lectura usa source(), que parte de las filas de la DB de cada clave.
+     */
+    public boolean hasUpdates() {
+        return hasUpdates;
+    }
+
+    /**
+     * Aplica las operaciones pendientes sobre las filas leídas de la DB:
+     * los inserts reemplazan la fila con la misma clave primaria (INSERT OR REPLACE)
+     * y los deletes filtran las filas que cumplen su WHERE
+     */
+    public List<RowData> overlay(List<RowData> committed, Map<String, Object> where) {
+        if (ops.isEmpty()) {
+            return committed;
+        }
+
+        List<RowData> rows = new ArrayList<>(committed.size());
+        for (RowData row : committed) {
+            if (keepsCommitted(row)) {
+                rows.add(row);
+            }
+        }
+        rows.addAll(pendingRows(where));
+        return rows;
+    }
+
+    /**
+     * @return false si la fila leída de la DB ya no es válida: una operación pendiente la
+     * reemplaza (su versión sale en pendingRows) o un delete pendiente la elimina
+     */
+    public boolean keepsCommitted(RowData row) {
+        if (ops.isEmpty()) {
+            return true;
+        }
+
+        RowKey key = RowKey.of(primaryKeys, row);
+        if (key != null && touchedKeys.contains(key)) {
+            return false;
+        }
+
+        for (Map<String, Object> delete : partialDeletes) {
+            if (Values.matches(delete, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Filas que salen solo de las operaciones pendientes (aplicadas en orden) y cumplen el WHERE.
+     * Junto con las filas de la DB que pasan keepsCommitted dan el estado actual de la tabla.
+     */
+    public List<RowData> pendingRows(Map<String, Object> where) {
+        if (ops.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Object, RowData> rows = new LinkedHashMap<>();
+        for (PendingOperation op : ops) {
+            if (op.type == OperationType.INSERT) {
+                RowKey key = RowKey.of(primaryKeys, op.data);
+                if (key != null) {
+                    rows.remove(key);
+                }
+                rows.put(key != null ? key : new Object(), op.data);
+            } else if (op.type == OperationType.DELETE) {
+                rows.values().removeIf(row -> Values.matches(op.whereClause, row));
+            } else if (op.type == OperationType.UPDATE) {
+                rows.replaceAll((key, row) -> Values.matches(op.whereClause, row) ? op.applyTo(row) : row);
+            }
+        }
+
+        List<RowData> result = new ArrayList<>();
+        for (RowData row : rows.values()) {
+            if (Values.matches(where, row)) {
+                result.add(row.copy(layout));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Estado actual de las filas que salen de las operaciones pendientes: las de las claves con
+     * operaciones por clave (partiendo de base, sus filas de la DB) y las insertadas sin clave,
+     * con todas las operaciones aplicadas en orden
+     */
+    public List<RowData> currentRows(Map<RowKey, RowData> base) {
+        return applyAll(new LinkedHashMap<>(base));
+    }
+
+    /**
+     * Estado actual de la tabla entera: todas las operaciones pendientes aplicadas en orden sobre
+     * todas sus filas de la DB. Para cuando source() no se puede usar (ver TableExecutor.pendingSource).
+     */
+    public List<RowData> applyTo(List<RowData> committed) {
+        Map<Object, RowData> rows = new LinkedHashMap<>();
+        for (RowData row : committed) {
+            RowKey key = RowKey.of(primaryKeys, row);
+            rows.put(key != null ? key : new Object(), row);
+        }
+        return applyAll(rows);
+    }
+
+    private List<RowData> applyAll(Map<Object, RowData> rows) {
+        for (PendingOperation op : ops) {
+            RowKey key = keyOf(op);
+            switch (op.type) {
+                case INSERT -> {
+                    if (key != null) {
+                        rows.remove(key);
+                    }
+                    rows.put(key != null ? key : new Object(), op.data);
+                }
+                case DELETE -> {
+                    if (key != null) {
+                        rows.remove(key);
+                    } else {
+                        rows.values().removeIf(row -> Values.matches(op.whereClause, row));
+                    }
+                }
+                case UPDATE -> {
+                    if (key == null) {
+                        rows.replaceAll((k, row) -> Values.matches(op.whereClause, row) ? op.applyTo(row) : row);
+                    } else if (rows.containsKey(key)) {
+                        rows.put(key, op.applyTo(rows.get(key)));
+                    } else if (op.upsert) {
+                        // Aquí se sabe que la fila no existe: o se ha leído su fila de la DB o ya la decidía otra operación
+                        rows.put(key, op.toRow());
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(rows.values());
+    }
+
+    /**
+     * Subconsulta con el estado actual de la tabla, para usarla en el FROM en lugar de la tabla:
+     * las filas de la DB sin operaciones por clave, con los deletes y updates parciales aplicados
+     * en SQL y en orden, más las de currentRows(base). Así el filtro, el orden, los límites y los
+     * agregados los sigue calculando SQLite sin tener que hacer flush antes.
+     *
+     * @param base   filas de la DB de baseKeys() (las que no existen no van)
+     * @param params se le añaden los parámetros de la subconsulta, en orden
+     * @return la subconsulta entre paréntesis, o null si no se puede construir (tabla sin esquema
+     *         o demasiadas operaciones parciales seguidas)
+     */
+    public String source(String table, Map<RowKey, RowData> base, List<Object> params) {
+        return source(table, base, params, null, null);
+    }
+
+    /**
+     * Como source(table, base, params), pero con las filas de currentRows(base) en la tabla rowsTable y
+     * las claves de keyedRows() en keysTable en lugar de como parámetros: solo lleva los de las
+     * operaciones parciales, así que sirve aunque haya más operaciones pendientes que parámetros.
+     */
+    public String source(String table, Map<RowKey, RowData> base, List<Object> params, String rowsTable, String keysTable) {
+        if (schema == null) {
+            return null;
+        }
+
+        List<String> columns = new ArrayList<>();
+        for (Column column : schema.getColumns()) {
+            columns.add(column.name());
+        }
+        String projection = String.join(", ", columns);
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(projection).append(" FROM ").append(table);
+        List<Object> sqlParams = new ArrayList<>();
+        if (!keyedRows.isEmpty()) {
+            sql.append(" WHERE ").append(keysTable != null
+                    ? keyColumns() + " NOT IN (SELECT " + String.join(", ", primaryKeys) + " FROM " + keysTable + ")"
+                    : excludeKeys(sqlParams));
+        }
+
+        // Los deletes seguidos van en un solo nivel: da igual en qué orden se apliquen
+        int depth = 0;
+        List<Map<String, Object>> deletes = new ArrayList<>();
+        for (PendingOperation op : partialOps) {
+            if (op.type == OperationType.DELETE) {
+                deletes.add(op.whereClause);
+                continue;
+            }
+            if (!deletes.isEmpty()) {
+                sql = applyDeletes(sql, projection, deletes, sqlParams);
+                deletes.clear();
+                depth++;
+            }
+            List<Object> updateParams = new ArrayList<>();
+            sql = applyUpdate(sql, columns, op, updateParams);
+            updateParams.addAll(sqlParams);
+            sqlParams = updateParams;
+            depth++;
+        }
+        if (!deletes.isEmpty()) {
+            sql = applyDeletes(sql, projection, deletes, sqlParams);
+            depth++;
+        }
+        if (depth > MAX_SOURCE_DEPTH) {
+            return null;
+        }
+
+        if (rowsTable != null) {
+            sql.append(" UNION ALL SELECT ").append(projection).append(" FROM ").append(rowsTable);
+            params.addAll(sqlParams);
+            return "(" + sql + ")";
+        }
+
+        List<RowData> rows = currentRows(base);
+        if (!rows.isEmpty()) {
+            String placeholders = "(" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+            sql.append(" UNION ALL VALUES ").append(String.join(", ", Collections.nCopies(rows.size(), placeholders)));
+            for (RowData row : rows) {
+                RowData stored = ColumnCodec.encode(schema, row);
+                for (String column : columns) {
+                    sqlParams.add(stored.get(column));
+                }
+            }
+        }
+
+        params.addAll(sqlParams);
+        return "(" + sql + ")";
+    }
+
+    /**
+     * (pk) NOT IN (...) con las claves que se calculan en memoria
+     */
+    private String excludeKeys(List<Object> params) {
+        for (RowKey key : keyedRows) {
+            for (Object value : key.values()) {
+                params.add(Values.bindable(value));
+            }
+        }
+        if (primaryKeys.size() == 1) {
+            return primaryKeys.get(0) + " NOT IN (" + String.join(", ", Collections.nCopies(keyedRows.size(), "?")) + ")";
+        }
+        String row = "(" + String.join(", ", Collections.nCopies(primaryKeys.size(), "?")) + ")";
+        return keyColumns() + " NOT IN (VALUES " + String.join(", ", Collections.nCopies(keyedRows.size(), row)) + ")";
+    }
+
+    private String keyColumns() {
+        return primaryKeys.size() == 1 ? primaryKeys.get(0) : "(" + String.join(", ", primaryKeys) + ")";
+    }
+
+    private static StringBuilder applyDeletes(StringBuilder sql, String projection, List<Map<String, Object>> deletes,
+                                              List<Object> params) {
+        StringJoiner kept = new StringJoiner(" AND ");
+        for (Map<String, Object> where : deletes) {
+            kept.add(matches(where, params) + " IS NOT 1");
+        }
+        return new StringBuilder("SELECT ").append(projection).append(" FROM (").append(sql).append(") WHERE ").append(kept);
+    }
+
+    /**
+     * Cada columna que cambia el UPDATE pasa a ser CASE WHEN (WHERE) IS 1 THEN valor nuevo ELSE columna END
+     */
+    private StringBuilder applyUpdate(StringBuilder sql, List<String> columns, PendingOperation op, List<Object> params) {
+        Map<String, Object> set = ColumnCodec.encode(schema, op.set);
+        StringJoiner projection = new StringJoiner(", ");
+        for (String column : columns) {
+            if (set.containsKey(column)) {
+                String when = matches(op.whereClause, params);
+                Object delta = op.increments.get(column);
+                params.add(delta == null ? set.get(column) : Values.add(set.get(column), delta));
+                projection.add("CASE WHEN " + when + " IS 1 THEN ? ELSE " + column + " END AS " + column);
+            } else if (op.increments.containsKey(column)) {
+                String when = matches(op.whereClause, params);
+                params.add(op.increments.get(column));
+                projection.add("CASE WHEN " + when + " IS 1 THEN COALESCE(" + column + ", 0) + ? ELSE " + column + " END AS " + column);
+            } else {
+                projection.add(column);
+            }
+        }
+        return new StringBuilder("SELECT ").append(projection).append(" FROM (").append(sql).append(")");
+    }
+
+    /**
+     * (a = ? AND b = ?): 1 si la fila cumple el WHERE, igual que en el DELETE/UPDATE del flush
+     */
+    private static String matches(Map<String, Object> where, List<Object> params) {
+        StringJoiner condition = new StringJoiner(" AND ", "(", ")");
+        where.forEach((column, value) -> {
+            condition.add(column + " = ?");
+            params.add(value);
+        });
+        return condition.toString();
+    }
+}
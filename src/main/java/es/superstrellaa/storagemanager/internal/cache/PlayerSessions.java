@@ -0,0 +1,393 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.TableExecutor;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Datos en memoria de los jugadores conectados, para las tablas marcadas con TableSchema.Builder#playerData.
+ *
+ * Al entrar un jugador se cargan sus filas en un hilo de consulta. Mientras está conectado, los select
+ * que filtran por su UUID se resuelven en memoria. Las escrituras siguen pasando por la WriteCache,
+ * que es la que las guarda, y se reflejan aquí al encolarse. En cada autosave se hace flush de las
+ * tablas por jugador; al salir el jugador, de las que tienen escrituras suyas pendientes, y se
+ * descarta su sesión.
+ */
+@ApiStatus.Internal
+public final class PlayerSessions {
+
+    // Si llegan escrituras del jugador mientras se leen sus filas, la carga se repite
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private static final Map<String, TableSchema> tables = new ConcurrentHashMap<>();
+    private static final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // Tablas con una recarga de todas las sesiones pedida que todavía no ha empezado
+    private static final Set<String> pendingReloads = ConcurrentHashMap.newKeySet();
+
+    // Desde SERVER_STOPPING: los jugadores se desconectan después y el flush final ya lo hace el apagado
+    private static volatile boolean stopping;
+
+    public static void register() {
+        ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> open(handler.getPlayer().getUuidAsString()));
+        ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> close(handler.getPlayer().getUuidAsString()));
+        ServerLifecycleEvents.BEFORE_SAVE.register((server, flush, force) -> flushTables("Autosave"));
+        ServerLifecycleEvents.SERVER_STARTING.register(server -> stopping = false);
+        ServerLifecycleEvents.SERVER_STOPPING.register(server -> stopping = true);
+        ServerLifecycleEvents.SERVER_STOPPED.register(server -> stop());
+    }
+
+    /**
+     * Añade la tabla si su esquema es de datos por jugador
+     */
+    public static void register(TableSchema schema) {
+        String column = schema.getPlayerColumn();
+        if (column == null) {
+            tables.remove(schema.getName());
+            return;
+        }
+        if (!schema.getPrimaryKeys().contains(column)) {
+            StorageManagerAPI.LOGGER.warn("Player data for table {} ignored: column {} is not part of the primary key",
+                    schema.getName(), column);
+            tables.remove(schema.getName());
+            return;
+        }
+
+        tables.put(schema.getName(), schema);
+        // Tabla registrada con jugadores ya conectados: se cargan otra vez para incluirla
+        sessions.values().forEach(PlayerSessions::load);
+    }
+
+    /**
+     * @return un future que se completa cuando los datos del jugador están en memoria (o la carga
+     * ha fallado y se lee de la DB); ya completado si el jugador no está conectado
+     */
+    public static CompletableFuture<Void> whenLoaded(String uuid) {
+        Session session = sessions.get(uuid);
+        return session == null ? CompletableFuture.completedFuture(null) : session.ready;
+    }
+
+    /**
+     * @return las filas del select si se puede resolver con la sesión de un jugador, o null si hay que leer de la DB
+     */
+    public static List<RowData> select(String table, Map<String, Object> where) {
+        TableSchema schema = tables.get(table);
+        if (schema == null) {
+            return null;
+        }
+        Object uuid = where.get(schema.getPlayerColumn());
+        Session session = uuid == null ? null : sessions.get(uuid.toString());
+        if (session == null) {
+            return null;
+        }
+
+        synchronized (session) {
+            Map<RowKey, RowData> rows = session.rows == null ? null : session.rows.get(table);
+            if (rows == null) {
+                return null;
+            }
+
+            List<RowData> result = new ArrayList<>();
+            for (RowData row : rows.values()) {
+                if (Values.matches(where, row)) {
+                    result.add(row.copy(row.layout()));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Refleja una operación que se acaba de encolar en la WriteCache
+     */
+    static void onQueued(String table, PendingOperation op) {
+        TableSchema schema = tables.get(table);
+        if (schema == null || sessions.isEmpty()) {
+            return;
+        }
+
+        if (op.type == OperationType.UPDATE && touchesKey(schema, op)) {
+            // Las filas cambian de clave (o de jugador): se cargan otra vez
+            reload(table);
+            return;
+        }
+
+        Object uuid = op.type == OperationType.INSERT ? op.data.get(schema.getPlayerColumn()) : op.whereClause.get(schema.getPlayerColumn());
+        if (uuid != null) {
+            Session session = sessions.get(uuid.toString());
+            if (session != null) {
+                apply(session, schema, op);
+            }
+        } else {
+            for (Session session : sessions.values()) {
+                apply(session, schema, op);
+            }
+        }
+    }
+
+    /**
+     * Escritura inmediata, flush fallido u operación tirada por DROP_OLDEST que puede afectar a cualquier
+     * jugador: las sesiones dejan de usarse al momento y se cargan otra vez. Las recargas de una tabla
+     * se juntan en una sola mientras no ha empezado.
+     */
+    public static void reload(String table) {
+        if (!tables.containsKey(table) || sessions.isEmpty()) {
+            return;
+        }
+        // Hasta que termine la recarga, los select de los jugadores van a la DB
+        sessions.values().forEach(PlayerSessions::invalidate);
+        if (!pendingReloads.add(table)) {
+            return;
+        }
+
+        try {
+            SQLiteBackend.getQueryExecutor().execute(() -> {
+                pendingReloads.remove(table);
+                sessions.values().forEach(PlayerSessions::load);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReloads.remove(table);
+            sessions.values().forEach(session -> session.ready.complete(null));
+        }
+    }
+
+    /**
+     * Escritura inmediata de las filas del WHERE
+     */
+    public static void reload(String table, Map<String, Object> where) {
+        TableSchema schema = tables.get(table);
+        if (schema != null) {
+            reloadPlayer(where.get(schema.getPlayerColumn()));
+        }
+    }
+
+    /**
+     * Escritura inmediata de una fila completa
+     */
+    public static void reload(String table, RowData row) {
+        TableSchema schema = tables.get(table);
+        if (schema != null) {
+            reloadPlayer(row.get(schema.getPlayerColumn()));
+        }
+    }
+
+    private static void reloadPlayer(Object uuid) {
+        if (uuid == null) {
+            sessions.values().forEach(PlayerSessions::load);
+            return;
+        }
+        Session session = sessions.get(uuid.toString());
+        if (session != null) {
+            load(session);
+        }
+    }
+
+    private static void open(String uuid) {
+        Session session = new Session(uuid);
+        Session previous = sessions.put(uuid, session);
+        if (previous != null) {
+            previous.close();
+        }
+        load(session);
+    }
+
+    private static void close(String uuid) {
+        Session session = sessions.remove(uuid);
+        if (session == null) {
+            return;
+        }
+        session.close();
+        if (stopping) {
+            return;
+        }
+        // Las escrituras del jugador ya están en la WriteCache: solo se adelanta el flush de las tablas donde tiene alguna
+        for (TableSchema schema : tables.values()) {
+            if (WriteCache.getInstance().hasPendingFor(schema.getName(), schema.getPlayerColumn(), uuid)) {
+                flushTable(schema.getName(), "Disconnect");
+            }
+        }
+    }
+
+    /**
+     * El servidor se ha parado: quien espera a que cargue una sesión recibe un error
+     */
+    private static void stop() {
+        for (Session session : sessions.values()) {
+            // Antes de close(), que completaría el future sin error
+            session.ready.completeExceptionally(new IllegalStateException("Server stopped before player data for "
+                    + session.uuid + " was loaded"));
+            session.close();
+        }
+        sessions.clear();
+        pendingReloads.clear();
+    }
+
+    private static void flushTables(String reason) {
+        for (String table : tables.keySet()) {
+            flushTable(table, reason);
+        }
+    }
+
+    private static void flushTable(String table, String reason) {
+        WriteCache.getInstance().flushTableAsync(table).exceptionally(e -> {
+            StorageManagerAPI.LOGGER.error("{} flush failed for table {}", reason, table, e);
+            return null;
+        });
+    }
+
+    /**
+     * Descarta las filas en memoria y la carga en curso, sin empezar otra
+     */
+    private static void invalidate(Session session) {
+        synchronized (session) {
+            session.rows = null;
+            session.loadId++;
+        }
+    }
+
+    private static void load(Session session) {
+        long loadId;
+        synchronized (session) {
+            session.rows = null;
+            loadId = ++session.loadId;
+        }
+        load(session, loadId, 1);
+    }
+
+    private static void load(Session session, long loadId, int attempt) {
+        List<TableSchema> schemas = List.copyOf(tables.values());
+        long writes;
+        synchronized (session) {
+            writes = session.writes;
+        }
+
+        CompletableFuture<Map<String, Map<RowKey, RowData>>> read;
+        try {
+            read = CompletableFuture.supplyAsync(() -> readRows(session.uuid, schemas), SQLiteBackend.getQueryExecutor());
+        } catch (RejectedExecutionException e) {
+            session.ready.complete(null);
+            return;
+        }
+
+        read.whenComplete((rows, error) -> {
+            synchronized (session) {
+                if (session.closed || session.loadId != loadId) {
+                    return;
+                }
+                if (error == null && session.writes == writes) {
+                    session.rows = rows;
+                    session.ready.complete(null);
+                    return;
+                }
+            }
+
+            if (error != null) {
+                StorageManagerAPI.LOGGER.error("Failed to load player data for {}", session.uuid, error);
+                session.ready.complete(null);
+            } else if (attempt < MAX_LOAD_ATTEMPTS) {
+                load(session, loadId, attempt + 1);
+            } else {
+                // Sin sesión los select del jugador van a la DB, que siempre es correcto
+                StorageManagerAPI.LOGGER.warn("Player data for {} kept changing while loading, reading it from the database", session.uuid);
+                session.ready.complete(null);
+            }
+        });
+    }
+
+    private static Map<String, Map<RowKey, RowData>> readRows(String uuid, List<TableSchema> schemas) {
+        Map<String, Map<RowKey, RowData>> rows = new HashMap<>();
+        for (TableSchema schema : schemas) {
+            Map<RowKey, RowData> tableRows = new LinkedHashMap<>();
+            for (RowData row : TableExecutor.select(schema.getName(), Map.of(schema.getPlayerColumn(), uuid))) {
+                RowKey key = RowKey.of(schema.getPrimaryKeys(), row);
+                if (key != null) {
+                    tableRows.put(key, row);
+                }
+            }
+            rows.put(schema.getName(), tableRows);
+        }
+        return rows;
+    }
+
+    private static void apply(Session session, TableSchema schema, PendingOperation op) {
+        synchronized (session) {
+            session.writes++;
+            Map<RowKey, RowData> rows = session.rows == null ? null : session.rows.get(schema.getName());
+            if (rows == null) {
+                return;
+            }
+
+            switch (op.type) {
+                case INSERT -> {
+                    RowKey key = RowKey.of(schema.getPrimaryKeys(), op.data);
+                    if (key != null) {
+                        // INSERT OR REPLACE: las columnas que no lleva quedan a null
+                        rows.put(key, op.data.copy(schema.getLayout()));
+                    }
+                }
+                case DELETE -> rows.values().removeIf(row -> Values.matches(op.whereClause, row));
+                case UPDATE -> {
+                    boolean matched = false;
+                    for (Map.Entry<RowKey, RowData> entry : rows.entrySet()) {
+                        if (Values.matches(op.whereClause, entry.getValue())) {
+                            entry.setValue(op.applyTo(entry.getValue()));
+                            matched = true;
+                        }
+                    }
+                    RowKey key = RowKey.of(schema.getPrimaryKeys(), op.whereClause);
+                    if (!matched && op.upsert && key != null) {
+                        rows.put(key, op.toRow().copy(schema.getLayout()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean touchesKey(TableSchema schema, PendingOperation op) {
+        for (String column : schema.getPrimaryKeys()) {
+            if (op.set.containsKey(column) || op.increments.containsKey(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Filas en memoria de un jugador conectado
+     */
+    private static final class Session {
+        final String uuid;
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        // Filas por tabla y clave primaria; null mientras se cargan
+        Map<String, Map<RowKey, RowData>> rows;
+        long loadId;
+        long writes;
+        boolean closed;
+
+        Session(String uuid) {
+            this.uuid = uuid;
+        }
+
+        synchronized void close() {
+            closed = true;
+            rows = null;
+            ready.complete(null);
+        }
+    }
+
+    private PlayerSessions() {}
+}
@@ -0,0 +1,162 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de resultados de consultas, para las tablas con TableSchema.Builder#queryCache y las
+ * Query marcadas con cached().
+ *
+ * Cada tabla tiene un contador de generación que sube con cada escritura que cambia lo que se lee
+ * de ella: al encolarla en la WriteCache (las lecturas ya la ven), al commitear una escritura
+ * inmediata y cuando un flush falla y se pierden operaciones. Un resultado solo vale mientras la
+ * generación de su tabla sea la misma que cuando se empezó a leer, así que no hace falta buscar
+ * qué entradas afecta cada escritura: las viejas se sustituyen al volver a pedirlas o se expulsan.
+ *
+ * Una sola caché para todas las tablas, limitada por memoria estimada (StorageConfig) y con
+ * expulsión LRU.
+ */
+@ApiStatus.Internal
+public final class QueryCache {
+
+    // Un resultado no puede ocupar más de esta fracción de la caché (p.ej. un select sin límite)
+    private static final int MAX_ENTRY_FRACTION = 8;
+
+    private static final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private static final Set<String> tables = ConcurrentHashMap.newKeySet();
+
+    private static final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long bytes;
+
+    /**
+     * Activa o desactiva la caché para los select de la tabla según su esquema
+     */
+    public static void register(TableSchema schema) {
+        if (schema.isQueryCached()) {
+            tables.add(schema.getName());
+        } else {
+            tables.remove(schema.getName());
+        }
+        // La tabla se acaba de (re)crear: nada de lo leído antes vale
+        invalidate(schema.getName());
+    }
+
+    /**
+     * @return true si el esquema de la tabla pide cachear todas sus consultas
+     */
+    public static boolean isEnabled(String table) {
+        return tables.contains(table);
+    }
+
+    public static long generation(String table) {
+        return generations.computeIfAbsent(table, k -> new AtomicLong()).get();
+    }
+
+    /**
+     * La tabla ha cambiado: todos sus resultados cacheados dejan de valer.
+     * Hay que llamarlo después de que el cambio sea visible para las lecturas, nunca antes.
+     */
+    public static void invalidate(String table) {
+        generations.computeIfAbsent(table, k -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @param shape forma normalizada de la consulta (WHERE, condiciones, orden, límites...)
+     * @return una copia de las filas cacheadas, o null si no hay un resultado válido
+     */
+    public static List<RowData> get(String table, Object shape) {
+        long generation = generation(table);
+        Entry entry;
+        synchronized (entries) {
+            Key key = new Key(table, shape);
+            entry = entries.get(key);
+            if (entry != null && entry.generation() != generation) {
+                entries.remove(key);
+                bytes -= entry.bytes();
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            StorageMetrics.table(table).queryCacheMisses.increment();
+            return null;
+        }
+        StorageMetrics.table(table).queryCacheHits.increment();
+        return copy(entry.rows());
+    }
+
+    /**
+     * Guarda el resultado de una lectura, salvo que la tabla haya cambiado desde que empezó
+     * @param readGeneration generation(table) antes de empezar a leer
+     */
+    public static void put(String table, Object shape, List<RowData> rows, long readGeneration) {
+        long maxBytes = StorageConfig.get().getQueryCacheBytes();
+        long size = estimateBytes(rows);
+        if (size > maxBytes / MAX_ENTRY_FRACTION || generation(table) != readGeneration) {
+            return;
+        }
+
+        Entry entry = new Entry(copy(rows), readGeneration, size);
+        synchronized (entries) {
+            Entry previous = entries.put(new Key(table, shape), entry);
+            if (previous != null) {
+                bytes -= previous.bytes();
+            }
+            bytes += size;
+            evict(maxBytes);
+        }
+    }
+
+    /**
+     * Expulsa lo que sobre si se ha reducido el tamaño de la caché en la configuración
+     */
+    public static void trim() {
+        synchronized (entries) {
+            evict(StorageConfig.get().getQueryCacheBytes());
+        }
+    }
+
+    private static void evict(long maxBytes) {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key, Entry> entry = eldest.next();
+            bytes -= entry.getValue().bytes();
+            eldest.remove();
+            StorageMetrics.table(entry.getKey().table()).queryCacheEvictions.increment();
+        }
+    }
+
+    private static List<RowData> copy(List<RowData> rows) {
+        List<RowData> copy = new ArrayList<>(rows.size());
+        for (RowData row : rows) {
+            copy.add(row.copy(row.layout()));
+        }
+        return copy;
+    }
+
+    private static long estimateBytes(List<RowData> rows) {
+        long size = 64;
+        for (RowData row : rows) {
+            size += RowCache.estimateBytes(row);
+        }
+        return size;
+    }
+
+    private record Key(String table, Object shape) {}
+
+    private record Entry(List<RowData> rows, long generation, long bytes) {}
+
+    private QueryCache() {}
+}
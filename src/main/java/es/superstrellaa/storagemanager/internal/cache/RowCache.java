@@ -0,0 +1,321 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.data.RowLayout;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.SchemaRegistry;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import es.superstrellaa.storagemanager.internal.metrics.TableMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caché de filas por clave primaria completa para las tablas que la activan (TableSchema.Builder#rowCache).
+ *
+ * Guarda el estado más reciente de cada fila, contando también las escrituras que siguen en
+ * la WriteCache: se rellena al leer y se actualiza en cuanto se encola una escritura.
+ * También recuerda las claves que no existen. Cuando se llena, expulsa la entrada usada
+ * hace más tiempo (LRU).
+ */
+@ApiStatus.Internal
+public final class RowCache {
+
+    private static final Map<String, RowCache> caches = new ConcurrentHashMap<>();
+
+    // Coste fijo estimado de una entrada (clave, nodo del mapa, RowData y sus arrays)
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final String table;
+    private final List<String> primaryKeys;
+    private final Set<String> keyColumns;
+    private final RowLayout layout;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final TableMetrics metrics;
+
+    private final LinkedHashMap<RowKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    // Cambia con cada escritura: una lectura que empezó antes no puede guardar su resultado
+    private long generation;
+
+    private RowCache(TableSchema schema, int maxEntries, long maxBytes) {
+        this.table = schema.getName();
+        this.primaryKeys = schema.getPrimaryKeys();
+        this.keyColumns = new HashSet<>(primaryKeys);
+        this.layout = schema.getLayout();
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.metrics = StorageMetrics.table(table);
+    }
+
+    /**
+     * Crea la caché de la tabla si su esquema (o la configuración, que manda sobre él) la tiene activada
+     */
+    public static void register(TableSchema schema) {
+        StorageConfig.TableSettings settings = StorageConfig.get().table(schema.getName());
+        int maxEntries = settings.rowCacheEntries(schema);
+        if (maxEntries <= 0) {
+            caches.remove(schema.getName());
+            return;
+        }
+        if (schema.getPrimaryKeys().isEmpty()) {
+            StorageManagerAPI.LOGGER.warn("Row cache for table {} ignored: it needs a primary key", schema.getName());
+            return;
+        }
+        caches.put(schema.getName(), new RowCache(schema, maxEntries, settings.rowCacheBytes(schema)));
+    }
+
+    /**
+     * Vuelve a crear las cachés cuyo tamaño ha cambiado al recargar la configuración
+     */
+    public static void reconfigure() {
+        for (TableSchema schema : SchemaRegistry.all()) {
+            StorageConfig.TableSettings settings = StorageConfig.get().table(schema.getName());
+            RowCache cache = caches.get(schema.getName());
+            int maxEntries = settings.rowCacheEntries(schema);
+            long maxBytes = settings.rowCacheBytes(schema);
+            if (cache == null ? maxEntries > 0 : cache.maxEntries != maxEntries || cache.maxBytes != maxBytes) {
+                register(schema);
+            }
+        }
+    }
+
+    /**
+     * @return la caché de la tabla, o null si no la tiene
+     */
+    public static RowCache get(String table) {
+        return caches.get(table);
+    }
+
+    /**
+     * Escritura inmediata (sin pasar por la WriteCache) que afecta a las filas del WHERE
+     */
+    public static void invalidate(String table, Map<String, Object> where) {
+        RowCache cache = caches.get(table);
+        if (cache != null) {
+            cache.invalidate(where);
+        }
+    }
+
+    /**
+     * Escritura inmediata de una fila completa
+     */
+    public static void invalidate(String table, RowData row) {
+        RowCache cache = caches.get(table);
+        if (cache != null) {
+            cache.invalidate(RowKey.of(cache.primaryKeys, row));
+        }
+    }
+
+    /**
+     * Escritura inmediata que puede afectar a cualquier fila
+     */
+    public static void clear(String table) {
+        RowCache cache = caches.get(table);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return la clave si el WHERE es exactamente la clave primaria, o null si no se puede cachear
+     */
+    public RowKey keyOf(Map<String, Object> where) {
+        if (!where.keySet().equals(keyColumns)) {
+            return null;
+        }
+        return RowKey.of(primaryKeys, where);
+    }
+
+    /**
+     * @return la entrada de la clave (con row null si la fila no existe), o null si no está en caché
+     */
+    public synchronized Entry lookup(RowKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            metrics.rowCacheMisses.increment();
+        } else {
+            metrics.rowCacheHits.increment();
+        }
+        return entry;
+    }
+
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Guarda el resultado de una lectura, salvo que haya habido escrituras desde que empezó
+     * @param row la fila leída, o null si no existe
+     */
+    public synchronized void fill(RowKey key, RowData row, long readGeneration) {
+        if (generation == readGeneration) {
+            store(key, row);
+        }
+    }
+
+    /**
+     * Refleja una operación que se acaba de encolar en la WriteCache
+     */
+    synchronized void onQueued(PendingOperation op) {
+        generation++;
+
+        switch (op.type) {
+            case INSERT -> {
+                RowKey key = RowKey.of(primaryKeys, op.data);
+                if (key != null) {
+                    // INSERT OR REPLACE: las columnas que no lleva quedan a null
+                    store(key, op.data.copy(layout));
+                }
+            }
+            case DELETE -> {
+                RowKey key = keyOf(op.whereClause);
+                if (key != null) {
+                    store(key, null);
+                } else {
+                    replaceMatching(op.whereClause, null);
+                }
+            }
+            case UPDATE -> {
+                if (!disjoint(op.set.keySet(), keyColumns) || !disjoint(op.increments.keySet(), keyColumns)) {
+                    // Cambia la clave de las filas: no se sabe a qué entradas afecta
+                    clearEntries();
+                    return;
+                }
+
+                RowKey key = keyOf(op.whereClause);
+                if (key == null) {
+                    replaceMatching(op.whereClause, op);
+                    return;
+                }
+
+                Entry entry = entries.get(key);
+                if (entry == null) {
+                    return;
+                }
+                if (entry.row() != null) {
+                    store(key, op.applyTo(entry.row()));
+                } else if (op.upsert) {
+                    store(key, op.toRow().copy(layout));
+                }
+            }
+        }
+    }
+
+    /**
+     * Aplica un delete (update null) o un update a las filas cacheadas que cumplen el WHERE
+     */
+    private void replaceMatching(Map<String, Object> where, PendingOperation update) {
+        Map<RowKey, RowData> replaced = new LinkedHashMap<>();
+        for (Map.Entry<RowKey, Entry> entry : entries.entrySet()) {
+            RowData row = entry.getValue().row();
+            if (row != null && Values.matches(where, row)) {
+                replaced.put(entry.getKey(), update == null ? null : update.applyTo(row));
+            }
+        }
+        replaced.forEach(this::store);
+    }
+
+    private static boolean disjoint(Set<String> columns, Set<String> keyColumns) {
+        for (String column : columns) {
+            if (keyColumns.contains(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private synchronized void invalidate(Map<String, Object> where) {
+        RowKey key = keyOf(where);
+        if (key != null) {
+            invalidate(key);
+        } else {
+            clear();
+        }
+    }
+
+    private synchronized void invalidate(RowKey key) {
+        generation++;
+        if (key == null) {
+            clearEntries();
+            return;
+        }
+
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.bytes();
+        }
+    }
+
+    /**
+     * Vacía la caché (p.ej. si un flush falla y las escrituras que ya reflejaba no llegan a la DB)
+     */
+    public synchronized void clear() {
+        generation++;
+        clearEntries();
+    }
+
+    private void clearEntries() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void store(RowKey key, RowData row) {
+        Entry entry = new Entry(row, estimateBytes(row));
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes();
+        }
+        bytes += entry.bytes();
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > 1 && (entries.size() > maxEntries || (maxBytes > 0 && bytes > maxBytes))) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            metrics.rowCacheEvictions.increment();
+        }
+    }
+
+    /**
+     * Memoria aproximada de una fila (o de una clave que no existe, con row null)
+     */
+    static long estimateBytes(RowData row) {
+        if (row == null) {
+            return ENTRY_OVERHEAD_BYTES;
+        }
+
+        long size = ENTRY_OVERHEAD_BYTES;
+        for (String column : row.columns()) {
+            Object value = row.get(column);
+            if (value instanceof String text) {
+                size += 40 + 2L * text.length();
+            } else if (value instanceof byte[] data) {
+                size += 16 + data.length;
+            } else {
+                size += 16;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return entradas guardadas ahora mismo
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Fila cacheada; row es null si se sabe que la clave no existe
+     */
+    public record Entry(RowData row, long bytes) {}
+}
@@ -0,0 +1,54 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Valores de la clave primaria de una fila, normalizados para que 5 (Integer) y 5L (Long)
+ * identifiquen la misma fila igual que lo haría SQLite
+ */
+@ApiStatus.Internal
+public record RowKey(List<Object> values) {
+
+    /**
+     * Como of(primaryKeys, Map), leyendo las columnas de la fila por posición sin pasar por values()
+     */
+    public static RowKey of(List<String> primaryKeys, RowData row) {
+        if (primaryKeys.isEmpty()) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<>(primaryKeys.size());
+        for (String column : primaryKeys) {
+            Object value = row.get(column);
+            if (value == null) {
+                return null;
+            }
+            values.add(Values.normalize(value));
+        }
+        return new RowKey(values);
+    }
+
+    /**
+     * @return la clave de la fila, o null si la tabla no tiene clave primaria o falta alguna columna
+     */
+    public static RowKey of(List<String> primaryKeys, Map<String, Object> row) {
+        if (primaryKeys.isEmpty()) {
+            return null;
+        }
+
+        List<Object> values = new ArrayList<>(primaryKeys.size());
+        for (String column : primaryKeys) {
+            Object value = row.get(column);
+            if (value == null) {
+                return null;
+            }
+            values.add(Values.normalize(value));
+        }
+        return new RowKey(values);
+    }
+}
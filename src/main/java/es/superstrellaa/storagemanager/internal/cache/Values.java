@@ -0,0 +1,122 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Comparación de valores en memoria imitando cómo los compara SQLite con "col = ?"
+ */
+@ApiStatus.Internal
+public final class Values {
+
+    /**
+     * Convierte un valor a su forma canónica: enteros a Long, decimales a Double,
+     * booleanos a 0/1 (como los guarda el driver) y byte[] a un ByteBuffer comparable
+     */
+    public static Object normalize(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof Boolean bool) {
+            return bool ? 1L : 0L;
+        }
+        if (value instanceof byte[] bytes) {
+            return ByteBuffer.wrap(bytes);
+        }
+        return value;
+    }
+
+    /**
+     * Valor normalizado listo para setObject: los ByteBuffer vuelven a ser byte[]
+     */
+    public static Object bindable(Object normalized) {
+        if (normalized instanceof ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            return bytes;
+        }
+        return normalized;
+    }
+
+    /**
+     * Igual que en SQL, NULL nunca es igual a nada
+     */
+    public static boolean sameValue(Object expected, Object actual) {
+        if (expected == null || actual == null) {
+            return false;
+        }
+
+        Object a = normalize(expected);
+        Object b = normalize(actual);
+
+        if (a instanceof Number x && b instanceof Number y) {
+            if (a instanceof Double || b instanceof Double) {
+                return x.doubleValue() == y.doubleValue();
+            }
+            return x.longValue() == y.longValue();
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * @return true si la fila cumple todas las condiciones de igualdad del WHERE
+     */
+    public static boolean matches(Map<String, Object> where, Map<String, Object> row) {
+        for (Map.Entry<String, Object> condition : where.entrySet()) {
+            if (!sameValue(condition.getValue(), row.get(condition.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Como matches(where, Map), leyendo las columnas de la fila por posición sin pasar por values()
+     */
+    public static boolean matches(Map<String, Object> where, RowData row) {
+        for (Map.Entry<String, Object> condition : where.entrySet()) {
+            if (!sameValue(condition.getValue(), row.get(condition.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Suma un incremento a un valor como lo haría "col = COALESCE(col, 0) + ?":
+     * null y los valores no numéricos cuentan como 0. El resultado es del tipo más ancho
+     * de los dos (dos Integer dan Integer salvo que se desborde, como SQLite pasa a 64 bits)
+     */
+    public static Object add(Object value, Object delta) {
+        if (!(value instanceof Number current)) {
+            return delta;
+        }
+        Number step = (Number) delta;
+        if (current instanceof Double || step instanceof Double) {
+            return current.doubleValue() + step.doubleValue();
+        }
+        if (current instanceof Float || step instanceof Float) {
+            if (current instanceof Float && step instanceof Float) {
+                return current.floatValue() + step.floatValue();
+            }
+            return current.doubleValue() + step.doubleValue();
+        }
+        long sum = current.longValue() + step.longValue();
+        if (isInt(current) && isInt(step) && sum == (int) sum) {
+            return (int) sum;
+        }
+        return sum;
+    }
+
+    private static boolean isInt(Number number) {
+        return number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    private Values() {}
+}
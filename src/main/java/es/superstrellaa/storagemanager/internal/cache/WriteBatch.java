@@ -0,0 +1,41 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Escrituras de una transacción, guardadas en orden hasta que se encolan todas juntas con WriteCache#queueBatch
+ */
+@ApiStatus.Internal
+public final class WriteBatch {
+
+    private final Map<String, List<PendingOperation>> byTable = new LinkedHashMap<>();
+
+    public void insert(String table, RowData data) {
+        add(table, new PendingOperation(OperationType.INSERT, data));
+    }
+
+    public void update(String table, Map<String, Object> where, Map<String, Object> set, Map<String, Object> increments) {
+        add(table, WriteCache.updateOperation(table, where, set, increments));
+    }
+
+    public void delete(String table, Map<String, Object> where) {
+        add(table, new PendingOperation(OperationType.DELETE, where));
+    }
+
+    private void add(String table, PendingOperation op) {
+        byTable.computeIfAbsent(table, k -> new ArrayList<>()).add(op);
+    }
+
+    /**
+     * Operaciones por tabla; el orden dentro de cada tabla es el de las llamadas
+     */
+    Map<String, List<PendingOperation>> byTable() {
+        return byTable;
+    }
+}
@@ -1,25 +1,72 @@
 package es.superstrellaa.storagemanager.internal.cache;
 
 import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
 import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.Database;
+import es.superstrellaa.storagemanager.internal.DatabaseWriter;
 import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.SchemaRegistry;
+import es.superstrellaa.storagemanager.internal.StatementCache;
+import es.superstrellaa.storagemanager.internal.compression.ColumnCodec;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import es.superstrellaa.storagemanager.internal.lifecycle.ServerContext;
+import es.superstrellaa.storagemanager.internal.metrics.FlushEvent;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import es.superstrellaa.storagemanager.internal.metrics.TableMetrics;
 import org.jetbrains.annotations.ApiStatus;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 @ApiStatus.Internal
 public final class WriteCache {
 
-    private static final long FLUSH_INTERVAL_MS = 5000;
-    private static final int BATCH_SIZE = 100;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
 
-    private final Map<String, List<PendingOperation>> pendingOps = new ConcurrentHashMap<>();
+    // Intervalo de flush, tamaño de lote y capacidad de cada cola salen de StorageConfig (por tabla).
+    // Al llegar a batchSize operaciones se pide un flush temprano al hilo de escritura.
+    private final Map<String, PendingBuffer> pendingOps = new ConcurrentHashMap<>();
+
+    // Un flush agrupa todas las tablas de una base de datos en commits de como mucho
+    // maxGroupOperations operaciones, y no deja una transacción abierta más de maxGroupMillis
+    private volatile int maxGroupOperations = StorageConfig.get().getGroupMaxOperations();
+    private volatile long maxGroupMillis = StorageConfig.get().getGroupMaxMillis();
+
+    // Tablas con escrituras de una misma transacción pendientes, que se tienen que commitear juntas.
+    // Encolar una transacción y empezar un flush van con el lock de escritura de transactionLock, y los
+    // snapshots con el de lectura: así una lectura ve todas las escrituras de una transacción o ninguna
+    private final ReentrantReadWriteLock transactionLock = new ReentrantReadWriteLock();
+    private final Map<String, Set<String>> links = new HashMap<>();
+
+    // Cada cuánto se bajan a disco los journals (un fsync para todo lo escrito en ese intervalo)
+    private static final long JOURNAL_SYNC_MS = 100;
+    // Directorio de los journals, o null si no están activados (p.ej. en los benchmarks)
+    private volatile Path journalDir;
+    // Journals del arranque anterior que esperan a que se registre su tabla: sin el esquema
+    // no se sabe qué columnas van comprimidas
+    private final Map<String, DeferredReplay> deferredReplays = new ConcurrentHashMap<>();
+    // Un lock por tabla para crear su cola (ver createBuffer)
+    private final Map<String, Object> creationLocks = new ConcurrentHashMap<>();
+
+    // Un flush que hace rollback devuelve sus operaciones a la cola; al fallar este número de veces
+    // seguidas se dan por perdidas (un error que no es pasajero bloquearía la tabla para siempre)
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
 
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
         Thread t = new Thread(r, "StorageManager-WriteCache");
@@ -38,93 +85,841 @@ public final class WriteCache {
         return instance;
     }
 
+    /**
+     * Arranca la red de seguridad: los flushes normales los decide el FlushScheduler en cada tick,
+     * esto solo guarda las tablas que llevan demasiado tiempo esperando (p.ej. si el servidor no tickea)
+     */
     public void start() {
-        scheduler.scheduleAtFixedRate(
-                this::flushAll,
-                FLUSH_INTERVAL_MS,
-                FLUSH_INTERVAL_MS,
+        scheduler.scheduleWithFixedDelay(
+                this::flushOverdue,
+                1000,
+                1000,
                 TimeUnit.MILLISECONDS
         );
-        StorageManagerAPI.LOGGER.info("WriteCache started with {}ms flush interval", FLUSH_INTERVAL_MS);
+        StorageConfig.TableSettings settings = StorageConfig.get().defaults();
+        StorageManagerAPI.LOGGER.info("WriteCache started with {}ms flush interval ({}ms max delay)",
+                settings.flushIntervalMs(), settings.maxFlushDelayMs());
     }
 
     /**
-     * Encola una operación de inserción para ser ejecutada más tarde
+     * Busca lo que quedó en los journals (el proceso murió antes del flush) y activa el journal para
+     * las operaciones que se encolen a partir de ahora. Va antes de registrar tablas.
+     *
+     * Cada journal se ejecuta en SQLite al registrarse su tabla (tableRegistered), o al abrir su cola
+     * si se escribe en ella antes. Los ficheros se llaman &lt;base de datos&gt;.&lt;tabla&gt;.journal: al
+     * arrancar todavía no hay esquemas registrados, así que el nombre es lo único que dice en qué
+     * base de datos está la tabla.
      */
-    public void queueInsert(String table, RowData data) {
-        pendingOps.computeIfAbsent(table, k -> Collections.synchronizedList(new ArrayList<>()))
-                .add(new PendingOperation(OperationType.INSERT, data));
+    public void enableJournal(Path dir) {
+        try {
+            Files.createDirectories(dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + WriteJournal.SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    name = name.substring(0, name.length() - WriteJournal.SUFFIX.length());
+                    int dot = name.indexOf('.');
+                    if (dot < 0) {
+                        deferredReplays.put(name, new DeferredReplay(SQLiteBackend.MAIN_DATABASE, file));
+                    } else {
+                        deferredReplays.put(name.substring(dot + 1), new DeferredReplay(name.substring(0, dot), file));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read write journals", e);
+        }
+        if (!deferredReplays.isEmpty()) {
+            StorageManagerAPI.LOGGER.info("Found write journals for tables {}, replaying each when its table is registered",
+                    deferredReplays.keySet());
+        }
 
-        // Si hay muchas operaciones pendientes, hacer flush inmediato no vaya que pete o algo random
-        if (pendingOps.get(table).size() >= BATCH_SIZE) {
-            flushTable(table);
+        journalDir = dir;
+        scheduler.scheduleWithFixedDelay(this::syncJournals, JOURNAL_SYNC_MS, JOURNAL_SYNC_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * La tabla ya está creada y su esquema registrado: se ejecuta su journal del arranque anterior,
+     * si lo tiene, con las columnas comprimidas como tocan
+     */
+    public void tableRegistered(String table) {
+        if (journalDir != null && deferredReplays.containsKey(table)) {
+            bufferFor(table);
         }
     }
 
+    private record DeferredReplay(String database, Path file) {}
+
+    private void replayJournal(String database, String table, Path file) throws IOException {
+        DatabaseWriter writer = SQLiteBackend.database(database).getWriter();
+        try {
+            long committedSeq = writer.call((connection, statements) -> {
+                WriteJournal.createCommittedTable(connection);
+                return WriteJournal.committedSeq(connection, table);
+            });
+            WriteJournal.Replay replay = WriteJournal.read(file, committedSeq);
+            if (replay.ops().isEmpty()) {
+                return;
+            }
+
+            writer.call((connection, statements) -> {
+                connection.setAutoCommit(false);
+                try {
+                    executeBatched(statements, StorageMetrics.table(table), table, replay.ops());
+                    WriteJournal.markCommitted(connection, table, replay.lastSeq());
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+                return null;
+            });
+            StorageManagerAPI.LOGGER.info("Replayed {} journaled operations for table {}", replay.ops().size(), table);
+        } catch (SQLException e) {
+            // Se aparta el fichero para no pisarlo al abrir el journal nuevo de la tabla
+            Path failed = file.resolveSibling(file.getFileName() + ".failed-" + System.currentTimeMillis());
+            Files.move(file, failed);
+            StorageManagerAPI.LOGGER.error("Failed to replay write journal for table {}, kept as {}", table, failed, e);
+        }
+    }
+
+    private void syncJournals() {
+        pendingOps.forEach((table, buffer) -> {
+            WriteJournal journal = buffer.journal();
+            if (journal != null) {
+                try {
+                    buffer.compactJournal();
+                    journal.sync();
+                } catch (RuntimeException e) {
+                    StorageManagerAPI.LOGGER.error("Failed to sync write journal for table {}", table, e);
+                }
+            }
+        });
+    }
+
+    private void flushOverdue() {
+        long now = System.nanoTime();
+        StorageConfig config = StorageConfig.get();
+        pendingOps.forEach((table, buffer) -> {
+            if (buffer.ageMillis(now) >= config.table(table).maxFlushDelayMs()) {
+                try {
+                    flushTable(table);
+                } catch (RuntimeException e) {
+                    StorageManagerAPI.LOGGER.error("Scheduled flush failed for table {}", table, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Buffers de todas las tablas, para que el FlushScheduler decida cuáles vaciar
+     */
+    Map<String, PendingBuffer> buffers() {
+        return pendingOps;
+    }
+
+    /**
+     * Encola una operación de inserción para ser ejecutada más tarde.
+     * Si ya había un insert pendiente con la misma clave primaria, lo reemplaza.
+     */
+    public void queueInsert(String table, RowData data) {
+        enqueue(table, new PendingOperation(OperationType.INSERT, data));
+    }
+
     /**
-     * Encola una operación de eliminación
+     * Encola una operación de eliminación.
+     * Cancela los inserts pendientes de las filas a las que afecta.
      */
     public void queueDelete(String table, Map<String, Object> where) {
-        pendingOps.computeIfAbsent(table, k -> Collections.synchronizedList(new ArrayList<>()))
-                .add(new PendingOperation(OperationType.DELETE, where));
+        enqueue(table, new PendingOperation(OperationType.DELETE, where));
+    }
+
+    /**
+     * Encola un UPDATE: valores fijos y/o incrementos sobre las filas que cumplen el WHERE.
+     * Los incrementos sobre la misma clave se suman y salen en una sola sentencia en el flush.
+     */
+    public void queueUpdate(String table, Map<String, Object> where, Map<String, Object> set, Map<String, Object> increments) {
+        enqueue(table, updateOperation(table, where, set, increments));
+    }
+
+    static PendingOperation updateOperation(String table, Map<String, Object> where, Map<String, Object> set,
+                                            Map<String, Object> increments) {
+        // En la cola la fila se sigue identificando por la clave de antes: cambiarla solo puede ir directo a la DB
+        TableSchema schema = SchemaRegistry.get(table);
+        if (schema != null) {
+            for (String column : schema.getPrimaryKeys()) {
+                if (set.containsKey(column) || increments.containsKey(column)) {
+                    throw new IllegalArgumentException("Queued updates cannot change primary key column " + column
+                            + " of table " + table + ", use updateImmediate");
+                }
+            }
+        }
+        List<String> written = new ArrayList<>(set.keySet());
+        written.addAll(increments.keySet());
+        // Solo los incrementos crean la fila si no existe (contadores); un update normal no
+        boolean upsert = !increments.isEmpty() && SchemaRegistry.canUpsert(table, where.keySet(), written);
+        return new PendingOperation(where, set, increments, upsert);
+    }
+
+    /**
+     * Encola las escrituras de una transacción de forma que todas entren en el mismo commit:
+     * se encolan sin que pueda empezar un flush entre medias, y sus tablas quedan enlazadas
+     * hasta el siguiente flush de cualquiera de ellas, que las guarda todas juntas.
+     *
+     * Nunca se rechazan por la política de desbordamiento ni esperan sitio (ocupar el lock de
+     * transacciones esperando bloquearía el flush que hace sitio), y DROP_OLDEST no las tira después.
+     *
+     * @return un futuro que se completa cuando la transacción está en la DB, o falla si se descarta
+     * tras fallar MAX_FLUSH_ATTEMPTS flushes seguidos
+     */
+    public CompletableFuture<Void> queueBatch(WriteBatch batch) {
+        Map<String, List<PendingOperation>> byTable = new LinkedHashMap<>();
+        batch.byTable().forEach((table, ops) -> {
+            List<PendingOperation> marked = new ArrayList<>(ops.size());
+            ops.forEach(op -> marked.add(op.asTransactional()));
+            byTable.put(table, marked);
+        });
+        if (byTable.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Set<String> databases = new HashSet<>();
+        for (String table : byTable.keySet()) {
+            databases.add(SQLiteBackend.databaseFor(table).getName());
+        }
+        if (databases.size() > 1) {
+            throw new IllegalArgumentException("A transaction cannot write to tables in different databases: " + byTable.keySet());
+        }
+
+        // Los buffers se crean antes del lock: abrir un journal espera al hilo de escritura, que puede estar esperando el lock
+        byTable.keySet().forEach(this::bufferFor);
+
+        transactionLock.writeLock().lock();
+        try {
+            byTable.forEach((table, ops) -> enqueueAll(table, ops, OverflowPolicy.BLOCK, false));
+            link(byTable.keySet());
+            // Las tablas enlazadas se guardan en el mismo commit: basta con esperar a una
+            return bufferFor(byTable.keySet().iterator().next()).whenFlushed();
+        } finally {
+            transactionLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Enlaza las tablas (y las que ya estaban enlazadas con ellas) para que vayan en el mismo commit.
+     * Se llama con el lock de escritura de transactionLock.
+     */
+    private void link(Collection<String> tables) {
+        if (tables.size() < 2) {
+            return;
+        }
+        Set<String> linked = new HashSet<>(tables);
+        for (String table : tables) {
+            linked.addAll(links.getOrDefault(table, Set.of()));
+        }
+        for (String table : linked) {
+            links.put(table, linked);
+        }
+    }
+
+    /**
+     * Encola varios inserts de la misma tabla en una sola llamada
+     */
+    public void queueInsertAll(String table, Collection<RowData> rows) {
+        List<PendingOperation> ops = new ArrayList<>(rows.size());
+        for (RowData row : rows) {
+            ops.add(new PendingOperation(OperationType.INSERT, row));
+        }
+        enqueueAll(table, ops);
+    }
+
+    /**
+     * Encola varios deletes de la misma tabla en una sola llamada
+     */
+    public void queueDeleteAll(String table, Collection<Map<String, Object>> wheres) {
+        List<PendingOperation> ops = new ArrayList<>(wheres.size());
+        for (Map<String, Object> where : wheres) {
+            ops.add(new PendingOperation(OperationType.DELETE, where));
+        }
+        enqueueAll(table, ops);
+    }
+
+    private void enqueueAll(String table, List<PendingOperation> ops) {
+        enqueueAll(table, ops, overflowPolicy, mayBlock());
+    }
+
+    /**
+     * El hilo de escritura no puede esperar a que se vacíe la cola (es él quien la vacía) y el del
+     * servidor no debe: con BLOCK, en ellos una escritura que no cabe falla como con FAIL_FAST
+     */
+    private static boolean mayBlock() {
+        return !SQLiteBackend.isWriterThread() && !ServerContext.isServerThread();
+    }
+
+    private void enqueueAll(String table, List<PendingOperation> ops, OverflowPolicy policy, boolean mayBlock) {
+        long start = System.nanoTime();
+        PendingBuffer buffer = bufferFor(table);
+        RowCache rowCache = RowCache.get(table);
+
+        try {
+            for (PendingOperation op : ops) {
+                long dropped = buffer.dropped();
+                // El flush se pide en cuanto se pasa la marca alta: con BLOCK, un lote más grande
+                // que la cola se quedaría esperando a un flush que nadie ha pedido
+                if (buffer.add(op, policy, mayBlock)) {
+                    flushTableAsync(table).exceptionally(e -> {
+                        StorageManagerAPI.LOGGER.error("Early flush failed for table {}", table, e);
+                        return null;
+                    });
+                }
+                afterQueued(table, rowCache, buffer, dropped, op);
+            }
+            StorageMetrics.table(table).opsQueued.add(ops.size());
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    /**
+     * El flush nunca se hace en el hilo que encola: si la cola pasa la marca alta
+     * solo se pide al hilo de escritura que la vacíe cuanto antes
+     */
+    private void enqueue(String table, PendingOperation op) {
+        long start = System.nanoTime();
+        boolean mayBlock = mayBlock();
+
+        PendingBuffer buffer = bufferFor(table);
+        RowCache rowCache = RowCache.get(table);
+
+        try {
+            long dropped = buffer.dropped();
+            if (buffer.add(op, overflowPolicy, mayBlock)) {
+                flushTableAsync(table).exceptionally(e -> {
+                    StorageManagerAPI.LOGGER.error("Early flush failed for table {}", table, e);
+                    return null;
+                });
+            }
+            afterQueued(table, rowCache, buffer, dropped, op);
+            StorageMetrics.table(table).opsQueued.increment();
+        } finally {
+            StorageMetrics.recordCall(table, start);
+        }
+    }
+
+    /**
+     * La caché de filas y las sesiones de jugador reflejan la operación recién encolada. Si DROP_OLDEST
+     * ha tirado otra, tienen escrituras que ya no van a llegar a la DB: la caché se vacía y las sesiones se recargan.
+     * Las lecturas ya ven la operación, así que los resultados cacheados de la tabla dejan de valer.
+     */
+    private static void afterQueued(String table, RowCache rowCache, PendingBuffer buffer, long droppedBefore, PendingOperation op) {
+        // PlayerSessions.reload() junta las recargas: una ráfaga de descartes solo relee las sesiones una vez
+        QueryCache.invalidate(table);
+        if (buffer.dropped() != droppedBefore) {
+            if (rowCache != null) {
+                rowCache.clear();
+            }
+            PlayerSessions.reload(table);
+        } else {
+            if (rowCache != null) {
+                rowCache.onQueued(op);
+            }
+            PlayerSessions.onQueued(table, op);
+        }
+    }
+
+    private PendingBuffer bufferFor(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer != null ? buffer : createBuffer(table);
+    }
+
+    /**
+     * Crea la cola de la tabla. Abrir su journal (y ejecutar antes el del arranque anterior) lee el
+     * fichero y espera al hilo de escritura, así que va fuera de pendingOps.computeIfAbsent, con un
+     * lock por tabla para que solo lo haga un hilo.
+     */
+    private PendingBuffer createBuffer(String table) {
+        synchronized (creationLocks.computeIfAbsent(table, k -> new Object())) {
+            PendingBuffer buffer = pendingOps.get(table);
+            if (buffer != null) {
+                return buffer;
+            }
+            TableSchema schema = SchemaRegistry.get(table);
+            List<String> primaryKeys = schema == null ? List.of() : schema.getPrimaryKeys();
+            StorageConfig.TableSettings settings = StorageConfig.get().table(table);
+            buffer = new PendingBuffer(table, primaryKeys, settings.queueCapacity(), settings.batchSize(),
+                    settings.lowWatermark(), openJournal(table));
+            pendingOps.put(table, buffer);
+            return buffer;
+        }
+    }
+
+    /**
+     * @return el journal nuevo de la tabla, o null si están desactivados o no se ha podido abrir. En ese
+     * caso la tabla sigue funcionando sin journal hasta reiniciar, y el del arranque anterior se queda
+     * en disco sin tocar para volver a intentarlo entonces.
+     */
+    private WriteJournal openJournal(String table) {
+        Path dir = journalDir;
+        if (dir == null) {
+            return null;
+        }
+        Database database = SQLiteBackend.databaseFor(table);
+        try {
+            // Abrir el journal nuevo vacía el fichero: antes se ejecuta lo que quedó del arranque anterior,
+            // y solo se olvida cuando se ha ejecutado
+            DeferredReplay replay = deferredReplays.get(table);
+            if (replay != null) {
+                replayJournal(replay.database(), table, replay.file());
+                deferredReplays.remove(table);
+            }
+            // La secuencia sigue desde la última guardada: si empezara de 0, un replay se saltaría las nuevas
+            long committedSeq = database.getWriter().call((connection, statements) -> {
+                WriteJournal.createCommittedTable(connection);
+                return WriteJournal.committedSeq(connection, table);
+            });
+            return WriteJournal.open(table, dir.resolve(database.getName() + "." + table + WriteJournal.SUFFIX), committedSeq);
+        } catch (IOException | SQLException e) {
+            StorageManagerAPI.LOGGER.error("Failed to open write journal for table {}, its writes are not journaled until restart",
+                    table, e);
+            return null;
+        }
+    }
+
+    /**
+     * Cambia qué pasa cuando la cola de una tabla llega a su capacidad máxima
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+    }
+
+    /**
+     * @return operaciones pendientes de la tabla ahora mismo
+     */
+    public int queueDepth(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    /**
+     * @return true si la tabla tiene escrituras que todavía no están en la DB
+     */
+    public boolean hasPending(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer != null && buffer.hasPending();
+    }
+
+    /**
+     * @return true si la tabla tiene escrituras pendientes de las filas con ese valor en la columna
+     */
+    public boolean hasPendingFor(String table, String column, String value) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer != null && buffer.hasPendingFor(column, value);
+    }
+
+    /**
+     * @return operaciones de la tabla descartadas por DROP_OLDEST
+     */
+    public long droppedOperations(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer == null ? 0 : buffer.dropped();
+    }
+
+    /**
+     * @return operaciones de la tabla rechazadas por FAIL_FAST
+     */
+    public long rejectedOperations(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        return buffer == null ? 0 : buffer.rejected();
     }
 
     /**
      * Hace flush de todas las operaciones pendientes de una tabla específica
+     * (y de las tablas enlazadas con ella por una transacción)
      */
     public void flushTable(String table) {
-        List<PendingOperation> ops = pendingOps.remove(table);
-        if (ops == null || ops.isEmpty()) {
-            return;
+        flushTables(SQLiteBackend.getWriter(table), List.of(table));
+    }
+
+    /**
+     * Hace flush de varias tablas de la misma base de datos con el menor número de commits posible
+     */
+    private void flushTables(DatabaseWriter writer, List<String> tables) {
+        try {
+            writer.call((connection, statements) -> {
+                List<List<TableFlush>> units = beginFlush(tables);
+                if (!units.isEmpty()) {
+                    commitGroups(connection, statements, units);
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to flush operations for table " + String.join(", ", tables), e);
         }
+    }
 
-        synchronized (ops) {
-            try {
-                SQLiteBackend.getConnection().setAutoCommit(false);
+    /**
+     * Saca las operaciones pendientes de las tablas, añadiendo las enlazadas por transacciones.
+     * Cada unidad son tablas que tienen que ir en el mismo commit (normalmente una sola).
+     * Las operaciones siguen visibles para los snapshots hasta que termine su flush.
+     */
+    private List<List<TableFlush>> beginFlush(List<String> tables) {
+        List<List<TableFlush>> units = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        transactionLock.writeLock().lock();
+        try {
+            for (String table : tables) {
+                if (seen.contains(table)) {
+                    continue;
+                }
+
+                Set<String> unitTables = links.getOrDefault(table, Set.of(table));
+                List<TableFlush> unit = new ArrayList<>();
+                for (String member : unitTables) {
+                    seen.add(member);
+                    links.remove(member);
 
-                for (PendingOperation op : ops) {
-                    if (op.type == OperationType.INSERT) {
-                        executeInsert(table, op.data);
-                    } else if (op.type == OperationType.DELETE) {
-                        executeDelete(table, op.whereClause);
+                    PendingBuffer buffer = pendingOps.get(member);
+                    if (buffer == null) {
+                        continue;
+                    }
+                    List<PendingOperation> ops = buffer.beginFlush();
+                    if (ops.isEmpty()) {
+                        buffer.endFlush();
+                    } else {
+                        unit.add(new TableFlush(member, buffer, ops, buffer.inFlightSeq()));
                     }
                 }
+                if (!unit.isEmpty()) {
+                    units.add(unit);
+                }
+            }
+        } finally {
+            transactionLock.writeLock().unlock();
+        }
+        return units;
+    }
 
-                SQLiteBackend.getConnection().commit();
-                StorageManagerAPI.LOGGER.debug("Flushed {} operations for table {}", ops.size(), table);
+    /**
+     * Ejecuta las unidades en una misma transacción hasta llegar a maxGroupOperations o maxGroupMillis,
+     * y entonces hace commit y sigue en otra. Si un commit de varias unidades falla, se reintenta
+     * cada unidad por separado para que una tabla con problemas no se lleve por delante a las demás.
+     */
+    private void commitGroups(Connection connection, StatementCache statements, List<List<TableFlush>> units)
+            throws SQLException {
+        SQLException failure = null;
+        List<List<TableFlush>> group = new ArrayList<>();
+        int groupOps = 0;
+        long groupStart = System.nanoTime();
+
+        connection.setAutoCommit(false);
+        try {
+            for (List<TableFlush> unit : units) {
+                if (group.isEmpty()) {
+                    groupStart = System.nanoTime();
+                }
+                group.add(unit);
 
-            } catch (SQLException e) {
                 try {
-                    SQLiteBackend.getConnection().rollback();
-                } catch (SQLException ex) {
-                    StorageManagerAPI.LOGGER.error("Failed to rollback transaction", ex);
+                    for (TableFlush flush : unit) {
+                        execute(statements, connection, flush);
+                        groupOps += flush.ops.size();
+                    }
+                    if (groupOps >= maxGroupOperations || (System.nanoTime() - groupStart) / 1_000_000L >= maxGroupMillis) {
+                        commit(connection, group);
+                        finish(group, null);
+                        group.clear();
+                        groupOps = 0;
+                    }
+                } catch (SQLException e) {
+                    rollback(connection);
+                    failure = retryAlone(connection, statements, group, e);
+                    group.clear();
+                    groupOps = 0;
                 }
-                throw new RuntimeException("Failed to flush operations for table " + table, e);
-            } finally {
+            }
+
+            if (!group.isEmpty()) {
                 try {
-                    SQLiteBackend.getConnection().setAutoCommit(true);
+                    commit(connection, group);
+                    finish(group, null);
                 } catch (SQLException e) {
-                    StorageManagerAPI.LOGGER.error("Failed to restore auto-commit", e);
+                    rollback(connection);
+                    failure = retryAlone(connection, statements, group, e);
+                }
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                StorageManagerAPI.LOGGER.error("Failed to restore auto-commit", e);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return el error de la última unidad que ha fallado, o null si al final se han guardado todas
+     */
+    private SQLException retryAlone(Connection connection, StatementCache statements, List<List<TableFlush>> group,
+                                    SQLException error) {
+        if (group.size() == 1) {
+            finish(group, error);
+            return error;
+        }
+
+        SQLException failure = null;
+        for (List<TableFlush> unit : group) {
+            try {
+                for (TableFlush flush : unit) {
+                    execute(statements, connection, flush);
+                }
+                commit(connection, List.of(unit));
+                finish(List.of(unit), null);
+            } catch (SQLException e) {
+                rollback(connection);
+                finish(List.of(unit), e);
+                failure = e;
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Commit del grupo. Hasta que finish() cierra sus flushes, las lecturas que aplican incrementos
+     * pendientes saben que la DB puede tener ya operaciones que siguen en su snapshot
+     */
+    private static void commit(Connection connection, List<List<TableFlush>> group) throws SQLException {
+        for (List<TableFlush> unit : group) {
+            unit.forEach(flush -> flush.buffer.beginCommit());
+        }
+        connection.commit();
+    }
+
+    private void execute(StatementCache statements, Connection connection, TableFlush flush) throws SQLException {
+        executeBatched(statements, flush.metrics, flush.table, flush.ops);
+        if (flush.buffer.journal() != null) {
+            WriteJournal.markCommitted(connection, flush.table, flush.seq);
+        }
+    }
+
+    /**
+     * Cierra el flush de las tablas: commiteado si error es null, descartado por el rollback si no.
+     *
+     * Tras un rollback las operaciones vuelven a la cola (y siguen en el journal) para el siguiente
+     * flush, salvo que la unidad ya lleve MAX_FLUSH_ATTEMPTS fallos seguidos: entonces se descarta
+     * entera, para que una transacción no quede guardada a medias.
+     */
+    private void finish(List<List<TableFlush>> group, SQLException error) {
+        for (List<TableFlush> unit : group) {
+            boolean retry = false;
+            if (error != null) {
+                retry = true;
+                for (TableFlush flush : unit) {
+                    retry &= flush.buffer.failedFlushes() + 1 < MAX_FLUSH_ATTEMPTS;
+                }
+            }
+
+            for (TableFlush flush : unit) {
+                if (error == null) {
+                    flush.event.committed = true;
+                    flush.metrics.opsFlushed.add(flush.ops.size());
+                    ChangeFeed.publish(flush.table, flush.ops);
+                    StorageManagerAPI.LOGGER.debug("Flushed {} operations for table {}", flush.ops.size(), flush.table);
+                } else if (retry) {
+                    flush.metrics.rollbacks.increment();
+                    // Siguen pendientes: la caché de filas y las sesiones ya las reflejan y siguen valiendo
+                    StorageManagerAPI.LOGGER.error("Failed to flush {} operations for table {}, they will be retried",
+                            flush.ops.size(), flush.table, error);
+                } else {
+                    flush.metrics.rollbacks.increment();
+                    // Las operaciones del flush se pierden: la caché de filas ya las reflejaba
+                    RowCache.clear(flush.table);
+                    PlayerSessions.reload(flush.table);
+                    StorageManagerAPI.LOGGER.error("Failed to flush {} operations for table {} after {} attempts, discarding them",
+                            flush.ops.size(), flush.table, MAX_FLUSH_ATTEMPTS, error);
+                }
+
+                boolean full = false;
+                if (retry) {
+                    full = flush.buffer.requeue();
+                } else {
+                    // Commiteadas o descartadas: ya no hay que repetirlas al arrancar
+                    if (flush.buffer.journal() != null) {
+                        flush.buffer.journal().truncate(flush.seq);
+                    }
+                    if (error == null) {
+                        flush.buffer.endFlush();
+                    } else {
+                        flush.buffer.abandonFlush(error);
+                    }
+                }
+                flush.buffer.endCommit();
+                if (error != null) {
+                    QueryCache.invalidate(flush.table);
+                }
+                if (full) {
+                    // Las devueltas más las encoladas mientras tanto pasan de la marca alta: se pide
+                    // otro flush como al encolar, sin esperar al intervalo
+                    String table = flush.table;
+                    flushTableAsync(table).exceptionally(e -> {
+                        StorageManagerAPI.LOGGER.error("Early flush failed for table {}", table, e);
+                        return null;
+                    });
+                }
+                flush.metrics.flushTime.record(System.nanoTime() - flush.start);
+                flush.event.commit();
+            }
+
+            if (retry && unit.size() > 1) {
+                // beginFlush() quitó el enlace: la transacción tiene que volver a ir en un solo commit
+                List<String> tables = new ArrayList<>(unit.size());
+                unit.forEach(flush -> tables.add(flush.table));
+                transactionLock.writeLock().lock();
+                try {
+                    link(tables);
+                } finally {
+                    transactionLock.writeLock().unlock();
                 }
             }
         }
     }
 
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException ex) {
+            StorageManagerAPI.LOGGER.error("Failed to rollback transaction", ex);
+        }
+    }
+
+    /**
+     * Cambia el tamaño máximo (en operaciones) y la duración máxima de cada commit de un flush
+     */
+    public void setGroupCommitLimits(int maxOperations, long maxMillis) {
+        if (maxOperations <= 0 || maxMillis <= 0) {
+            throw new IllegalArgumentException("Group commit limits must be > 0");
+        }
+        this.maxGroupOperations = maxOperations;
+        this.maxGroupMillis = maxMillis;
+    }
+
+    /**
+     * Aplica una configuración recargada: límites de los commits y tamaño de las colas que ya existen
+     */
+    public void configure(StorageConfig config) {
+        setGroupCommitLimits(config.getGroupMaxOperations(), config.getGroupMaxMillis());
+        pendingOps.forEach((table, buffer) -> {
+            StorageConfig.TableSettings settings = config.table(table);
+            buffer.resize(settings.queueCapacity(), settings.batchSize(), settings.lowWatermark());
+        });
+    }
+
+    /**
+     * Encola el flush de la tabla en el hilo de escritura sin esperar a que termine
+     */
+    public CompletableFuture<Void> flushTableAsync(String table) {
+        return SQLiteBackend.getWriter(table).submit((connection, statements) -> {
+            flushTable(table);
+            return null;
+        });
+    }
+
+    /**
+     * Copia las operaciones de la tabla que todavía no están commiteadas (en vuelo + pendientes),
+     * para que las lecturas puedan aplicarlas encima de lo que hay en la DB
+     */
+    public PendingSnapshot snapshot(String table) {
+        PendingBuffer buffer = pendingOps.get(table);
+        if (buffer == null) {
+            return new PendingSnapshot(table, List.of(), null, 0);
+        }
+        return readAtomically(() -> {
+            // La marca se lee antes que las operaciones: si cambia después, puede que ya estén en la DB
+            long stamp = buffer.commitStamp();
+            return new PendingSnapshot(table, buffer.snapshot(), buffer, stamp);
+        });
+    }
+
     /**
-     * Hace flush de todas las tablas
+     * Ejecuta una lectura en memoria (snapshot, caché de filas, sesiones) sin que se pueda encolar
+     * una transacción entre medias: ve todas sus escrituras o ninguna. No debe hacer I/O.
+     */
+    public <T> T readAtomically(Supplier<T> read) {
+        transactionLock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            transactionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hace flush de todas las tablas. Las tablas de cada base de datos se guardan juntas
+     * (un commit por grupo, no uno por tabla), y cada base de datos en su hilo de escritura,
+     * en paralelo con las demás.
      */
     public void flushAll() {
-        Set<String> tables = new HashSet<>(pendingOps.keySet());
+        Map<DatabaseWriter, List<String>> tables = pendingTablesByWriter();
         if (tables.isEmpty()) {
             return;
         }
 
-        StorageManagerAPI.LOGGER.debug("Flushing {} tables...", tables.size());
-        for (String table : tables) {
-            flushTable(table);
+        StorageManagerAPI.LOGGER.debug("Flushing {} databases...", tables.size());
+        if (SQLiteBackend.isWriterThread()) {
+            // Desde un hilo de escritura no se puede esperar a su propia cola
+            tables.forEach(this::flushTables);
+            return;
+        }
+
+        try {
+            flushAllAsync(tables).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Failed to flush tables", e.getCause());
         }
     }
 
+    /**
+     * Encola el flush de todas las tablas en sus hilos de escritura sin esperar a que termine
+     */
+    public CompletableFuture<Void> flushAllAsync() {
+        return flushAllAsync(pendingTablesByWriter());
+    }
+
+    private CompletableFuture<Void> flushAllAsync(Map<DatabaseWriter, List<String>> tables) {
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        tables.forEach((writer, names) -> flushes.add(writer.submit((connection, statements) -> {
+            flushTables(writer, names);
+            return null;
+        })));
+        return CompletableFuture.allOf(flushes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private Map<DatabaseWriter, List<String>> pendingTablesByWriter() {
+        Map<DatabaseWriter, List<String>> tables = new LinkedHashMap<>();
+        for (String table : pendingTables()) {
+            tables.computeIfAbsent(SQLiteBackend.getWriter(table), k -> new ArrayList<>()).add(table);
+        }
+        return tables;
+    }
+
+    private List<String> pendingTables() {
+        List<String> tables = new ArrayList<>();
+        pendingOps.forEach((table, buffer) -> {
+            if (buffer.size() > 0) {
+                tables.add(table);
+            }
+        });
+        return tables;
+    }
+
     /**
      * Detiene el scheduler y hace flush final
      */
@@ -142,67 +937,98 @@ public final class WriteCache {
 
         // Flush final de todo lo pendiente por si acaso
         flushAll();
+        pendingOps.values().forEach(buffer -> {
+            if (buffer.journal() != null) {
+                buffer.journal().close();
+            }
+        });
         StorageManagerAPI.LOGGER.info("WriteCache shutdown complete");
     }
 
-    private void executeInsert(String table, RowData data) throws SQLException {
-        StringJoiner columns = new StringJoiner(", ");
-        StringJoiner placeholders = new StringJoiner(", ");
+    private static void executeBatch(PreparedStatement batch, TableMetrics metrics) throws SQLException {
+        long start = System.nanoTime();
+        batch.executeBatch();
+        metrics.statementTime.record(System.nanoTime() - start);
+    }
 
-        data.values().forEach((k, v) -> {
-            columns.add(k);
-            placeholders.add("?");
-        });
+    /**
+     * Ejecuta las operaciones en orden, agrupando las consecutivas con la misma
+     * forma (operación + columnas) en un único executeBatch sobre la sentencia cacheada
+     */
+    @SuppressWarnings("unchecked")
+    private void executeBatched(StatementCache cache, TableMetrics metrics, String table, List<PendingOperation> ops)
+            throws SQLException {
+        // Las columnas comprimidas se comprimen aquí, en el hilo de escritura
+        TableSchema schema = SchemaRegistry.get(table);
+        PreparedStatement batch = null;
+        OperationType batchType = null;
+        Object batchShape = null;
 
-        String sql = "INSERT OR REPLACE INTO " + table +
-                " (" + columns + ") VALUES (" + placeholders + ")";
+        try {
+            for (PendingOperation op : ops) {
+                Object shape = switch (op.type) {
+                    case INSERT -> StatementCache.shapeOf(op.data);
+                    case DELETE -> StatementCache.shapeOf(op.whereClause.keySet());
+                    case UPDATE -> StatementCache.UpdateShape.of(op.whereClause, op.set, op.increments, op.upsert);
+                };
 
-        try (PreparedStatement stmt = SQLiteBackend.getConnection().prepareStatement(sql)) {
-            int index = 1;
-            for (Object value : data.values().values()) {
-                stmt.setObject(index++, value);
-            }
-            stmt.executeUpdate();
-        }
-    }
+                if (batch == null || op.type != batchType || !shape.equals(batchShape)) {
+                    if (batch != null) {
+                        executeBatch(batch, metrics);
+                    }
 
-    private void executeDelete(String table, Map<String, Object> where) throws SQLException {
-        StringJoiner whereClause = new StringJoiner(" AND ");
-        where.keySet().forEach(k -> whereClause.add(k + " = ?"));
+                    batch = switch (op.type) {
+                        case INSERT -> cache.insert(table, (List<String>) shape);
+                        case DELETE -> cache.delete(table, (List<String>) shape);
+                        case UPDATE -> cache.update(table, (StatementCache.UpdateShape) shape);
+                    };
+                    batchType = op.type;
+                    batchShape = shape;
+                }
 
-        String sql = "DELETE FROM " + table + " WHERE " + whereClause;
+                switch (op.type) {
+                    case INSERT -> StatementCache.bind(batch, (List<String>) shape, ColumnCodec.encode(schema, op.data));
+                    case DELETE -> StatementCache.bind(batch, (List<String>) shape, op.whereClause);
+                    case UPDATE -> StatementCache.bindUpdate(batch, (StatementCache.UpdateShape) shape,
+                            op.whereClause, ColumnCodec.encode(schema, op.set), op.increments);
+                }
+                batch.addBatch();
+            }
 
-        try (PreparedStatement stmt = SQLiteBackend.getConnection().prepareStatement(sql)) {
-            int index = 1;
-            for (Object value : where.values()) {
-                stmt.setObject(index++, value);
+            if (batch != null) {
+                executeBatch(batch, metrics);
+            }
+        } catch (SQLException e) {
+            // La sentencia está cacheada, no puede quedarse con parámetros del batch fallido
+            if (batch != null) {
+                batch.clearBatch();
             }
-            stmt.executeUpdate();
+            throw e;
         }
     }
 
     /**
-     * Operación pendiente en la caché
+     * Flush en curso de una tabla
      */
-    private static class PendingOperation {
-        final OperationType type;
-        final RowData data;
-        final Map<String, Object> whereClause;
+    private static final class TableFlush {
+        final String table;
+        final PendingBuffer buffer;
+        final List<PendingOperation> ops;
+        // Secuencia del journal hasta la que llegan las operaciones
+        final long seq;
+        final TableMetrics metrics;
+        final FlushEvent event = new FlushEvent();
+        final long start = System.nanoTime();
 
-        PendingOperation(OperationType type, RowData data) {
-            this.type = type;
-            this.data = data;
-            this.whereClause = null;
+        TableFlush(String table, PendingBuffer buffer, List<PendingOperation> ops, long seq) {
+            this.table = table;
+            this.buffer = buffer;
+            this.ops = ops;
+            this.seq = seq;
+            this.metrics = StorageMetrics.table(table);
+            event.table = table;
+            event.operations = ops.size();
+            event.begin();
         }
-
-        PendingOperation(OperationType type, Map<String, Object> whereClause) {
-            this.type = type;
-            this.data = null;
-            this.whereClause = whereClause;
-        }
-    }
-
-    private enum OperationType {
-        INSERT, DELETE
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,392 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.data.RowData;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Journal en disco de las operaciones encoladas de una tabla, para no perderlas si el proceso
+ * muere antes del flush.
+ *
+ * Cada operación se añade al final de un fichero mapeado en memoria (journal/&lt;tabla&gt;.journal)
+ * al encolarse, con un número de secuencia creciente. Al hacer flush se guarda en la misma
+ * transacción la última secuencia escrita, y después se quitan del fichero las operaciones ya
+ * guardadas. Al arrancar se vuelven a ejecutar las que tengan una secuencia mayor.
+ *
+ * Lo escrito en el mapeo sobrevive a que se mate la JVM (está en la caché de páginas del sistema);
+ * sync() lo baja al disco para cubrir también un corte de luz, y se llama de forma periódica
+ * para todas las escrituras de ese intervalo a la vez.
+ *
+ * Registro: [longitud int][secuencia long][tipo byte][datos][crc32 int]. Un registro con longitud 0
+ * o con el crc mal marca el final (el resto del fichero está a ceros o es una escritura a medias).
+ */
+final class WriteJournal {
+
+    static final String SUFFIX = ".journal";
+    static final String COMMITTED_TABLE = "storagemanager_journal";
+
+    private static final int INITIAL_SIZE = 1 << 20;
+    // longitud + secuencia + tipo + crc: el registro más pequeño posible
+    private static final int MIN_RECORD_SIZE = 4 + 8 + 1 + 4;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte TEXT = 3;
+    private static final byte BLOB = 4;
+
+    private final String table;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long lastSeq;
+    private boolean dirty;
+
+    // Se reutiliza entre registros; solo se usa con el lock del journal
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+    private WriteJournal(String table, long lastSeq) {
+        this.table = table;
+        this.lastSeq = lastSeq;
+    }
+
+    /**
+     * Abre el journal de la tabla vacío; las secuencias siguen a partir de lastSeq
+     */
+    static WriteJournal open(String table, Path path, long lastSeq) throws IOException {
+        WriteJournal journal = new WriteJournal(table, lastSeq);
+        journal.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal.channel.truncate(0);
+        journal.map = journal.channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_SIZE);
+        return journal;
+    }
+
+    /**
+     * Añade la operación al final del journal
+     */
+    synchronized void append(PendingOperation op) {
+        scratch.clear();
+        scratch.put(typeOf(op));
+        switch (op.type) {
+            case INSERT -> putMap(op.data.values());
+            case DELETE -> putMap(op.whereClause);
+            case UPDATE -> {
+                scratch = ensure(scratch, 1);
+                scratch.put(op.upsert ? (byte) 1 : (byte) 0);
+                putMap(op.whereClause);
+                putMap(op.set);
+                putMap(op.increments);
+            }
+        }
+        scratch.flip();
+
+        // scratch ya lleva el tipo
+        int length = 4 + 8 + scratch.remaining() + 4;
+        try {
+            // Siempre queda sitio para un int a cero detrás del último registro
+            if (map.remaining() < length + 4) {
+                grow(length + 4);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to grow write journal for table " + table, e);
+        }
+
+        long seq = ++lastSeq;
+        CRC32 crc = new CRC32();
+        crc.update(scratch.duplicate());
+
+        int start = map.position();
+        // La longitud se escribe la última: hasta entonces el registro no existe para replay()
+        map.position(start + 4);
+        map.putLong(seq);
+        map.put(scratch);
+        map.putInt((int) crc.getValue());
+        map.putInt(start, length);
+        dirty = true;
+    }
+
+    /**
+     * @return secuencia de la última operación añadida
+     */
+    synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * Quita del journal las operaciones hasta seq (incluida), que ya están en la DB o descartadas
+     */
+    synchronized void truncate(long seq) {
+        int end = map.position();
+        int offset = 0;
+        while (offset < end) {
+            int length = map.getInt(offset);
+            if (map.getLong(offset + 4) > seq) {
+                break;
+            }
+            offset += length;
+        }
+        if (offset == 0) {
+            return;
+        }
+
+        // Lo que queda (lo encolado durante el flush) se mueve al principio y el resto se pone a ceros
+        int remaining = end - offset;
+        ByteBuffer tail = map.duplicate();
+        tail.position(offset).limit(end);
+        ByteBuffer copy = ByteBuffer.allocate(remaining);
+        copy.put(tail).flip();
+        map.position(0);
+        map.put(copy);
+        for (int i = remaining; i < end + 4 && i < map.capacity(); i++) {
+            map.put(i, (byte) 0);
+        }
+        map.position(remaining);
+        dirty = true;
+    }
+
+    /**
+     * Sustituye las operaciones con secuencia mayor que keepSeq por ops, con secuencias nuevas.
+     * Sirve para que el fichero deje de tener las operaciones que DROP_OLDEST ha tirado de la cola.
+     */
+    synchronized void rewrite(long keepSeq, Iterable<PendingOperation> ops) {
+        int end = map.position();
+        int offset = 0;
+        while (offset < end) {
+            int length = map.getInt(offset);
+            if (map.getLong(offset + 4) > keepSeq) {
+                break;
+            }
+            offset += length;
+        }
+
+        for (int i = offset; i < end + 4 && i < map.capacity(); i++) {
+            map.put(i, (byte) 0);
+        }
+        map.position(offset);
+        dirty = true;
+        for (PendingOperation op : ops) {
+            append(op);
+        }
+    }
+
+    /**
+     * Baja al disco lo escrito desde la última llamada
+     */
+    synchronized void sync() {
+        if (dirty) {
+            map.force();
+            dirty = false;
+        }
+    }
+
+    synchronized void close() {
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            StorageManagerAPI.LOGGER.error("Failed to close write journal for table {}", table, e);
+        }
+    }
+
+    private void grow(int needed) throws IOException {
+        int position = map.position();
+        long size = Math.max((long) map.capacity() * 2, position + (long) needed);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Write journal for table " + table + " is too large");
+        }
+        // Sin force(): esto va en el hilo que encola. El mapeo nuevo es del mismo fichero (mismas
+        // páginas), así que el siguiente sync() baja también lo escrito con el anterior
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        map.position(position);
+    }
+
+    private static byte typeOf(PendingOperation op) {
+        return (byte) op.type.ordinal();
+    }
+
+    private void putMap(Map<String, Object> values) {
+        scratch = ensure(scratch, 2);
+        scratch.putShort((short) values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            putBytes(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            putValue(entry.getValue());
+        }
+    }
+
+    private void putValue(Object value) {
+        Object normalized = Values.normalize(value);
+        if (normalized == null) {
+            scratch = ensure(scratch, 1);
+            scratch.put(NULL);
+        } else if (normalized instanceof Long l) {
+            scratch = ensure(scratch, 9);
+            scratch.put(LONG).putLong(l);
+        } else if (normalized instanceof Double d) {
+            scratch = ensure(scratch, 9);
+            scratch.put(DOUBLE).putDouble(d);
+        } else if (normalized instanceof ByteBuffer bytes) {
+            scratch = ensure(scratch, 1);
+            scratch.put(BLOB);
+            byte[] data = new byte[bytes.remaining()];
+            bytes.duplicate().get(data);
+            putBytes(data);
+        } else {
+            scratch = ensure(scratch, 1);
+            scratch.put(TEXT);
+            putBytes(normalized.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void putBytes(byte[] data) {
+        scratch = ensure(scratch, 4 + data.length);
+        scratch.putInt(data.length);
+        scratch.put(data);
+    }
+
+    private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Lee las operaciones del fichero con secuencia mayor que committedSeq, parando en el
+     * primer registro incompleto o dañado
+     */
+    static Replay read(Path path, long committedSeq) throws IOException {
+        List<PendingOperation> ops = new ArrayList<>();
+        long lastSeq = committedSeq;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (file.remaining() >= MIN_RECORD_SIZE) {
+                int start = file.position();
+                int length = file.getInt(start);
+                if (length < MIN_RECORD_SIZE || length > file.remaining()) {
+                    break;
+                }
+
+                ByteBuffer body = file.duplicate();
+                body.position(start + 12).limit(start + length - 4);
+                CRC32 crc = new CRC32();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != file.getInt(start + length - 4)) {
+                    break;
+                }
+
+                long seq = file.getLong(start + 4);
+                file.position(start + length);
+                if (seq <= committedSeq) {
+                    continue;
+                }
+                try {
+                    ops.add(decode(body));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    break;
+                }
+                lastSeq = seq;
+            }
+        }
+        return new Replay(ops, lastSeq);
+    }
+
+    private static PendingOperation decode(ByteBuffer body) {
+        OperationType type = OperationType.values()[body.get()];
+        return switch (type) {
+            case INSERT -> {
+                RowData row = new RowData();
+                getMap(body).forEach(row::set);
+                yield new PendingOperation(OperationType.INSERT, row);
+            }
+            case DELETE -> new PendingOperation(OperationType.DELETE, getMap(body));
+            case UPDATE -> {
+                boolean upsert = body.get() == 1;
+                yield new PendingOperation(getMap(body), getMap(body), getMap(body), upsert);
+            }
+        };
+    }
+
+    private static Map<String, Object> getMap(ByteBuffer body) {
+        int size = body.getShort() & 0xFFFF;
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String column = new String(getBytes(body), StandardCharsets.UTF_8);
+            byte tag = body.get();
+            Object value = switch (tag) {
+                case NULL -> null;
+                case LONG -> body.getLong();
+                case DOUBLE -> body.getDouble();
+                case TEXT -> new String(getBytes(body), StandardCharsets.UTF_8);
+                case BLOB -> getBytes(body);
+                default -> throw new IllegalArgumentException("Unknown journal value tag " + tag);
+            };
+            values.put(column, value);
+        }
+        return values;
+    }
+
+    private static byte[] getBytes(ByteBuffer body) {
+        byte[] data = new byte[body.getInt()];
+        body.get(data);
+        return data;
+    }
+
+    /**
+     * Crea (si no existe) la tabla con la última secuencia guardada de cada journal
+     */
+    static void createCommittedTable(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + COMMITTED_TABLE + " (table_name TEXT PRIMARY KEY, seq INTEGER NOT NULL);");
+        }
+    }
+
+    /**
+     * @return última secuencia guardada en la DB para la tabla, 0 si no hay ninguna
+     */
+    static long committedSeq(Connection connection, String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT seq FROM " + COMMITTED_TABLE + " WHERE table_name = ?;")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Guarda la última secuencia escrita; va dentro de la transacción del flush
+     */
+    static void markCommitted(Connection connection, String table, long seq) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT OR REPLACE INTO " + COMMITTED_TABLE + " (table_name, seq) VALUES (?, ?);")) {
+            stmt.setString(1, table);
+            stmt.setLong(2, seq);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Operaciones pendientes de un journal y la última secuencia leída
+     */
+    record Replay(List<PendingOperation> ops, long lastSeq) {}
+}
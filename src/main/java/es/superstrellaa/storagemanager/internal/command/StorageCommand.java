@@ -0,0 +1,108 @@
+package es.superstrellaa.storagemanager.internal.command;
+
+import com.mojang.brigadier.arguments.StringArgumentType;
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.api.metrics.LatencyStats;
+import es.superstrellaa.storagemanager.api.metrics.MaintenanceStats;
+import es.superstrellaa.storagemanager.api.metrics.StorageStats;
+import es.superstrellaa.storagemanager.api.metrics.TableStats;
+import es.superstrellaa.storagemanager.internal.config.ConfigManager;
+import es.superstrellaa.storagemanager.internal.config.StorageConfig;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * /storagemanager stats [tabla] y /storagemanager reload
+ */
+@ApiStatus.Internal
+public final class StorageCommand {
+
+    public static void register() {
+        CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> dispatcher.register(
+                CommandManager.literal("storagemanager")
+                        .requires(source -> source.hasPermissionLevel(2))
+                        .then(CommandManager.literal("stats")
+                                .executes(ctx -> showStats(ctx.getSource(), null))
+                                .then(CommandManager.argument("table", StringArgumentType.word())
+                                        .executes(ctx -> showStats(ctx.getSource(), StringArgumentType.getString(ctx, "table")))))
+                        .then(CommandManager.literal("reload")
+                                .executes(ctx -> reload(ctx.getSource())))
+        ));
+    }
+
+    private static int showStats(ServerCommandSource source, String table) {
+        StorageStats stats = StorageMetrics.snapshot();
+
+        if (table != null) {
+            TableStats tableStats = stats.tables().get(table);
+            if (tableStats == null) {
+                source.sendError(Text.literal("No stats for table " + table));
+                return 0;
+            }
+            sendTable(source, tableStats);
+            return 1;
+        }
+
+        source.sendFeedback(() -> Text.literal(String.format(Locale.ROOT,
+                "StorageManager: %d tables, mean tick %.2f ms", stats.tables().size(), stats.meanTickMillis())), false);
+        sendMaintenance(source, stats.maintenance());
+        stats.tables().values().forEach(tableStats -> sendTable(source, tableStats));
+        return stats.tables().size();
+    }
+
+    private static int reload(ServerCommandSource source) {
+        StorageConfig config;
+        try {
+            config = ConfigManager.reload();
+        } catch (IOException | IllegalArgumentException e) {
+            StorageManagerAPI.LOGGER.error("Failed to reload storage config", e);
+            source.sendError(Text.literal("Failed to reload " + StorageConfig.FILE_NAME + ": " + e.getMessage()));
+            return 0;
+        }
+
+        source.sendFeedback(() -> Text.literal("Reloaded " + StorageConfig.FILE_NAME
+                + " (preset " + config.getPreset().id() + ")"), true);
+        return 1;
+    }
+
+    private static void sendTable(ServerCommandSource source, TableStats stats) {
+        String message = String.format(Locale.ROOT,
+                "%s: queue=%d queued=%d flushed=%d dropped=%d rejected=%d rollbacks=%d rows=%d scans=%d%n" +
+                        "  row cache hits=%d misses=%d evictions=%d%n" +
+                        "  query cache hits=%d misses=%d (%.0f%% hit rate) evictions=%d%n" +
+                        "  compression in=%d out=%d bytes (%.0f%% of original)%n" +
+                        "  flush %s%n  stmt %s%n  select %s%n  server thread %s",
+                stats.table(), stats.queueDepth(), stats.opsQueued(), stats.opsFlushed(),
+                stats.opsDropped(), stats.opsRejected(), stats.rollbacks(), stats.rowsReturned(), stats.fullScans(),
+                stats.rowCacheHits(), stats.rowCacheMisses(), stats.rowCacheEvictions(),
+                stats.queryCacheHits(), stats.queryCacheMisses(), stats.queryCacheHitRate() * 100, stats.queryCacheEvictions(),
+                stats.compressionInputBytes(), stats.compressionOutputBytes(), stats.compressionRatio() * 100,
+                format(stats.flushTime()), format(stats.statementTime()),
+                format(stats.selectTime()), format(stats.serverThreadTime()));
+
+        source.sendFeedback(() -> Text.literal(message), false);
+    }
+
+    private static void sendMaintenance(ServerCommandSource source, MaintenanceStats stats) {
+        String message = String.format(Locale.ROOT,
+                "maintenance: checkpointed=%d vacuumed=%d pages%n  checkpoint %s%n  optimize %s%n  vacuum %s",
+                stats.checkpointedPages(), stats.vacuumedPages(),
+                format(stats.checkpointTime()), format(stats.optimizeTime()), format(stats.vacuumTime()));
+
+        source.sendFeedback(() -> Text.literal(message), false);
+    }
+
+    private static String format(LatencyStats latency) {
+        return String.format(Locale.ROOT, "n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                latency.count(), latency.meanMillis(), latency.p50Millis(), latency.p99Millis(), latency.maxMillis());
+    }
+
+    private StorageCommand() {}
+}
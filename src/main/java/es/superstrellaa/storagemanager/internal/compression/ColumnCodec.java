@@ -0,0 +1,410 @@
+package es.superstrellaa.storagemanager.internal.compression;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.Column;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.Compression;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.metrics.StorageMetrics;
+import es.superstrellaa.storagemanager.internal.metrics.TableMetrics;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Convierte los valores de las columnas comprimidas al formato guardado en la DB y de vuelta.
+ *
+ * Un valor comprimido es un BLOB con una cabecera (MAGIC, compresión y tamaño original en un
+ * varint) seguida de los datos. Los valores pequeños y los que no se reducen se guardan tal cual,
+ * como String o byte[], así que las filas escritas antes de activar la compresión se siguen
+ * leyendo igual. Un TEXT válido nunca empieza por MAGIC (0xC5 no puede ir seguido de 'S' en
+ * UTF-8); un BLOB que empiece así se guarda con la cabecera de STORED para no confundirlo.
+ */
+@ApiStatus.Internal
+public final class ColumnCodec {
+
+    private static final byte[] MAGIC = {(byte) 0xC5, 'S', 'M'};
+    private static final byte STORED = 'S';
+    private static final byte DEFLATE = 'D';
+    private static final byte LZ4 = 'L';
+    private static final int MAX_HEADER = MAGIC.length + 1 + Varint.MAX_BYTES;
+
+    // Por debajo de esto la cabecera y el diccionario vacío se comen lo que se gana
+    private static final int MIN_LENGTH = 64;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    /**
+     * Valores de las columnas comprimidas de la fila tal y como se guardan.
+     * Devuelve la misma fila si no hay nada que comprimir; si no, una copia con las mismas columnas.
+     */
+    public static RowData encode(TableSchema schema, RowData row) {
+        if (schema == null || !schema.hasCompressedColumns()) {
+            return row;
+        }
+
+        TableMetrics metrics = StorageMetrics.table(schema.getName());
+        RowData encoded = null;
+        for (Column column : schema.getColumns()) {
+            if (!column.isCompressed() || !row.has(column.name())) {
+                continue;
+            }
+            Object value = row.get(column.name());
+            Object stored = encode(value, column.compression(), metrics);
+            if (stored != value) {
+                if (encoded == null) {
+                    encoded = sameShapeCopy(row);
+                }
+                encoded.set(column.name(), stored);
+            }
+        }
+        return encoded == null ? row : encoded;
+    }
+
+    /**
+     * Como encode(schema, row), para los valores de un UPDATE
+     */
+    public static Map<String, Object> encode(TableSchema schema, Map<String, Object> values) {
+        if (schema == null || !schema.hasCompressedColumns()) {
+            return values;
+        }
+
+        TableMetrics metrics = StorageMetrics.table(schema.getName());
+        Map<String, Object> encoded = null;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Compression compression = schema.getCompression(entry.getKey());
+            if (compression == Compression.NONE) {
+                continue;
+            }
+            Object stored = encode(entry.getValue(), compression, metrics);
+            if (stored != entry.getValue()) {
+                if (encoded == null) {
+                    encoded = new LinkedHashMap<>(values);
+                }
+                encoded.put(entry.getKey(), stored);
+            }
+        }
+        return encoded == null ? values : encoded;
+    }
+
+    /**
+     * Copia con exactamente las mismas columnas presentes (RowData.copy rellena las que faltan con null)
+     */
+    private static RowData sameShapeCopy(RowData row) {
+        if (row.layout() == null) {
+            RowData copy = new RowData();
+            copy.values().putAll(row.values());
+            return copy;
+        }
+
+        RowData copy = new RowData(row.layout());
+        long mask = row.presentMask();
+        for (int slot = 0; mask != 0; slot++, mask >>>= 1) {
+            if ((mask & 1) == 0) {
+                continue;
+            }
+            if (row.isLong(slot)) {
+                copy.setLong(slot, row.getLong(slot));
+            } else if (row.isDouble(slot)) {
+                copy.setDouble(slot, row.getDouble(slot));
+            } else {
+                copy.set(slot, row.get(slot));
+            }
+        }
+        if (row.hasExtraColumns()) {
+            // Las que no están en el layout van después de todas las suyas en columns()
+            for (String column : row.columns()) {
+                if (!copy.has(column)) {
+                    copy.set(column, row.get(column));
+                }
+            }
+        }
+        return copy;
+    }
+
+    private static Object encode(Object value, Compression compression, TableMetrics metrics) {
+        if (value instanceof Encoded encoded) {
+            return encoded.bytes();
+        }
+
+        byte[] raw;
+        if (value instanceof byte[] bytes) {
+            raw = bytes;
+        } else if (value instanceof String text) {
+            raw = text.getBytes(StandardCharsets.UTF_8);
+        } else {
+            return value;
+        }
+
+        byte[] compressed = raw.length < MIN_LENGTH ? null : switch (compression) {
+            case DEFLATE -> deflate(raw);
+            case LZ4 -> lz4(raw);
+            case NONE -> null;
+        };
+        Object stored = compressed != null ? compressed : hasMagic(raw) ? stored(raw) : value;
+
+        metrics.compressionInputBytes.add(raw.length);
+        metrics.compressionOutputBytes.add(stored instanceof byte[] bytes ? bytes.length : raw.length);
+        return stored;
+    }
+
+    /**
+     * @return el valor con cabecera, o null si no ocupa menos que el original
+     */
+    private static byte[] deflate(byte[] raw) {
+        byte[] out = new byte[raw.length];
+        int pos = writeHeader(out, DEFLATE, raw.length);
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (pos == out.length) {
+                return null;
+            }
+            pos += deflater.deflate(out, pos, out.length - pos);
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    private static byte[] lz4(byte[] raw) {
+        byte[] out = new byte[raw.length];
+        int end = Lz4.compressChunks(raw, out, writeHeader(out, LZ4, raw.length));
+        return end < 0 ? null : Arrays.copyOf(out, end);
+    }
+
+    private static byte[] stored(byte[] raw) {
+        byte[] out = new byte[MAX_HEADER + raw.length];
+        int pos = writeHeader(out, STORED, raw.length);
+        System.arraycopy(raw, 0, out, pos, raw.length);
+        return Arrays.copyOf(out, pos + raw.length);
+    }
+
+    private static int writeHeader(byte[] out, byte codec, int length) {
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        out[MAGIC.length] = codec;
+        return Varint.write(out, MAGIC.length + 1, length);
+    }
+
+    private static boolean hasMagic(byte[] bytes) {
+        return bytes.length > MAGIC.length + 1
+                && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1] && bytes[2] == MAGIC[2];
+    }
+
+    /**
+     * Valor leído de la DB (getObject) tal y como lo ve el que usa la API
+     */
+    public static Object decode(Object stored, ColumnType type) throws SQLException {
+        if (!(stored instanceof byte[] bytes) || !hasMagic(bytes)) {
+            return stored;
+        }
+
+        byte[] raw;
+        try {
+            raw = decompress(bytes);
+        } catch (IOException e) {
+            throw new SQLException("Corrupted compressed value", e);
+        }
+        return type == ColumnType.TEXT ? new String(raw, StandardCharsets.UTF_8) : raw;
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException {
+        int length = Varint.read(bytes, MAGIC.length + 1, bytes.length);
+        int pos = MAGIC.length + 1 + Varint.size(length);
+        byte[] raw = new byte[length];
+
+        switch (bytes[MAGIC.length]) {
+            case STORED -> {
+                if (bytes.length - pos != length) {
+                    throw new IOException("Stored value has " + (bytes.length - pos) + " bytes, expected " + length);
+                }
+                System.arraycopy(bytes, pos, raw, 0, length);
+            }
+            case DEFLATE -> inflate(bytes, pos, raw);
+            case LZ4 -> Lz4.decompressChunks(bytes, pos, bytes.length, raw);
+            default -> throw new IOException("Unknown compression " + (char) bytes[MAGIC.length]);
+        }
+        return raw;
+    }
+
+    private static void inflate(byte[] bytes, int pos, byte[] raw) throws IOException {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(bytes, pos, bytes.length - pos);
+        try {
+            int written = 0;
+            while (written < raw.length) {
+                int n = inflater.inflate(raw, written, raw.length - written);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated deflate value: " + written + " of " + raw.length + " bytes");
+                }
+                written += n;
+            }
+            // Lo que queda es la suma de comprobación: sin ella el valor está cortado o corrupto
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished())) {
+                throw new IOException("Deflate value does not match its length or checksum");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted deflate value", e);
+        }
+    }
+
+    /**
+     * Lee un valor guardado sin descomprimirlo entero: se descomprime según se va leyendo
+     * @return null si el valor es null
+     */
+    public static InputStream openStream(Object stored) throws IOException {
+        if (stored == null) {
+            return null;
+        }
+        if (stored instanceof String text) {
+            return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+        }
+        if (!(stored instanceof byte[] bytes)) {
+            throw new IOException("Value is not TEXT or BLOB");
+        }
+        if (!hasMagic(bytes)) {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        int length = Varint.read(bytes, MAGIC.length + 1, bytes.length);
+        int pos = MAGIC.length + 1 + Varint.size(length);
+        return switch (bytes[MAGIC.length]) {
+            case STORED -> new ByteArrayInputStream(bytes, pos, bytes.length - pos);
+            case DEFLATE -> new InflaterInputStream(new ByteArrayInputStream(bytes, pos, bytes.length - pos), new Inflater()) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+            case LZ4 -> new Lz4.ChunkInputStream(bytes, pos, bytes.length);
+            default -> throw new IOException("Unknown compression " + (char) bytes[MAGIC.length]);
+        };
+    }
+
+    /**
+     * Valor que pasa newOutputStream a onClose tal y como lo ve la API (descomprimido), para encolarlo
+     */
+    public static Object visible(Object stored, ColumnType type) throws SQLException {
+        return stored instanceof Encoded encoded ? decode(encoded.bytes(), type) : stored;
+    }
+
+    /**
+     * Escribe un valor comprimiéndolo según llega, sin tener nunca el original entero en memoria.
+     * Al cerrarlo se pasa a onClose el valor ya codificado, listo para un UPDATE.
+     */
+    public static OutputStream newOutputStream(String table, Compression compression, ColumnType type,
+                                               Consumer<Object> onClose) {
+        return new ValueOutputStream(StorageMetrics.table(table), compression, type, onClose);
+    }
+
+    /**
+     * Valor que ya está en el formato de la DB: encode lo deja pasar sin volver a comprimirlo
+     */
+    private record Encoded(byte[] bytes) {}
+
+    private static final class ValueOutputStream extends OutputStream {
+
+        private final TableMetrics metrics;
+        private final Compression compression;
+        private final ColumnType type;
+        private final Consumer<Object> onClose;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final Deflater deflater;
+        private final OutputStream out;
+        private long length;
+        private boolean closed;
+
+        ValueOutputStream(TableMetrics metrics, Compression compression, ColumnType type, Consumer<Object> onClose) {
+            this.metrics = metrics;
+            this.compression = compression;
+            this.type = type;
+            this.onClose = onClose;
+            this.deflater = compression == Compression.DEFLATE ? new Deflater() : null;
+            this.out = switch (compression) {
+                case DEFLATE -> new DeflaterOutputStream(buffer, deflater, 8192);
+                case LZ4 -> new Lz4.ChunkOutputStream(buffer);
+                case NONE -> buffer;
+            };
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            out.write(b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            out.write(b, off, len);
+            length += len;
+        }
+
+        private void checkOpen() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (length > Integer.MAX_VALUE - MAX_HEADER) {
+                throw new IOException("Value too large: " + length + " bytes");
+            }
+
+            try {
+                out.close();
+            } finally {
+                if (deflater != null) {
+                    deflater.end();
+                }
+            }
+
+            Object stored;
+            int storedLength;
+            if (compression == Compression.NONE) {
+                byte[] raw = buffer.toByteArray();
+                stored = type == ColumnType.TEXT ? new String(raw, StandardCharsets.UTF_8) : raw;
+                storedLength = raw.length;
+            } else {
+                byte[] header = new byte[MAX_HEADER];
+                int headerLength = writeHeader(header, compression == Compression.DEFLATE ? DEFLATE : LZ4, (int) length);
+                byte[] bytes = new byte[headerLength + buffer.size()];
+                System.arraycopy(header, 0, bytes, 0, headerLength);
+                System.arraycopy(buffer.toByteArray(), 0, bytes, headerLength, buffer.size());
+                stored = new Encoded(bytes);
+                storedLength = bytes.length;
+            }
+
+            metrics.compressionInputBytes.add(length);
+            metrics.compressionOutputBytes.add(storedLength);
+            onClose.accept(stored);
+        }
+    }
+
+    private ColumnCodec() {}
+}
@@ -0,0 +1,390 @@
+package es.superstrellaa.storagemanager.internal.compression;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Compresor del formato de bloques de LZ4, en Java puro.
+ *
+ * Busca coincidencias de 4 bytes con una tabla hash y sin buscar la mejor (como el modo rápido
+ * de LZ4): comprime menos que deflate pero a mucha más velocidad, y descomprimir es casi copiar.
+ *
+ * Los valores largos se parten en trozos de CHUNK_SIZE bytes, cada uno precedido de su tamaño
+ * original y comprimido (varints); un tamaño comprimido 0 significa que el trozo va sin comprimir.
+ * Así se puede leer o escribir un valor trozo a trozo sin tenerlo entero descomprimido.
+ */
+@ApiStatus.Internal
+public final class Lz4 {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int MIN_MATCH = 4;
+    // El formato exige que los últimos 5 bytes sean literales y que ninguna coincidencia empiece en los últimos 12
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_OFFSET = 65_535;
+    private static final int HASH_LOG = 12;
+
+    private static final ThreadLocal<int[]> hashTables = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+    private static final ThreadLocal<byte[]> chunkBuffers = ThreadLocal.withInitial(() -> new byte[maxCompressedLength(CHUNK_SIZE)]);
+
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Comprime src en trozos y escribe el resultado en out a partir de offset
+     * @return la posición siguiente al último byte escrito, o -1 si no cabe (no merece la pena comprimir)
+     */
+    static int compressChunks(byte[] src, byte[] out, int offset) {
+        byte[] chunk = chunkBuffers.get();
+        int pos = offset;
+        for (int start = 0; start < src.length; start += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, src.length - start);
+            int compressed = compress(src, start, length, chunk, 0);
+            boolean stored = compressed >= length;
+
+            if (pos + Varint.MAX_BYTES * 2 + (stored ? length : compressed) > out.length) {
+                return -1;
+            }
+            pos = Varint.write(out, pos, length);
+            pos = Varint.write(out, pos, stored ? 0 : compressed);
+            if (stored) {
+                System.arraycopy(src, start, out, pos, length);
+                pos += length;
+            } else {
+                System.arraycopy(chunk, 0, out, pos, compressed);
+                pos += compressed;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Descomprime los trozos de src[offset, end) en dst, que tiene que tener el tamaño original exacto
+     */
+    static void decompressChunks(byte[] src, int offset, int end, byte[] dst) throws IOException {
+        int pos = offset;
+        int written = 0;
+        while (pos < end) {
+            int length = Varint.read(src, pos, end);
+            pos += Varint.size(length);
+            int compressed = Varint.read(src, pos, end);
+            pos += Varint.size(compressed);
+            int stored = compressed == 0 ? length : compressed;
+            if (length > dst.length - written || stored > end - pos) {
+                throw new IOException("Corrupted LZ4 chunk");
+            }
+
+            if (compressed == 0) {
+                System.arraycopy(src, pos, dst, written, length);
+            } else {
+                decompress(src, pos, compressed, dst, written, length);
+            }
+            pos += stored;
+            written += length;
+        }
+        if (written != dst.length) {
+            throw new IOException("Truncated LZ4 value: " + written + " of " + dst.length + " bytes");
+        }
+    }
+
+    /**
+     * Comprime un bloque. dst necesita al menos maxCompressedLength(length) bytes libres.
+     * @return bytes escritos en dst
+     */
+    static int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff) {
+        int end = srcOff + length;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (length > MF_LIMIT) {
+            int[] table = hashTables.get();
+            Arrays.fill(table, -1);
+            int matchLimit = end - LAST_LITERALS;
+            int mfLimit = end - MF_LIMIT;
+
+            int ip = srcOff;
+            while (ip < mfLimit) {
+                int sequence = readInt(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash];
+                table[hash] = ip;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        // Última secuencia: solo literales
+        int literals = end - anchor;
+        int token = op++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4);
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, anchor, dst, op, literals);
+        return op + literals - dstOff;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals, int offset, int matchLength, byte[] dst, int op) {
+        int token = op++;
+        op = writeLength(literals, dst, op);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+
+        int extra = matchLength - MIN_MATCH;
+        op = writeLength(extra, dst, op);
+        dst[token] = (byte) (Math.min(literals, 15) << 4 | Math.min(extra, 15));
+        return op;
+    }
+
+    /**
+     * Bytes extra de una longitud que no cabe en los 4 bits del token
+     */
+    private static int writeLength(int length, byte[] dst, int op) {
+        if (length < 15) {
+            return op;
+        }
+        int remaining = length - 15;
+        while (remaining >= 255) {
+            dst[op++] = (byte) 255;
+            remaining -= 255;
+        }
+        dst[op++] = (byte) remaining;
+        return op;
+    }
+
+    /**
+     * Descomprime un bloque que tiene que dar exactamente length bytes
+     */
+    static void decompress(byte[] src, int srcOff, int srcLength, byte[] dst, int dstOff, int length) throws IOException {
+        int ip = srcOff;
+        int end = srcOff + srcLength;
+        int op = dstOff;
+        int outEnd = dstOff + length;
+
+        while (true) {
+            if (ip >= end) {
+                throw new IOException("Corrupted LZ4 block");
+            }
+            int token = src[ip++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("Corrupted LZ4 block");
+                    }
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > end - ip || literals > outEnd - op) {
+                throw new IOException("Corrupted LZ4 block");
+            }
+            System.arraycopy(src, ip, dst, op, literals);
+            ip += literals;
+            op += literals;
+
+            if (ip == end) {
+                break;
+            }
+
+            if (end - ip < 2) {
+                throw new IOException("Corrupted LZ4 block");
+            }
+            int offset = (src[ip++] & 0xFF) | (src[ip++] & 0xFF) << 8;
+            if (offset == 0 || offset > op - dstOff) {
+                throw new IOException("Corrupted LZ4 block");
+            }
+
+            int matchLength = token & 15;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (ip >= end) {
+                        throw new IOException("Corrupted LZ4 block");
+                    }
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > outEnd - op) {
+                throw new IOException("Corrupted LZ4 block");
+            }
+
+            int ref = op - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, ref, dst, op, matchLength);
+            } else {
+                // La coincidencia se solapa con lo que se está escribiendo (repeticiones): byte a byte
+                for (int i = 0; i < matchLength; i++) {
+                    dst[op + i] = dst[ref + i];
+                }
+            }
+            op += matchLength;
+        }
+
+        if (op != outEnd) {
+            throw new IOException("Corrupted LZ4 block");
+        }
+    }
+
+    private static int readInt(byte[] src, int index) {
+        return (src[index] & 0xFF) | (src[index + 1] & 0xFF) << 8 | (src[index + 2] & 0xFF) << 16 | (src[index + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    /**
+     * Escribe los trozos según llegan los datos: en memoria solo hay un trozo sin comprimir
+     */
+    static final class ChunkOutputStream extends OutputStream {
+
+        private final ByteArrayOutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private final byte[] compressed = new byte[maxCompressedLength(CHUNK_SIZE)];
+        private final byte[] header = new byte[Varint.MAX_BYTES * 2];
+        private int count;
+
+        ChunkOutputStream(ByteArrayOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() {
+            if (count == 0) {
+                return;
+            }
+            int length = compress(buffer, 0, count, compressed, 0);
+            boolean stored = length >= count;
+            int headerLength = Varint.write(header, Varint.write(header, 0, count), stored ? 0 : length);
+            out.write(header, 0, headerLength);
+            out.write(stored ? buffer : compressed, 0, stored ? count : length);
+            count = 0;
+        }
+
+        @Override
+        public void close() {
+            writeChunk();
+        }
+    }
+
+    /**
+     * Lee los trozos de src[offset, end) descomprimiendo uno cada vez
+     */
+    static final class ChunkInputStream extends InputStream {
+
+        private final byte[] src;
+        private final int end;
+        private int pos;
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private int chunkPos;
+        private int chunkLength;
+
+        ChunkInputStream(byte[] src, int offset, int end) {
+            this.src = src;
+            this.pos = offset;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (chunkPos == chunkLength && !nextChunk()) {
+                return -1;
+            }
+            return chunk[chunkPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (chunkPos == chunkLength && !nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(len, chunkLength - chunkPos);
+            System.arraycopy(chunk, chunkPos, b, off, n);
+            chunkPos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return chunkLength - chunkPos;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (pos >= end) {
+                return false;
+            }
+            int length = Varint.read(src, pos, end);
+            pos += Varint.size(length);
+            int compressed = Varint.read(src, pos, end);
+            pos += Varint.size(compressed);
+            int stored = compressed == 0 ? length : compressed;
+            if (length == 0 || length > CHUNK_SIZE || stored > end - pos) {
+                throw new IOException("Corrupted LZ4 chunk");
+            }
+
+            if (compressed == 0) {
+                System.arraycopy(src, pos, chunk, 0, length);
+            } else {
+                decompress(src, pos, compressed, chunk, 0, length);
+            }
+            pos += stored;
+            chunkPos = 0;
+            chunkLength = length;
+            return true;
+        }
+    }
+
+    private Lz4() {}
+}
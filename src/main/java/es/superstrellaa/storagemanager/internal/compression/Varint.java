@@ -0,0 +1,52 @@
+package es.superstrellaa.storagemanager.internal.compression;
+
+import java.io.IOException;
+
+/**
+ * Enteros no negativos en 1-5 bytes, 7 bits por byte (como los de protobuf)
+ */
+final class Varint {
+
+    static final int MAX_BYTES = 5;
+
+    /**
+     * @return la posición siguiente al último byte escrito
+     */
+    static int write(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    static int read(byte[] src, int pos, int end) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (pos >= end) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = src[pos++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0) {
+                    throw new IOException("Invalid varint");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint");
+    }
+
+    static int size(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private Varint() {}
+}
@@ -0,0 +1,113 @@
+package es.superstrellaa.storagemanager.internal.config;
+
+import es.superstrellaa.storagemanager.StorageManagerAPI;
+import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.StoragePaths;
+import es.superstrellaa.storagemanager.internal.cache.QueryCache;
+import es.superstrellaa.storagemanager.internal.cache.RowCache;
+import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Carga config/storagemanager/storagemanager.properties y aplica los cambios al recargarlo.
+ *
+ * Tamaño de página y conexiones de lectura solo cuentan al abrir las bases de datos; lo demás
+ * (flush, colas, commits agrupados, cachés de filas y consultas, cache_size y mmap_size) se aplica en caliente.
+ */
+@ApiStatus.Internal
+public final class ConfigManager {
+
+    private static final String DEFAULT_FILE = """
+            # StorageManager settings. Changes apply with /storagemanager reload,
+            # except sqlite.page_size and sqlite.read_connections, which need a restart.
+            #
+            # Preset: low-memory, balanced or throughput. Any setting below overrides it.
+            preset=balanced
+
+            # SQLite page cache per connection (KiB) and memory-mapped I/O (MiB, 0 = off)
+            #sqlite.cache_size_kb=8192
+            #sqlite.mmap_size_mb=0
+            # Page size of newly created database files
+            #sqlite.page_size=4096
+            # Read connections of the main database
+            #sqlite.read_connections=4
+
+            # Write cache: flush interval, early flush threshold and queue capacity per table
+            #flush.interval_ms=5000
+            #flush.batch_size=100
+            #flush.queue_capacity=10000
+            # Limits of each grouped commit
+            #flush.group_max_operations=5000
+            #flush.group_max_millis=200
+
+            # Memory for cached query results (TableSchema.Builder#queryCache, Query#cached), 0 = off
+            #query_cache.max_mb=32
+
+            # Per-table overrides: table.<name>.flush.interval_ms, table.<name>.flush.batch_size,
+            # table.<name>.flush.queue_capacity, table.<name>.row_cache.entries, table.<name>.row_cache.bytes
+            #table.player_data.flush.interval_ms=2000
+            #table.player_data.row_cache.entries=5000
+            """;
+
+    public static Path getConfigPath() {
+        return StoragePaths.getBaseDir().resolve(StorageConfig.FILE_NAME);
+    }
+
+    /**
+     * Lee el fichero al arrancar (creándolo si no existe). Si tiene errores se arranca con el preset balanced.
+     */
+    public static void load() {
+        Path path = getConfigPath();
+        try {
+            if (!Files.exists(path)) {
+                Files.createDirectories(path.getParent());
+                Files.writeString(path, DEFAULT_FILE, StandardCharsets.UTF_8);
+            }
+            StorageConfig.set(read(path));
+        } catch (IOException | IllegalArgumentException e) {
+            StorageManagerAPI.LOGGER.error("Failed to load {}, using the balanced preset", path, e);
+            StorageConfig.set(StorageConfig.fromPreset(StoragePreset.BALANCED));
+        }
+        StorageManagerAPI.LOGGER.info("Storage config loaded (preset {})", StorageConfig.get().getPreset().id());
+    }
+
+    /**
+     * Vuelve a leer el fichero y aplica lo que se puede cambiar en caliente.
+     * Si el fichero tiene errores se lanza la excepción y se mantiene la configuración actual.
+     */
+    public static StorageConfig reload() throws IOException {
+        StorageConfig previous = StorageConfig.get();
+        StorageConfig config = read(getConfigPath());
+        StorageConfig.set(config);
+
+        WriteCache.getInstance().configure(config);
+        RowCache.reconfigure();
+        QueryCache.trim();
+        if (config.getCacheSizeKb() != previous.getCacheSizeKb() || config.getMmapSizeMb() != previous.getMmapSizeMb()) {
+            SQLiteBackend.configure(config);
+        }
+        if (config.getPageSize() != previous.getPageSize() || config.getReadConnections() != previous.getReadConnections()) {
+            StorageManagerAPI.LOGGER.warn("sqlite.page_size and sqlite.read_connections changes apply after a restart");
+        }
+
+        StorageManagerAPI.LOGGER.info("Storage config reloaded (preset {})", config.getPreset().id());
+        return config;
+    }
+
+    private static StorageConfig read(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return StorageConfig.parse(properties);
+    }
+
+    private ConfigManager() {}
+}
@@ -0,0 +1,254 @@
+package es.superstrellaa.storagemanager.internal.config;
+
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Ajustes de SQLite y de la WriteCache leídos de storagemanager.properties.
+ *
+ * Se parte de un preset (low-memory, balanced, throughput) y cada clave del fichero lo sobrescribe.
+ * Las claves table.&lt;tabla&gt;.* cambian los ajustes de una sola tabla. Es inmutable: recargar el
+ * fichero crea otra instancia y ConfigManager la aplica.
+ */
+@ApiStatus.Internal
+public final class StorageConfig {
+
+    public static final String FILE_NAME = "storagemanager.properties";
+
+    private static final String TABLE_PREFIX = "table.";
+
+    private static volatile StorageConfig current = fromPreset(StoragePreset.BALANCED);
+
+    private final StoragePreset preset;
+    private final int pageSize;
+    private final int cacheSizeKb;
+    private final int mmapSizeMb;
+    private final int readConnections;
+    private final int groupMaxOperations;
+    private final long groupMaxMillis;
+    private final int queryCacheMb;
+    private final TableSettings defaults;
+    private final Map<String, TableSettings> tables;
+
+    private StorageConfig(StoragePreset preset, int pageSize, int cacheSizeKb, int mmapSizeMb, int readConnections,
+                          int groupMaxOperations, long groupMaxMillis, int queryCacheMb, TableSettings defaults,
+                          Map<String, TableSettings> tables) {
+        this.preset = preset;
+        this.pageSize = pageSize;
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeMb = mmapSizeMb;
+        this.readConnections = readConnections;
+        this.groupMaxOperations = groupMaxOperations;
+        this.groupMaxMillis = groupMaxMillis;
+        this.queryCacheMb = queryCacheMb;
+        this.defaults = defaults;
+        this.tables = tables;
+    }
+
+    /**
+     * @return la configuración activa (la del preset balanced si no se ha cargado ningún fichero, p.ej. en los benchmarks)
+     */
+    public static StorageConfig get() {
+        return current;
+    }
+
+    static void set(StorageConfig config) {
+        current = config;
+    }
+
+    public static StorageConfig fromPreset(StoragePreset preset) {
+        TableSettings defaults = new TableSettings(preset.flushIntervalMs, preset.batchSize, preset.queueCapacity, -1, -1);
+        return new StorageConfig(preset, 0, preset.cacheSizeKb, preset.mmapSizeMb, preset.readConnections,
+                preset.groupMaxOperations, preset.groupMaxMillis, preset.queryCacheMb, defaults, Map.of());
+    }
+
+    /**
+     * @throws IllegalArgumentException si hay claves desconocidas o valores fuera de rango
+     */
+    public static StorageConfig parse(Properties properties) {
+        StoragePreset preset = StoragePreset.byId(properties.getProperty("preset", StoragePreset.BALANCED.id()).trim());
+
+        Map<String, String> global = new HashMap<>();
+        Map<String, Map<String, String>> perTable = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key).trim();
+            if (key.equals("preset")) {
+                continue;
+            }
+            if (key.startsWith(TABLE_PREFIX)) {
+                int dot = key.indexOf('.', TABLE_PREFIX.length());
+                if (dot < 0) {
+                    throw new IllegalArgumentException("Invalid key " + key + " (expected table.<name>.<setting>)");
+                }
+                perTable.computeIfAbsent(key.substring(TABLE_PREFIX.length(), dot), k -> new HashMap<>())
+                        .put(key.substring(dot + 1), value);
+            } else {
+                global.put(key, value);
+            }
+        }
+
+        int pageSize = intValue(global, "sqlite.page_size", 0, 0, 65_536);
+        if (pageSize != 0 && (pageSize < 512 || Integer.bitCount(pageSize) != 1)) {
+            throw new IllegalArgumentException("sqlite.page_size must be a power of 2 between 512 and 65536");
+        }
+        int cacheSizeKb = intValue(global, "sqlite.cache_size_kb", preset.cacheSizeKb, 0, Integer.MAX_VALUE);
+        int mmapSizeMb = intValue(global, "sqlite.mmap_size_mb", preset.mmapSizeMb, 0, 1 << 20);
+        int readConnections = intValue(global, "sqlite.read_connections", preset.readConnections, 1, 64);
+        int groupMaxOperations = intValue(global, "flush.group_max_operations", preset.groupMaxOperations, 1, Integer.MAX_VALUE);
+        long groupMaxMillis = longValue(global, "flush.group_max_millis", preset.groupMaxMillis, 1, Long.MAX_VALUE);
+        int queryCacheMb = intValue(global, "query_cache.max_mb", preset.queryCacheMb, 0, 1 << 20);
+
+        TableSettings base = new TableSettings(preset.flushIntervalMs, preset.batchSize, preset.queueCapacity, -1, -1);
+        TableSettings defaults = tableSettings(global, base, false);
+        if (!global.isEmpty()) {
+            throw new IllegalArgumentException("Unknown setting " + global.keySet().iterator().next());
+        }
+
+        Map<String, TableSettings> tables = new HashMap<>();
+        perTable.forEach((table, values) -> {
+            TableSettings settings = tableSettings(values, defaults, true);
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown setting table." + table + "." + values.keySet().iterator().next());
+            }
+            tables.put(table, settings);
+        });
+
+        return new StorageConfig(preset, pageSize, cacheSizeKb, mmapSizeMb, readConnections,
+                groupMaxOperations, groupMaxMillis, queryCacheMb, defaults, Map.copyOf(tables));
+    }
+
+    /**
+     * Lee (y quita de values) los ajustes de flush; lo que no aparece se hereda de base.
+     * La caché de filas solo se puede cambiar por tabla.
+     */
+    private static TableSettings tableSettings(Map<String, String> values, TableSettings base, boolean perTable) {
+        long flushIntervalMs = longValue(values, "flush.interval_ms", base.flushIntervalMs(), 100, Long.MAX_VALUE / 3);
+        int batchSize = intValue(values, "flush.batch_size", base.batchSize(), 1, Integer.MAX_VALUE);
+        int queueCapacity = intValue(values, "flush.queue_capacity", base.queueCapacity(), 1, Integer.MAX_VALUE);
+        if (batchSize > queueCapacity) {
+            throw new IllegalArgumentException("flush.batch_size (" + batchSize + ") can't be larger than flush.queue_capacity (" + queueCapacity + ")");
+        }
+
+        int rowCacheEntries = base.rowCacheEntries();
+        long rowCacheBytes = base.rowCacheBytes();
+        if (perTable) {
+            rowCacheEntries = intValue(values, "row_cache.entries", rowCacheEntries, 0, Integer.MAX_VALUE);
+            rowCacheBytes = longValue(values, "row_cache.bytes", rowCacheBytes, 0, Long.MAX_VALUE);
+        }
+        return new TableSettings(flushIntervalMs, batchSize, queueCapacity, rowCacheEntries, rowCacheBytes);
+    }
+
+    private static int intValue(Map<String, String> values, String key, int fallback, int min, int max) {
+        return (int) longValue(values, key, fallback, min, max);
+    }
+
+    private static long longValue(Map<String, String> values, String key, long fallback, long min, long max) {
+        String value = values.remove(key);
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException("Value for " + key + " must be between " + min + " and " + max + ": " + value);
+        }
+        return parsed;
+    }
+
+    public StoragePreset getPreset() {
+        return preset;
+    }
+
+    /**
+     * @return tamaño de página de los ficheros nuevos, 0 para el de SQLite
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getCacheSizeKb() {
+        return cacheSizeKb;
+    }
+
+    public int getMmapSizeMb() {
+        return mmapSizeMb;
+    }
+
+    /**
+     * @return conexiones de lectura de la base de datos principal (y hilos de consulta)
+     */
+    public int getReadConnections() {
+        return readConnections;
+    }
+
+    public int getGroupMaxOperations() {
+        return groupMaxOperations;
+    }
+
+    public long getGroupMaxMillis() {
+        return groupMaxMillis;
+    }
+
+    /**
+     * @return memoria máxima estimada de la caché de consultas, para todas las tablas; 0 la desactiva
+     */
+    public long getQueryCacheBytes() {
+        return queryCacheMb * 1024L * 1024L;
+    }
+
+    /**
+     * @return los ajustes de las tablas sin claves table.&lt;tabla&gt;.*
+     */
+    public TableSettings defaults() {
+        return defaults;
+    }
+
+    /**
+     * @return los ajustes de la tabla, con sus claves table.&lt;tabla&gt;.* aplicadas
+     */
+    public TableSettings table(String table) {
+        return tables.getOrDefault(table, defaults);
+    }
+
+    /**
+     * Ajustes de flush y caché de una tabla
+     *
+     * @param rowCacheEntries filas de la caché por clave primaria, -1 para usar las del esquema
+     * @param rowCacheBytes   bytes de la caché por clave primaria, -1 para usar los del esquema
+     */
+    public record TableSettings(
+            long flushIntervalMs,
+            int batchSize,
+            int queueCapacity,
+            int rowCacheEntries,
+            long rowCacheBytes
+    ) {
+        /**
+         * Ninguna operación espera más que esto, aunque el servidor vaya justo de tiempo
+         */
+        public long maxFlushDelayMs() {
+            return flushIntervalMs * 3;
+        }
+
+        public int lowWatermark() {
+            return queueCapacity / 2;
+        }
+
+        public int rowCacheEntries(TableSchema schema) {
+            return rowCacheEntries < 0 ? schema.getRowCacheEntries() : rowCacheEntries;
+        }
+
+        public long rowCacheBytes(TableSchema schema) {
+            return rowCacheBytes < 0 ? schema.getRowCacheBytes() : rowCacheBytes;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package es.superstrellaa.storagemanager.internal.config;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Locale;
+
+/**
+ * Valores de partida del fichero de configuración. Lo que se escriba en el fichero los sobrescribe.
+ */
+@ApiStatus.Internal
+public enum StoragePreset {
+
+    // Servidores pequeños: poca caché de SQLite y colas cortas
+    LOW_MEMORY(2_048, 0, 2, 3_000, 50, 2_000, 1_000, 100, 8),
+    // Los valores de siempre
+    BALANCED(8_192, 0, 4, 5_000, 100, 10_000, 5_000, 200, 32),
+    // Servidores grandes: mucha caché, mmap para las lecturas y commits más grandes
+    THROUGHPUT(65_536, 256, 8, 5_000, 500, 50_000, 20_000, 500, 128);
+
+    final int cacheSizeKb;
+    final int mmapSizeMb;
+    final int readConnections;
+    final long flushIntervalMs;
+    final int batchSize;
+    final int queueCapacity;
+    final int groupMaxOperations;
+    final long groupMaxMillis;
+    final int queryCacheMb;
+
+    StoragePreset(int cacheSizeKb, int mmapSizeMb, int readConnections, long flushIntervalMs, int batchSize,
+                  int queueCapacity, int groupMaxOperations, long groupMaxMillis, int queryCacheMb) {
+        this.cacheSizeKb = cacheSizeKb;
+        this.mmapSizeMb = mmapSizeMb;
+        this.readConnections = readConnections;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.groupMaxOperations = groupMaxOperations;
+        this.groupMaxMillis = groupMaxMillis;
+        this.queryCacheMb = queryCacheMb;
+    }
+
+    /**
+     * Nombre en el fichero de configuración (low-memory, balanced, throughput)
+     */
+    public String id() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    public static StoragePreset byId(String id) {
+        for (StoragePreset preset : values()) {
+            if (preset.id().equals(id)) {
+                return preset;
+            }
+        }
+        throw new IllegalArgumentException("Unknown preset " + id + " (expected low-memory, balanced or throughput)");
+    }
+}
@@ -0,0 +1,52 @@
+package es.superstrellaa.storagemanager.internal.lifecycle;
+
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.minecraft.server.MinecraftServer;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Referencia al servidor en marcha, para poder devolver resultados al hilo del servidor
+ */
+@ApiStatus.Internal
+public final class ServerContext {
+
+    private static volatile MinecraftServer server;
+
+    public static void register() {
+        ServerLifecycleEvents.SERVER_STARTED.register(s -> server = s);
+        ServerLifecycleEvents.SERVER_STOPPED.register(s -> server = null);
+    }
+
+    /**
+     * @return true si el hilo actual es el hilo principal del servidor
+     */
+    public static boolean isServerThread() {
+        MinecraftServer current = server;
+        return current != null && current.isOnThread();
+    }
+
+    /**
+     * Devuelve un future que se completa (con valor o con error) dentro del hilo del servidor.
+     * Si el servidor no está arrancado se devuelve el mismo future.
+     */
+    public static <T> CompletableFuture<T> completeOnServerThread(CompletableFuture<T> future) {
+        MinecraftServer current = server;
+        if (current == null) {
+            return future;
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenCompleteAsync((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        }, current);
+        return result;
+    }
+
+    private ServerContext() {}
+}
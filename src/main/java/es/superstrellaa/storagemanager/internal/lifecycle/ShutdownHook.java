@@ -1,6 +1,8 @@
 package es.superstrellaa.storagemanager.internal.lifecycle;
 
+import es.superstrellaa.storagemanager.internal.DatabaseMaintenance;
 import es.superstrellaa.storagemanager.internal.SQLiteBackend;
+import es.superstrellaa.storagemanager.internal.cache.ChangeFeed;
 import es.superstrellaa.storagemanager.internal.cache.WriteCache;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import org.jetbrains.annotations.ApiStatus;
@@ -10,7 +12,9 @@ public final class ShutdownHook {
 
     public static void register() {
         ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+            DatabaseMaintenance.shutdown();
             WriteCache.getInstance().shutdown();
+            ChangeFeed.shutdown();
             SQLiteBackend.shutdown();
         });
     }
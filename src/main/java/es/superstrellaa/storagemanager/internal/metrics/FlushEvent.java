@@ -0,0 +1,28 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Evento JFR alrededor de cada WriteCache.flushTable
+ */
+@ApiStatus.Internal
+@Name("storagemanager.Flush")
+@Label("StorageManager Flush")
+@Category({"StorageManager"})
+@Description("Flush of the pending operations of a table")
+public final class FlushEvent extends Event {
+
+    @Label("Table")
+    public String table;
+
+    @Label("Operations")
+    public int operations;
+
+    @Label("Committed")
+    public boolean committed;
+}
@@ -0,0 +1,71 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import es.superstrellaa.storagemanager.api.metrics.LatencyStats;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin locks: un bucket por cada potencia de 2 de nanosegundos
+ */
+@ApiStatus.Internal
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(nanos | 1));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public LatencyStats snapshot() {
+        long total = count.sum();
+        if (total == 0) {
+            return new LatencyStats(0, 0, 0, 0, 0);
+        }
+
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+
+        return new LatencyStats(
+                total,
+                toMillis(totalNanos.sum() / (double) total),
+                toMillis(percentile(counts, total, 0.50)),
+                toMillis(percentile(counts, total, 0.99)),
+                toMillis(maxNanos.get())
+        );
+    }
+
+    /**
+     * Devuelve el límite superior del bucket en el que cae el percentil
+     */
+    private static double percentile(long[] counts, long total, double quantile) {
+        long target = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.pow(2, i + 1);
+            }
+        }
+        return Math.pow(2, BUCKETS);
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,28 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Evento JFR alrededor de cada trabajo de DatabaseMaintenance
+ */
+@ApiStatus.Internal
+@Name("storagemanager.Maintenance")
+@Label("StorageManager Maintenance")
+@Category({"StorageManager"})
+@Description("WAL checkpoint, optimize or incremental vacuum of a database")
+public final class MaintenanceEvent extends Event {
+
+    @Label("Database")
+    public String database;
+
+    @Label("Job")
+    public String job;
+
+    @Label("Pages")
+    public int pages;
+}
@@ -0,0 +1,19 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Duración de los trabajos de mantenimiento de SQLite, sumando todas las bases de datos
+ */
+@ApiStatus.Internal
+public final class MaintenanceMetrics {
+
+    public final LongAdder checkpointedPages = new LongAdder();
+    public final LongAdder vacuumedPages = new LongAdder();
+
+    public final LatencyHistogram checkpointTime = new LatencyHistogram();
+    public final LatencyHistogram optimizeTime = new LatencyHistogram();
+    public final LatencyHistogram vacuumTime = new LatencyHistogram();
+}
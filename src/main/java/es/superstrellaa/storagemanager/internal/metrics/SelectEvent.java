@@ -0,0 +1,25 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Evento JFR alrededor de cada TableExecutor.select
+ */
+@ApiStatus.Internal
+@Name("storagemanager.Select")
+@Label("StorageManager Select")
+@Category({"StorageManager"})
+@Description("SELECT against a table, including the pending-writes overlay")
+public final class SelectEvent extends Event {
+
+    @Label("Table")
+    public String table;
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,84 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import es.superstrellaa.storagemanager.api.metrics.MaintenanceStats;
+import es.superstrellaa.storagemanager.api.metrics.StorageStats;
+import es.superstrellaa.storagemanager.api.metrics.TableStats;
+import es.superstrellaa.storagemanager.internal.cache.FlushScheduler;
+import es.superstrellaa.storagemanager.internal.cache.WriteCache;
+import es.superstrellaa.storagemanager.internal.lifecycle.ServerContext;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro de métricas por tabla
+ */
+@ApiStatus.Internal
+public final class StorageMetrics {
+
+    private static final Map<String, TableMetrics> tables = new ConcurrentHashMap<>();
+    private static final MaintenanceMetrics maintenance = new MaintenanceMetrics();
+
+    public static TableMetrics table(String table) {
+        return tables.computeIfAbsent(table, k -> new TableMetrics());
+    }
+
+    public static MaintenanceMetrics maintenance() {
+        return maintenance;
+    }
+
+    /**
+     * Registra cuánto ha durado una llamada a la API si se hizo desde el hilo del servidor
+     */
+    public static void recordCall(String table, long startNanos) {
+        if (ServerContext.isServerThread()) {
+            table(table).serverThreadTime.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public static StorageStats snapshot() {
+        WriteCache cache = WriteCache.getInstance();
+        Map<String, TableStats> stats = new TreeMap<>();
+
+        tables.forEach((table, metrics) -> stats.put(table, new TableStats(
+                table,
+                cache.queueDepth(table),
+                metrics.opsQueued.sum(),
+                metrics.opsFlushed.sum(),
+                cache.droppedOperations(table),
+                cache.rejectedOperations(table),
+                metrics.rollbacks.sum(),
+                metrics.rowsReturned.sum(),
+                metrics.fullScans.sum(),
+                metrics.rowCacheHits.sum(),
+                metrics.rowCacheMisses.sum(),
+                metrics.rowCacheEvictions.sum(),
+                metrics.queryCacheHits.sum(),
+                metrics.queryCacheMisses.sum(),
+                metrics.queryCacheEvictions.sum(),
+                metrics.compressionInputBytes.sum(),
+                metrics.compressionOutputBytes.sum(),
+                metrics.flushTime.snapshot(),
+                metrics.statementTime.snapshot(),
+                metrics.selectTime.snapshot(),
+                metrics.serverThreadTime.snapshot()
+        )));
+
+        return new StorageStats(
+                FlushScheduler.getInstance().getMeanTickMillis(),
+                Collections.unmodifiableMap(stats),
+                new MaintenanceStats(
+                        maintenance.checkpointedPages.sum(),
+                        maintenance.vacuumedPages.sum(),
+                        maintenance.checkpointTime.snapshot(),
+                        maintenance.optimizeTime.snapshot(),
+                        maintenance.vacuumTime.snapshot()
+                )
+        );
+    }
+
+    private StorageMetrics() {}
+}
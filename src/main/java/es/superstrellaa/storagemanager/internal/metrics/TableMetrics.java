@@ -0,0 +1,31 @@
+package es.superstrellaa.storagemanager.internal.metrics;
+
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores e histogramas de una tabla. Se actualizan desde cualquier hilo sin bloquear.
+ */
+@ApiStatus.Internal
+public final class TableMetrics {
+
+    public final LongAdder opsQueued = new LongAdder();
+    public final LongAdder opsFlushed = new LongAdder();
+    public final LongAdder rollbacks = new LongAdder();
+    public final LongAdder rowsReturned = new LongAdder();
+    public final LongAdder fullScans = new LongAdder();
+    public final LongAdder rowCacheHits = new LongAdder();
+    public final LongAdder rowCacheMisses = new LongAdder();
+    public final LongAdder rowCacheEvictions = new LongAdder();
+    public final LongAdder queryCacheHits = new LongAdder();
+    public final LongAdder queryCacheMisses = new LongAdder();
+    public final LongAdder queryCacheEvictions = new LongAdder();
+    public final LongAdder compressionInputBytes = new LongAdder();
+    public final LongAdder compressionOutputBytes = new LongAdder();
+
+    public final LatencyHistogram flushTime = new LatencyHistogram();
+    public final LatencyHistogram statementTime = new LatencyHistogram();
+    public final LatencyHistogram selectTime = new LatencyHistogram();
+    public final LatencyHistogram serverThreadTime = new LatencyHistogram();
+}
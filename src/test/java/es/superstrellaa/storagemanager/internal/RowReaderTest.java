@@ -0,0 +1,179 @@
+package es.superstrellaa.storagemanager.internal;
+
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.Compression;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.compression.ColumnCodec;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lo que se guarda comprimido con ColumnCodec.encode se lee igual con RowReader
+ */
+class RowReaderTest {
+
+    private static final String TABLE = "codec_test";
+    private static final String[] COLUMNS = {"id", "lz4_text", "deflate_text", "lz4_blob", "deflate_blob"};
+
+    private TableSchema schema;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        schema = TableSchema.builder(TABLE)
+                .column("id", ColumnType.INTEGER, true)
+                .column("lz4_text", ColumnType.TEXT, false, Compression.LZ4)
+                .column("deflate_text", ColumnType.TEXT, false, Compression.DEFLATE)
+                .column("lz4_blob", ColumnType.BLOB, false, Compression.LZ4)
+                .column("deflate_blob", ColumnType.BLOB, false, Compression.DEFLATE)
+                .primaryKey("id")
+                .build();
+        SchemaRegistry.register(schema);
+
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + TABLE + " (id INTEGER NOT NULL, lz4_text TEXT, deflate_text TEXT,"
+                    + " lz4_blob BLOB, deflate_blob BLOB, PRIMARY KEY (id));");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void compressedValuesRoundtrip() throws SQLException {
+        // Más de un trozo de LZ4 (64 KiB)
+        String text = "el jugador ha colocado un bloque de piedra en 12, 64, -30\n".repeat(4000);
+        byte[] blob = text.getBytes(StandardCharsets.UTF_8);
+        insert(row(1, text, text, blob, blob));
+
+        assertTrue(storedLength(1, "lz4_text") < blob.length / 4);
+        assertTrue(storedLength(1, "deflate_text") < blob.length / 4);
+
+        RowData read = select(1);
+        assertEquals(text, read.get("lz4_text"));
+        assertEquals(text, read.get("deflate_text"));
+        assertArrayEquals(blob, (byte[]) read.get("lz4_blob"));
+        assertArrayEquals(blob, (byte[]) read.get("deflate_blob"));
+    }
+
+    @Test
+    void smallIncompressibleAndNullValuesRoundtrip() throws SQLException {
+        byte[] noise = new byte[4096];
+        new Random(42).nextBytes(noise);
+        insert(row(1, "corto", null, noise, new byte[]{1, 2, 3}));
+
+        RowData read = select(1);
+        assertEquals("corto", read.get("lz4_text"));
+        assertNull(read.get("deflate_text"));
+        assertArrayEquals(noise, (byte[]) read.get("lz4_blob"));
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) read.get("deflate_blob"));
+    }
+
+    @Test
+    void valueThatLooksCompressedRoundtrip() throws SQLException {
+        // Empieza por la cabecera de un valor comprimido pero no lo es: se guarda envuelto
+        byte[] fake = new byte[32];
+        fake[0] = (byte) 0xC5;
+        fake[1] = 'S';
+        fake[2] = 'M';
+        fake[3] = 'L';
+        fake[4] = 5;
+        insert(row(1, null, null, fake, fake));
+
+        RowData read = select(1);
+        assertArrayEquals(fake, (byte[]) read.get("lz4_blob"));
+        assertArrayEquals(fake, (byte[]) read.get("deflate_blob"));
+    }
+
+    @Test
+    void streamedValuesRoundtrip() throws SQLException, IOException {
+        insert(row(1, null, null, null, null));
+        byte[] data = "inventario:diamond_sword,64;".repeat(10_000).getBytes(StandardCharsets.UTF_8);
+
+        for (String column : new String[]{"lz4_blob", "deflate_blob"}) {
+            AtomicReference<Object> written = new AtomicReference<>();
+            try (OutputStream out = ColumnCodec.newOutputStream(TABLE, schema.getCompression(column), ColumnType.BLOB, written::set)) {
+                // En trozos que no coinciden con los de LZ4
+                for (int pos = 0; pos < data.length; pos += 10_000) {
+                    out.write(data, pos, Math.min(10_000, data.length - pos));
+                }
+            }
+            Object stored = ColumnCodec.encode(schema, Map.of(column, written.get())).get(column);
+            try (PreparedStatement stmt = connection.prepareStatement("UPDATE " + TABLE + " SET " + column + " = ? WHERE id = 1;")) {
+                stmt.setObject(1, stored);
+                stmt.executeUpdate();
+            }
+
+            assertArrayEquals(data, (byte[]) select(1).get(column));
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT " + column + " FROM " + TABLE + " WHERE id = 1;");
+                 ResultSet rs = stmt.executeQuery();
+                 InputStream in = ColumnCodec.openStream(rs.next() ? rs.getObject(1) : null)) {
+                assertArrayEquals(data, in.readAllBytes());
+            }
+        }
+    }
+
+    private RowData row(long id, String lz4Text, String deflateText, byte[] lz4Blob, byte[] deflateBlob) {
+        RowData row = schema.newRow();
+        row.set("id", id);
+        row.set("lz4_text", lz4Text);
+        row.set("deflate_text", deflateText);
+        row.set("lz4_blob", lz4Blob);
+        row.set("deflate_blob", deflateBlob);
+        return row;
+    }
+
+    private void insert(RowData row) throws SQLException {
+        RowData stored = ColumnCodec.encode(schema, row);
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO " + TABLE + " VALUES (?, ?, ?, ?, ?);")) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                stmt.setObject(i + 1, stored.get(COLUMNS[i]));
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private RowData select(long id) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + TABLE + " WHERE id = ?;")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return new RowReader(rs, TABLE).read(rs);
+            }
+        }
+    }
+
+    private long storedLength(long id, String column) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT length(CAST(" + column + " AS BLOB)) FROM " + TABLE + " WHERE id = ?;")) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getLong(1);
+            }
+        }
+    }
+}
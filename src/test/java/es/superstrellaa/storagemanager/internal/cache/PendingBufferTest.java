@@ -0,0 +1,185 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingBufferTest {
+
+    private static final String TABLE = "buffer_test";
+
+    @Test
+    void dropOldestKeepsTransactionalWrites() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 3, 3, 1);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2).asTransactional(), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(3), OverflowPolicy.DROP_OLDEST, false);
+
+        // La más antigua que se puede tirar es la 3: la transacción se queda entera
+        buffer.add(insert(4), OverflowPolicy.DROP_OLDEST, false);
+
+        assertEquals(List.of(1L, 2L, 4L), ids(buffer.snapshot()));
+        assertEquals(1, buffer.dropped());
+    }
+
+    @Test
+    void dropOldestKeepsDeletes() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1);
+        buffer.add(new PendingOperation(OperationType.DELETE, Map.of("id", 1L)), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2), OverflowPolicy.DROP_OLDEST, false);
+
+        // Tirar el delete resucitaría la fila 1
+        buffer.add(insert(3), OverflowPolicy.DROP_OLDEST, false);
+        assertEquals(List.of(1L, 3L), ids(buffer.snapshot()));
+        assertEquals(OperationType.DELETE, buffer.snapshot().get(0).type);
+
+        buffer.add(new PendingOperation(OperationType.DELETE, Map.of("id", 3L)), OverflowPolicy.DROP_OLDEST, false);
+        assertThrows(IllegalStateException.class, () -> buffer.add(insert(4), OverflowPolicy.DROP_OLDEST, false));
+    }
+
+    @Test
+    void dropOldestKeepsInsertOverDelete() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1);
+        buffer.add(new PendingOperation(OperationType.DELETE, Map.of("id", 1L)), OverflowPolicy.DROP_OLDEST, false);
+        // Reemplaza al delete: tirarlo devolvería la fila 1 que había en la DB
+        buffer.add(insert(1), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2), OverflowPolicy.DROP_OLDEST, false);
+
+        buffer.add(insert(3), OverflowPolicy.DROP_OLDEST, false);
+
+        List<PendingOperation> ops = buffer.snapshot();
+        assertEquals(List.of(1L, 3L), ids(ops));
+        assertEquals(OperationType.INSERT, ops.get(0).type);
+        assertEquals(1, buffer.dropped());
+    }
+
+    @Test
+    void blockRejectsWhenCallerCannotWait() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1);
+        buffer.add(insert(1), OverflowPolicy.BLOCK, false);
+        buffer.add(insert(2), OverflowPolicy.BLOCK, false);
+
+        assertThrows(IllegalStateException.class, () -> buffer.add(insert(3), OverflowPolicy.BLOCK, false));
+        assertEquals(1, buffer.rejected());
+
+        // Las transacciones no se pueden rechazar a medias
+        buffer.add(insert(4).asTransactional(), OverflowPolicy.BLOCK, false);
+        assertEquals(List.of(1L, 2L, 4L), ids(buffer.snapshot()));
+    }
+
+    @Test
+    void requeueRearmsFlush() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 10, 3, 1);
+        buffer.add(insert(1), OverflowPolicy.BLOCK, false);
+        buffer.add(insert(2), OverflowPolicy.BLOCK, false);
+        assertTrue(buffer.add(insert(3), OverflowPolicy.BLOCK, false));
+
+        buffer.beginFlush();
+        buffer.add(insert(4), OverflowPolicy.BLOCK, false);
+        // Las devueltas y la nueva pasan de la marca alta: hay que pedir otro flush
+        assertTrue(buffer.requeue());
+        assertFalse(buffer.add(insert(5), OverflowPolicy.BLOCK, false));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), ids(buffer.snapshot()));
+    }
+
+    @Test
+    void updateOfTransactionalWriteStaysTransactional() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.DROP_OLDEST, false);
+        // Se combina con el insert pendiente: sigue siendo parte de la transacción
+        buffer.add(new PendingOperation(Map.of("id", 1L), Map.of("name", "x"), Map.of(), false), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2), OverflowPolicy.DROP_OLDEST, false);
+
+        buffer.add(insert(3), OverflowPolicy.DROP_OLDEST, false);
+
+        List<PendingOperation> ops = buffer.snapshot();
+        assertEquals(List.of(1L, 3L), ids(ops));
+        assertEquals("x", ops.get(0).data.get("name"));
+        assertTrue(ops.get(0).transactional);
+    }
+
+    @Test
+    void queueFullOfTransactionalWritesRejects() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2).asTransactional(), OverflowPolicy.DROP_OLDEST, false);
+
+        assertThrows(IllegalStateException.class, () -> buffer.add(insert(3), OverflowPolicy.DROP_OLDEST, false));
+
+        assertEquals(List.of(1L, 2L), ids(buffer.snapshot()));
+        assertEquals(0, buffer.dropped());
+        assertEquals(1, buffer.rejected());
+    }
+
+    @Test
+    void transactionCompletesWhenItsFlushCommits() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 100, 50, 25);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.BLOCK, false);
+        CompletableFuture<Void> saved = buffer.whenFlushed();
+
+        buffer.beginFlush();
+        // Lo encolado después va en el siguiente flush y no retrasa a la transacción
+        buffer.add(insert(2), OverflowPolicy.BLOCK, false);
+        CompletableFuture<Void> later = buffer.whenFlushed();
+        assertFalse(saved.isDone());
+
+        buffer.endFlush();
+        assertTrue(saved.isDone() && !saved.isCompletedExceptionally());
+        assertFalse(later.isDone());
+    }
+
+    @Test
+    void transactionWaitsForRetriedFlush() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 100, 50, 25);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.BLOCK, false);
+        CompletableFuture<Void> saved = buffer.whenFlushed();
+
+        buffer.beginFlush();
+        buffer.requeue();
+        assertFalse(saved.isDone());
+
+        buffer.beginFlush();
+        buffer.endFlush();
+        assertTrue(saved.isDone() && !saved.isCompletedExceptionally());
+    }
+
+    @Test
+    void transactionFailsWhenItsFlushIsAbandoned() {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 100, 50, 25);
+        buffer.add(insert(1).asTransactional(), OverflowPolicy.BLOCK, false);
+        CompletableFuture<Void> saved = buffer.whenFlushed();
+
+        buffer.beginFlush();
+        RuntimeException error = new RuntimeException("constraint failed");
+        buffer.abandonFlush(error);
+
+        assertTrue(saved.isCompletedExceptionally());
+        assertSame(error, saved.handle((ignored, e) -> e).join());
+    }
+
+    private static PendingOperation insert(long id) {
+        RowData row = new RowData();
+        row.set("id", id);
+        row.set("name", "row" + id);
+        return new PendingOperation(OperationType.INSERT, row);
+    }
+
+    private static List<Long> ids(List<PendingOperation> ops) {
+        List<Long> ids = new ArrayList<>();
+        for (PendingOperation op : ops) {
+            ids.add(((Number) (op.type == OperationType.INSERT ? op.data.get("id") : op.whereClause.get("id"))).longValue());
+        }
+        return ids;
+    }
+}
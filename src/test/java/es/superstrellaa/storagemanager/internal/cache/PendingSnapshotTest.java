@@ -0,0 +1,242 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import es.superstrellaa.storagemanager.api.schema.ColumnType;
+import es.superstrellaa.storagemanager.api.schema.TableSchema;
+import es.superstrellaa.storagemanager.internal.RowReader;
+import es.superstrellaa.storagemanager.internal.SchemaRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Leer la tabla a través de PendingSnapshot.source() tiene que dar lo mismo que ejecutar antes
+ * las mismas escrituras en la DB
+ */
+class PendingSnapshotTest {
+
+    private static final String TABLE = "overlay_test";
+
+    private Connection connection;
+    private PendingBuffer buffer;
+    // Las mismas escrituras en SQL, para ejecutarlas en la DB después de leer con las pendientes
+    private final List<Runnable> direct = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        SchemaRegistry.register(TableSchema.builder(TABLE)
+                .column("id", ColumnType.INTEGER, true)
+                .column("name", ColumnType.TEXT)
+                .column("n", ColumnType.INTEGER)
+                .primaryKey("id")
+                .build());
+        buffer = new PendingBuffer(TABLE, List.of("id"), 1000, 500, 250);
+
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + TABLE + " (id INTEGER NOT NULL, name TEXT, n INTEGER, PRIMARY KEY (id));");
+            stmt.execute("INSERT INTO " + TABLE + " VALUES (1, 'a', 10), (2, 'b', 20), (3, 'c', 30), (6, 'f', NULL),"
+                    + " (7, 'z', 70), (8, 'h', 80);");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void keyedUpdatesMatchDatabase() throws SQLException {
+        queue(update(Map.of("id", 1L), Map.of("name", "x"), Map.of(), false),
+                "UPDATE " + TABLE + " SET name = 'x' WHERE id = 1;");
+        queue(update(Map.of("id", 2L), Map.of(), Map.of("n", 5L), false),
+                "UPDATE " + TABLE + " SET n = COALESCE(n, 0) + 5 WHERE id = 2;");
+        // Upsert de una fila que no existe: la crea con el incremento partiendo de 0
+        queue(update(Map.of("id", 4L), Map.of(), Map.of("n", 7L), true),
+                "INSERT INTO " + TABLE + " (id, n) VALUES (4, 7) ON CONFLICT (id) DO UPDATE SET n = COALESCE(n, 0) + 7;");
+        // Update normal de una fila que no existe: no hace nada
+        queue(update(Map.of("id", 9L), Map.of("name", "q"), Map.of(), false),
+                "UPDATE " + TABLE + " SET name = 'q' WHERE id = 9;");
+        queue(new PendingOperation(OperationType.DELETE, Map.of("id", 3L)),
+                "DELETE FROM " + TABLE + " WHERE id = 3;");
+        queue(new PendingOperation(OperationType.INSERT, row(5, "e", 1L)),
+                "INSERT OR REPLACE INTO " + TABLE + " VALUES (5, 'e', 1);");
+        // Parcial sobre una fila con update por clave pendiente (se calcula en memoria) y otra solo en la DB
+        queue(update(Map.of("name", "b"), Map.of("name", "y"), Map.of(), false),
+                "UPDATE " + TABLE + " SET name = 'y' WHERE name = 'b';");
+        queue(update(Map.of("n", 80L), Map.of("name", "hh"), Map.of(), false),
+                "UPDATE " + TABLE + " SET name = 'hh' WHERE n = 80;");
+        queue(update(Map.of("id", 6L), Map.of(), Map.of("n", 1L), false),
+                "UPDATE " + TABLE + " SET n = COALESCE(n, 0) + 1 WHERE id = 6;");
+        queue(update(Map.of("id", 5L), Map.of(), Map.of("n", 2L), false),
+                "UPDATE " + TABLE + " SET n = COALESCE(n, 0) + 2 WHERE id = 5;");
+        queue(update(Map.of("id", 1L), Map.of(), Map.of("n", 1L), false),
+                "UPDATE " + TABLE + " SET n = COALESCE(n, 0) + 1 WHERE id = 1;");
+        queue(new PendingOperation(OperationType.DELETE, Map.of("name", "z")),
+                "DELETE FROM " + TABLE + " WHERE name = 'z';");
+
+        List<List<Object>> overlay = readOverlay("SELECT * FROM %s ORDER BY id;", false);
+        List<List<Object>> overlaySum = readOverlay("SELECT COUNT(*), SUM(n) FROM %s WHERE n > 5;", false);
+        List<List<Object>> overlayTemp = readOverlay("SELECT * FROM %s ORDER BY id;", true);
+        List<List<Object>> applied = readApplied();
+
+        direct.forEach(Runnable::run);
+        List<List<Object>> expected = read("SELECT * FROM " + TABLE + " ORDER BY id;", List.of());
+        assertEquals(expected, overlay);
+        assertEquals(read("SELECT COUNT(*), SUM(n) FROM " + TABLE + " WHERE n > 5;", List.of()), overlaySum);
+        assertEquals(expected, overlayTemp);
+        assertEquals(expected, applied);
+    }
+
+    @Test
+    void upsertAfterDeleteMatchesDatabase() throws SQLException {
+        queue(new PendingOperation(OperationType.DELETE, Map.of("id", 2L)),
+                "DELETE FROM " + TABLE + " WHERE id = 2;");
+        queue(update(Map.of("id", 2L), Map.of("name", "new"), Map.of("n", 3L), true),
+                "INSERT INTO " + TABLE + " (id, name, n) VALUES (2, 'new', 3)"
+                        + " ON CONFLICT (id) DO UPDATE SET name = 'new', n = COALESCE(n, 0) + 3;");
+        queue(update(Map.of("id", 1L), Map.of(), Map.of("n", 4L), true),
+                "INSERT INTO " + TABLE + " (id, n) VALUES (1, 4) ON CONFLICT (id) DO UPDATE SET n = COALESCE(n, 0) + 4;");
+
+        List<List<Object>> overlay = readOverlay("SELECT * FROM %s ORDER BY id;", false);
+
+        direct.forEach(Runnable::run);
+        assertEquals(read("SELECT * FROM " + TABLE + " ORDER BY id;", List.of()), overlay);
+    }
+
+    private void queue(PendingOperation op, String sql) {
+        buffer.add(op, OverflowPolicy.BLOCK, false);
+        direct.add(() -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(sql);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * La consulta con %s en lugar de la tabla, leyendo de la DB las filas de baseKeys() como en TableExecutor.
+     * Con temp, las filas y claves calculadas en memoria van en tablas temporales en lugar de como parámetros.
+     */
+    private List<List<Object>> readOverlay(String query, boolean temp) throws SQLException {
+        PendingSnapshot pending = snapshot();
+
+        Map<RowKey, RowData> base = new HashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + TABLE + " WHERE id = ?;")) {
+            for (RowKey key : pending.baseKeys()) {
+                stmt.setObject(1, Values.bindable(key.values().get(0)));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        base.put(key, new RowReader(rs, TABLE).read(rs));
+                    }
+                }
+            }
+        }
+
+        List<Object> params = new ArrayList<>();
+        String source;
+        if (temp) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TEMP TABLE pending_keys (id INTEGER);");
+                stmt.execute("CREATE TEMP TABLE pending_rows (id INTEGER, name TEXT, n INTEGER);");
+            }
+            for (RowKey key : pending.keyedRows()) {
+                execute("INSERT INTO temp.pending_keys VALUES (?);", key.values().get(0));
+            }
+            for (RowData row : pending.currentRows(base)) {
+                execute("INSERT INTO temp.pending_rows VALUES (?, ?, ?);", row.get("id"), row.get("name"), row.get("n"));
+            }
+            source = pending.source(TABLE, base, params, "temp.pending_rows", "temp.pending_keys");
+        } else {
+            source = pending.source(TABLE, base, params);
+        }
+        assertNotNull(source);
+        return read(query.formatted(source), params);
+    }
+
+    /**
+     * Las operaciones pendientes aplicadas en memoria sobre la tabla entera (PendingSnapshot.applyTo)
+     */
+    private List<List<Object>> readApplied() throws SQLException {
+        List<RowData> committed = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM " + TABLE + ";");
+             ResultSet rs = stmt.executeQuery()) {
+            RowReader reader = new RowReader(rs, TABLE);
+            while (rs.next()) {
+                committed.add(reader.read(rs));
+            }
+        }
+
+        List<List<Object>> rows = new ArrayList<>();
+        for (RowData row : snapshot().applyTo(committed)) {
+            rows.add(Arrays.asList(Values.normalize(row.get("id")), Values.normalize(row.get("name")), Values.normalize(row.get("n"))));
+        }
+        rows.sort(Comparator.comparing(row -> (Long) row.get(0)));
+        return rows;
+    }
+
+    private PendingSnapshot snapshot() {
+        return new PendingSnapshot(TABLE, buffer.snapshot(), buffer, buffer.commitStamp());
+    }
+
+    private void execute(String sql, Object... params) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    private List<List<Object>> read(String sql, List<Object> params) throws SQLException {
+        List<List<Object>> rows = new ArrayList<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    List<Object> row = new ArrayList<>();
+                    for (int i = 1; i <= columns; i++) {
+                        row.add(Values.normalize(rs.getObject(i)));
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static PendingOperation update(Map<String, Object> where, Map<String, Object> set,
+                                           Map<String, Object> increments, boolean upsert) {
+        return new PendingOperation(new LinkedHashMap<>(where), new LinkedHashMap<>(set), new LinkedHashMap<>(increments), upsert);
+    }
+
+    private static RowData row(long id, String name, Long n) {
+        RowData row = new RowData();
+        row.set("id", id);
+        row.set("name", name);
+        row.set("n", n);
+        return row;
+    }
+}
@@ -0,0 +1,112 @@
+package es.superstrellaa.storagemanager.internal.cache;
+
+import es.superstrellaa.storagemanager.api.cache.OverflowPolicy;
+import es.superstrellaa.storagemanager.api.data.RowData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lo que queda en el journal es lo que se volvería a ejecutar al arrancar tras un crash
+ */
+class WriteJournalTest {
+
+    private static final String TABLE = "journal_test";
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private WriteJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve(TABLE + WriteJournal.SUFFIX);
+        journal = WriteJournal.open(TABLE, file, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    void failedFlushStaysInJournal() throws IOException {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 100, 50, 25, journal);
+        buffer.add(insert(1, "a"), OverflowPolicy.BLOCK, false);
+        buffer.add(new PendingOperation(Map.of("id", 2), Map.of(), Map.of("n", 3), true), OverflowPolicy.BLOCK, false);
+
+        buffer.beginFlush();
+        // Llega otra escritura mientras el flush está en vuelo y después el flush hace rollback
+        buffer.add(insert(3, "c"), OverflowPolicy.BLOCK, false);
+        buffer.requeue();
+        journal.sync();
+
+        WriteJournal.Replay replay = WriteJournal.read(file, 0);
+        assertEquals(3, replay.ops().size());
+        assertEquals(3, replay.lastSeq());
+        assertEquals(OperationType.INSERT, replay.ops().get(0).type);
+        assertEquals(1L, replay.ops().get(0).data.get("id"));
+        assertEquals(OperationType.UPDATE, replay.ops().get(1).type);
+        assertTrue(replay.ops().get(1).upsert);
+        assertEquals(3L, replay.ops().get(1).increments.get("n"));
+        assertEquals(3L, replay.ops().get(2).data.get("id"));
+        assertEquals(1, buffer.failedFlushes());
+
+        // El reintento se commitea: sale todo del journal
+        buffer.beginFlush();
+        journal.truncate(buffer.inFlightSeq());
+        buffer.endFlush();
+        journal.sync();
+
+        assertTrue(WriteJournal.read(file, 0).ops().isEmpty());
+        assertEquals(0, buffer.failedFlushes());
+    }
+
+    @Test
+    void committedSequenceIsNotReplayed() throws IOException {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 100, 50, 25, journal);
+        buffer.add(insert(1, "a"), OverflowPolicy.BLOCK, false);
+        buffer.add(insert(2, "b"), OverflowPolicy.BLOCK, false);
+        journal.sync();
+
+        // El proceso muere tras commitear la secuencia 1 pero antes de truncar el journal
+        WriteJournal.Replay replay = WriteJournal.read(file, 1);
+        assertEquals(1, replay.ops().size());
+        assertEquals(2L, replay.ops().get(0).data.get("id"));
+        assertEquals(2, replay.lastSeq());
+    }
+
+    @Test
+    void droppedOperationsLeaveJournal() throws IOException {
+        PendingBuffer buffer = new PendingBuffer(TABLE, List.of("id"), 2, 2, 1, journal);
+        buffer.add(insert(1, "a"), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(2, "b"), OverflowPolicy.DROP_OLDEST, false);
+        buffer.add(insert(3, "c"), OverflowPolicy.DROP_OLDEST, false);
+        assertEquals(1, buffer.dropped());
+
+        buffer.compactJournal();
+        journal.sync();
+
+        List<PendingOperation> ops = WriteJournal.read(file, 0).ops();
+        assertEquals(2, ops.size());
+        assertEquals(2L, ops.get(0).data.get("id"));
+        assertEquals(3L, ops.get(1).data.get("id"));
+    }
+
+    private static PendingOperation insert(long id, String name) {
+        RowData row = new RowData();
+        row.set("id", id);
+        row.set("name", name);
+        return new PendingOperation(OperationType.INSERT, row);
+    }
+}